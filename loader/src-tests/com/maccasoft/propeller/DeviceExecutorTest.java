@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.maccasoft.propeller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DeviceExecutorTest {
+
+    @Test
+    void testMap() {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            items.add(i);
+        }
+
+        List<Integer> result = DeviceExecutor.map("Test", items, item -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                // Do nothing
+            }
+            if (item % 10 == 1) {
+                return null;
+            }
+            if (item % 10 == 2) {
+                throw new RuntimeException();
+            }
+            return item;
+        });
+
+        Assertions.assertEquals(160, result.size());
+        for (int i = 1; i < result.size(); i++) {
+            Assertions.assertTrue(result.get(i - 1) < result.get(i));
+        }
+    }
+
+    @Test
+    void testMapParallelism() {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            items.add(i);
+        }
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger max = new AtomicInteger();
+        List<Throwable> errors = new ArrayList<>();
+
+        List<Integer> result = DeviceExecutor.map("Test", items, 3, item -> {
+            max.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                // Do nothing
+            } finally {
+                running.decrementAndGet();
+            }
+            if (item == 5) {
+                throw new IllegalStateException("item " + item);
+            }
+            return item;
+        }, errors::add);
+
+        Assertions.assertEquals(19, result.size());
+        Assertions.assertTrue(max.get() <= 3, "Max " + max.get());
+        Assertions.assertEquals(1, errors.size());
+        Assertions.assertEquals("item 5", errors.get(0).getMessage());
+    }
+
+    @Test
+    void testPlatformPoolConcurrency() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger max = new AtomicInteger();
+
+        ExecutorService executor = DeviceExecutor.createPlatformPool("Test", 4);
+        try {
+            for (int i = 0; i < 20; i++) {
+                executor.execute(() -> {
+                    max.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        // Do nothing
+                    }
+                    running.decrementAndGet();
+                });
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        Assertions.assertEquals(4, max.get());
+    }
+
+    @Test
+    void testVirtualThreads() {
+        Assertions.assertEquals(Runtime.version().feature() >= 21, DeviceExecutor.isVirtualThreads());
+    }
+
+}
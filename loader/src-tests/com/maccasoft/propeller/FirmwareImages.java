@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.maccasoft.propeller;
+
+/**
+ * Firmware images shared by the tests.
+ */
+class FirmwareImages {
+
+    /**
+     * Returns an image filled with a pattern, different images for different seeds.
+     */
+    static byte[] createImage(int size, int seed) {
+        byte[] image = new byte[size];
+        for (int i = 0; i < image.length; i++) {
+            image[i] = (byte) (i * seed + seed);
+        }
+        return image;
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FirmwarePackFileTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void testWriteAndRead() throws Exception {
+        FirmwarePack pack = new FirmwarePack();
+        pack.addFirmware(new Firmware(1, FirmwareImages.createImage(1024, 1), "firmware 1"));
+        pack.addFirmware(new Firmware(2, FirmwareImages.createImage(4096, 2), "firmware 2"));
+        pack.setEnableLocal(false);
+        pack.setEnableNetwork(true);
+        pack.setParallelUploads(8);
+
+        File file = new File(tempDir, "test.fwpack");
+        FirmwarePackFile.write(pack, file);
+
+        FirmwarePack subject = FirmwarePackFile.read(file);
+
+        Assertions.assertFalse(subject.isEnableLocal());
+        Assertions.assertTrue(subject.isEnableNetwork());
+        Assertions.assertEquals(8, subject.getParallelUploads());
+        Assertions.assertEquals(2, subject.getFirmwareList().size());
+
+        Firmware firmware = subject.getFirmwareList().get(0);
+        Assertions.assertEquals("firmware 1", firmware.getDescription());
+        Assertions.assertEquals(1, firmware.getBinaryVersion());
+        Assertions.assertNull(firmware.binaryImage);
+        Assertions.assertArrayEquals(FirmwareImages.createImage(1024, 1), firmware.getBinaryImage());
+
+        firmware = subject.getFirmwareList().get(1);
+        Assertions.assertEquals("firmware 2", firmware.getDescription());
+        Assertions.assertEquals(2, firmware.getBinaryVersion());
+        Assertions.assertArrayEquals(FirmwareImages.createImage(4096, 2), firmware.getBinaryImage());
+    }
+
+    @Test
+    void testIdenticalImagesStoredOnce() throws Exception {
+        FirmwarePack pack = new FirmwarePack();
+        pack.addFirmware(new Firmware(2, FirmwareImages.createImage(8192, 3), "variant 1"));
+        pack.addFirmware(new Firmware(2, FirmwareImages.createImage(8192, 3), "variant 2"));
+
+        File file = new File(tempDir, "test.fwpack");
+        FirmwarePackFile.write(pack, file);
+
+        Assertions.assertTrue(file.length() < 2 * 8192);
+
+        FirmwarePack subject = FirmwarePackFile.read(file);
+        Assertions.assertArrayEquals(FirmwareImages.createImage(8192, 3), subject.getFirmwareList().get(0).getBinaryImage());
+        Assertions.assertArrayEquals(FirmwareImages.createImage(8192, 3), subject.getFirmwareList().get(1).getBinaryImage());
+    }
+
+    @Test
+    void testCorruptedImage() throws Exception {
+        FirmwarePack pack = new FirmwarePack();
+        pack.addFirmware(new Firmware(1, FirmwareImages.createImage(1024, 1), "firmware 1"));
+
+        File file = new File(tempDir, "test.fwpack");
+        FirmwarePackFile.write(pack, file);
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 1);
+            raf.write(0x55);
+        }
+
+        FirmwarePack subject = FirmwarePackFile.read(file);
+        Assertions.assertThrows(UncheckedIOException.class, () -> {
+            subject.getFirmwareList().get(0).getBinaryImage();
+        });
+    }
+
+    @Test
+    void testInvalidEntry() throws Exception {
+        String[] entries = {
+            "{\"offset\":-1,\"length\":16,\"sha256\":\"00\"}",
+            "{\"offset\":0,\"length\":-16,\"sha256\":\"00\"}",
+            "{\"offset\":9223372036854775807,\"length\":16,\"sha256\":\"00\"}",
+            "{\"offset\":0,\"length\":2147483647,\"sha256\":\"00\"}",
+        };
+
+        File file = new File(tempDir, "test.fwpack");
+        for (String entry : entries) {
+            byte[] manifest = ("{\"firmwareList\":[" + entry + "]}").getBytes(StandardCharsets.UTF_8);
+            ByteBuffer data = ByteBuffer.allocate(FirmwarePackFile.HEADER_SIZE + manifest.length + 16);
+            data.put(FirmwarePackFile.MAGIC);
+            data.putInt(FirmwarePackFile.VERSION);
+            data.putInt(manifest.length);
+            data.put(manifest);
+            Files.write(file.toPath(), data.array());
+
+            Assertions.assertThrows(IOException.class, () -> {
+                FirmwarePackFile.read(file);
+            }, entry);
+        }
+    }
+
+}
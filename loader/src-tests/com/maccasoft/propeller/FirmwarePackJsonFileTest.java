@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Base64;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class FirmwarePackJsonFileTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void testRead() throws Exception {
+        FirmwarePack pack = new FirmwarePack();
+        pack.addFirmware(new Firmware(1, FirmwareImages.createImage(1024, 1), "firmware 1"));
+        pack.addFirmware(new Firmware(2, FirmwareImages.createImage(4096, 2), "firmware 2"));
+        pack.setEnableLocal(false);
+        pack.setEnableNetwork(true);
+        pack.setParallelUploads(8);
+
+        File file = new File(tempDir, "test.json");
+        new ObjectMapper().writeValue(file, pack);
+
+        FirmwarePack subject = FirmwarePackJsonFile.read(file);
+
+        Assertions.assertFalse(subject.isEnableLocal());
+        Assertions.assertTrue(subject.isEnableNetwork());
+        Assertions.assertEquals(8, subject.getParallelUploads());
+        Assertions.assertEquals(2, subject.getFirmwareList().size());
+
+        Firmware firmware = subject.getFirmwareList().get(0);
+        Assertions.assertEquals("firmware 1", firmware.getDescription());
+        Assertions.assertEquals(1, firmware.getBinaryVersion());
+        Assertions.assertNull(firmware.binaryImage);
+        Assertions.assertArrayEquals(FirmwareImages.createImage(1024, 1), firmware.getBinaryImage());
+
+        firmware = subject.getFirmwareList().get(1);
+        Assertions.assertEquals("firmware 2", firmware.getDescription());
+        Assertions.assertEquals(2, firmware.getBinaryVersion());
+        Assertions.assertArrayEquals(FirmwareImages.createImage(4096, 2), firmware.getBinaryImage());
+    }
+
+    @Test
+    void testEscapedImage() throws Exception {
+        byte[] image = new byte[] {
+            (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x00, 0x01, 0x02
+        };
+        String encoded = Base64.getEncoder().encodeToString(image).replace("/", "\\/");
+        Assertions.assertTrue(encoded.contains("\\/"));
+
+        File file = new File(tempDir, "test.json");
+        Files.writeString(file.toPath(), "{\n" +
+            "  \"firmwareList\" : [ {\n" +
+            "    \"unknown\" : { \"a\" : [ 1, 2 ] },\n" +
+            "    \"binaryImage\" : \"" + encoded + "\",\n" +
+            "    \"binaryVersion\" : 2,\n" +
+            "    \"description\" : \"escaped\"\n" +
+            "  } ]\n" +
+            "}\n");
+
+        FirmwarePack subject = FirmwarePackJsonFile.read(file);
+
+        Assertions.assertTrue(subject.isEnableLocal());
+        Assertions.assertEquals(FirmwarePack.DEFAULT_PARALLEL_UPLOADS, subject.getParallelUploads());
+        Assertions.assertEquals(1, subject.getFirmwareList().size());
+
+        Firmware firmware = subject.getFirmwareList().get(0);
+        Assertions.assertEquals("escaped", firmware.getDescription());
+        Assertions.assertEquals(2, firmware.getBinaryVersion());
+        Assertions.assertArrayEquals(image, firmware.getBinaryImage());
+    }
+
+    @Test
+    void testCacheEviction() throws Exception {
+        FirmwareImageCache cache = new FirmwareImageCache(3000);
+
+        FirmwareImageSource source1 = () -> new byte[1000];
+        FirmwareImageSource source2 = () -> new byte[1000];
+        FirmwareImageSource source3 = () -> new byte[1500];
+
+        byte[] image1 = cache.get(source1);
+        cache.get(source2);
+        Assertions.assertSame(image1, cache.get(source1));
+        Assertions.assertEquals(2000, cache.getSize());
+
+        cache.get(source3);
+        Assertions.assertTrue(cache.contains(source1));
+        Assertions.assertFalse(cache.contains(source2));
+        Assertions.assertTrue(cache.contains(source3));
+        Assertions.assertEquals(2500, cache.getSize());
+
+        cache.get(() -> new byte[4000]);
+        Assertions.assertEquals(2500, cache.getSize());
+    }
+
+}
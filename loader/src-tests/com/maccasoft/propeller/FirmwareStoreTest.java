@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class FirmwareStoreTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void testIngestFile() throws Exception {
+        FirmwareStore subject = new FirmwareStore(new File(tempDir, "store"), FirmwareStore.DEFAULT_MAX_SIZE);
+
+        byte[] image = FirmwareImages.createImage(100000, 3);
+        File file = new File(tempDir, "test.binary");
+        Files.write(file.toPath(), image);
+
+        Firmware firmware = subject.ingest(file);
+        Assertions.assertEquals(Firmware.detectBinaryVersion(image), firmware.getBinaryVersion());
+        Assertions.assertEquals(Firmware.getDefaultDescription(firmware.getBinaryVersion()), firmware.getDescription());
+        Assertions.assertArrayEquals(image, firmware.getBinaryImage());
+
+        String sha256 = FirmwarePackFile.sha256(image);
+        Assertions.assertTrue(subject.contains(sha256));
+        Assertions.assertEquals(image.length, subject.getSize());
+
+        Firmware other = subject.ingest(file);
+        Assertions.assertSame(firmware.imageSource, other.imageSource);
+    }
+
+    @Test
+    void testIdenticalImagesShared() throws Exception {
+        FirmwareStore subject = new FirmwareStore(new File(tempDir, "store"), FirmwareStore.DEFAULT_MAX_SIZE);
+
+        Firmware firmware1 = subject.ingest(FirmwareImages.createImage(1024, 1), 2, "firmware 1");
+        Firmware firmware2 = subject.ingest(FirmwareImages.createImage(1024, 1), 2, "firmware 2");
+
+        Assertions.assertEquals("firmware 1", firmware1.getDescription());
+        Assertions.assertEquals("firmware 2", firmware2.getDescription());
+        Assertions.assertSame(firmware1.imageSource, firmware2.imageSource);
+        Assertions.assertEquals(1024, subject.getSize());
+    }
+
+    @Test
+    void testEviction() throws Exception {
+        FirmwareStore subject = new FirmwareStore(new File(tempDir, "store"), 2500);
+
+        String sha1 = FirmwarePackFile.sha256(FirmwareImages.createImage(1000, 1));
+        String sha2 = FirmwarePackFile.sha256(FirmwareImages.createImage(1000, 2));
+        String sha3 = FirmwarePackFile.sha256(FirmwareImages.createImage(1000, 3));
+
+        subject.ingest(FirmwareImages.createImage(1000, 1), 2, "firmware 1");
+        subject.ingest(FirmwareImages.createImage(1000, 2), 2, "firmware 2");
+        Assertions.assertNotNull(subject.get(sha1));
+        awaitUnreferenced(subject, sha1, sha2);
+
+        subject.ingest(FirmwareImages.createImage(1000, 3), 2, "firmware 3");
+        Assertions.assertTrue(subject.contains(sha1));
+        Assertions.assertFalse(subject.contains(sha2));
+        Assertions.assertTrue(subject.contains(sha3));
+        Assertions.assertEquals(2000, subject.getSize());
+    }
+
+    @Test
+    void testReferencedNotEvicted() throws Exception {
+        FirmwareStore subject = new FirmwareStore(new File(tempDir, "store"), 2500);
+
+        Firmware firmware1 = subject.ingest(FirmwareImages.createImage(1000, 1), 2, "firmware 1");
+        Firmware firmware2 = subject.ingest(FirmwareImages.createImage(1000, 2), 2, "firmware 2");
+        Firmware firmware3 = subject.ingest(FirmwareImages.createImage(1000, 3), 2, "firmware 3");
+
+        Assertions.assertEquals(3000, subject.getSize());
+        Assertions.assertArrayEquals(FirmwareImages.createImage(1000, 1), firmware1.getBinaryImage());
+        Assertions.assertArrayEquals(FirmwareImages.createImage(1000, 2), firmware2.getBinaryImage());
+        Assertions.assertArrayEquals(FirmwareImages.createImage(1000, 3), firmware3.getBinaryImage());
+    }
+
+    @Test
+    void testFileKeyPersisted() throws Exception {
+        byte[] image = FirmwareImages.createImage(1024, 3);
+        File file = new File(tempDir, "test.binary");
+        Files.write(file.toPath(), image);
+        FileTime lastModified = Files.getLastModifiedTime(file.toPath());
+
+        FirmwareStore store = new FirmwareStore(new File(tempDir, "store"), FirmwareStore.DEFAULT_MAX_SIZE);
+        store.ingest(file);
+
+        // Same size and time, the file is not read again
+        Files.write(file.toPath(), FirmwareImages.createImage(1024, 4));
+        Files.setLastModifiedTime(file.toPath(), lastModified);
+
+        FirmwareStore subject = new FirmwareStore(new File(tempDir, "store"), FirmwareStore.DEFAULT_MAX_SIZE);
+        Assertions.assertArrayEquals(image, subject.ingest(file).getBinaryImage());
+    }
+
+    @Test
+    void testPackImagesShared() throws Exception {
+        FirmwareStore subject = new FirmwareStore(new File(tempDir, "store"), FirmwareStore.DEFAULT_MAX_SIZE);
+        String sha256 = FirmwarePackFile.sha256(FirmwareImages.createImage(4096, 2));
+
+        FirmwarePack pack = new FirmwarePack();
+        pack.addFirmware(new Firmware(2, FirmwareImages.createImage(4096, 2), "firmware 2"));
+        File file1 = new File(tempDir, "test1.fwpack");
+        FirmwarePackFile.write(pack, file1);
+        File file2 = new File(tempDir, "test2.fwpack");
+        FirmwarePackFile.write(pack, file2);
+
+        Firmware firmware = FirmwarePackFile.read(file1, subject).getFirmwareList().get(0);
+        Assertions.assertFalse(subject.contains(sha256));
+        Assertions.assertArrayEquals(FirmwareImages.createImage(4096, 2), firmware.getBinaryImage());
+        Assertions.assertTrue(subject.contains(sha256));
+
+        firmware = FirmwarePackFile.read(file2, subject).getFirmwareList().get(0);
+        Assertions.assertTrue(firmware.imageSource instanceof FirmwareStore.StoreImageSource);
+        Assertions.assertEquals("firmware 2", firmware.getDescription());
+        Assertions.assertArrayEquals(FirmwareImages.createImage(4096, 2), firmware.getBinaryImage());
+        Assertions.assertEquals(4096, subject.getSize());
+    }
+
+    @Test
+    void testJsonPackImagesReused() throws Exception {
+        FirmwarePack pack = new FirmwarePack();
+        pack.addFirmware(new Firmware(1, FirmwareImages.createImage(1024, 1), "firmware 1"));
+        File file = new File(tempDir, "test.json");
+        new ObjectMapper().writeValue(file, pack);
+
+        FirmwareStore store = new FirmwareStore(new File(tempDir, "store"), FirmwareStore.DEFAULT_MAX_SIZE);
+        Firmware firmware = FirmwarePackJsonFile.read(file, store).getFirmwareList().get(0);
+        Assertions.assertArrayEquals(FirmwareImages.createImage(1024, 1), firmware.getBinaryImage());
+
+        FirmwareStore subject = new FirmwareStore(new File(tempDir, "store"), FirmwareStore.DEFAULT_MAX_SIZE);
+        firmware = FirmwarePackJsonFile.read(file, subject).getFirmwareList().get(0);
+        Assertions.assertTrue(firmware.imageSource instanceof FirmwareStore.StoreImageSource);
+        Assertions.assertEquals("firmware 1", firmware.getDescription());
+        Assertions.assertArrayEquals(FirmwareImages.createImage(1024, 1), firmware.getBinaryImage());
+    }
+
+    @Test
+    void testStaleFileKeysPruned() throws Exception {
+        FirmwareStore subject = new FirmwareStore(new File(tempDir, "store"), FirmwareStore.DEFAULT_MAX_SIZE);
+
+        File file = new File(tempDir, "test.binary");
+        Files.write(file.toPath(), FirmwareImages.createImage(1024, 1));
+        subject.ingest(file);
+
+        Files.write(file.toPath(), FirmwareImages.createImage(2048, 2));
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(System.currentTimeMillis() + 10000));
+        subject.ingest(file);
+        Assertions.assertEquals(1, subject.files.size());
+
+        File other = new File(tempDir, "other.binary");
+        Files.write(other.toPath(), FirmwareImages.createImage(512, 3));
+        subject.ingest(other);
+        Files.delete(other.toPath());
+
+        subject.ingest(FirmwareImages.createImage(256, 4), 1, "firmware 4");
+        Assertions.assertEquals(1, subject.files.size());
+        Assertions.assertEquals(file.toPath().toAbsolutePath(), subject.files.keySet().iterator().next().path());
+    }
+
+    @Test
+    void testSharedDirectory() throws Exception {
+        FirmwareStore store1 = new FirmwareStore(new File(tempDir, "store"), FirmwareStore.DEFAULT_MAX_SIZE);
+        FirmwareStore store2 = new FirmwareStore(new File(tempDir, "store"), FirmwareStore.DEFAULT_MAX_SIZE);
+
+        store1.ingest(FirmwareImages.createImage(1024, 1), 1, "firmware 1");
+        store2.ingest(FirmwareImages.createImage(1024, 2), 1, "firmware 2");
+
+        FirmwareStore subject = new FirmwareStore(new File(tempDir, "store"), FirmwareStore.DEFAULT_MAX_SIZE);
+        Assertions.assertTrue(subject.contains(FirmwarePackFile.sha256(FirmwareImages.createImage(1024, 1))));
+        Assertions.assertTrue(subject.contains(FirmwarePackFile.sha256(FirmwareImages.createImage(1024, 2))));
+        Assertions.assertEquals(2048, subject.getSize());
+    }
+
+    static void awaitUnreferenced(FirmwareStore store, String... sha256) throws InterruptedException {
+        for (String s : sha256) {
+            for (int i = 0; i < 100 && store.isReferenced(s); i++) {
+                System.gc();
+                Thread.sleep(10);
+            }
+            Assertions.assertFalse(store.isReferenced(s));
+        }
+    }
+
+    @Test
+    void testReopen() throws Exception {
+        FirmwareStore store = new FirmwareStore(new File(tempDir, "store"), FirmwareStore.DEFAULT_MAX_SIZE);
+        store.ingest(FirmwareImages.createImage(1024, 1), 1, "firmware 1");
+
+        FirmwareStore subject = new FirmwareStore(new File(tempDir, "store"), FirmwareStore.DEFAULT_MAX_SIZE);
+
+        Firmware firmware = subject.get(FirmwarePackFile.sha256(FirmwareImages.createImage(1024, 1)));
+        Assertions.assertEquals("firmware 1", firmware.getDescription());
+        Assertions.assertEquals(1, firmware.getBinaryVersion());
+        Assertions.assertArrayEquals(FirmwareImages.createImage(1024, 1), firmware.getBinaryImage());
+        Assertions.assertEquals(1024, subject.getSize());
+    }
+
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.maccasoft.propeller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.maccasoft.propeller.emulator.P2RomEmulator;
+import com.maccasoft.propeller.loader.UploadEventLoop;
+import com.maccasoft.propeller.port.ComPort;
+
+class ProductionStationTest {
+
+    static class TestStation extends ProductionStation {
+
+        final Map<String, Integer> chips = new TreeMap<>();
+        final List<P2RomEmulator> boards = new ArrayList<>();
+
+        TestStation(Firmware firmware, UploadEventLoop loop) {
+            super(firmware, false, loop, null);
+        }
+
+        @Override
+        protected synchronized String[] getPortNames() {
+            return chips.keySet().toArray(new String[0]);
+        }
+
+        @Override
+        protected synchronized int probe(String portName) {
+            return chips.getOrDefault(portName, 0);
+        }
+
+        @Override
+        protected ComPort createComPort(String portName) {
+            if (portName.startsWith("BAD")) {
+                // Replies to the probe but not to the loader
+                return new P2RomEmulator(portName) {
+
+                    @Override
+                    protected void receive(int data, long time) {
+                        // Do nothing
+                    }
+
+                };
+            }
+            P2RomEmulator board = new P2RomEmulator(portName);
+            boards.add(board);
+            return board;
+        }
+
+        /**
+         * Plugs a port with a board of the given chip version, or an adapter without a board if 0.
+         */
+        synchronized void plug(String portName, int version) {
+            chips.put(portName, version);
+        }
+
+        synchronized void unplug(String portName) {
+            chips.remove(portName);
+        }
+
+        /**
+         * Ages the probe time of the flashed boards, the next scan probes them again.
+         */
+        synchronized void expireProbes() {
+            probeTimes.replaceAll((portName, time) -> time - ProductionStation.REMOVAL_PROBE_INTERVAL);
+        }
+
+    }
+
+    @Test
+    void testFlashBoards() throws Exception {
+        byte[] image = FirmwareImages.createImage(4096, 13);
+
+        try (UploadEventLoop loop = new UploadEventLoop(); TestStation subject = new TestStation(new Firmware(2, image, "Test"), loop)) {
+            subject.plug("COM1", 0);
+            subject.plug("COM2", 2);
+            subject.scan();
+            awaitUnits(subject);
+            Assertions.assertEquals(1, subject.getUnits().size());
+            Assertions.assertEquals("COM2", subject.getUnits().get(0).getPortName());
+
+            subject.plug("COM3", 2);
+            subject.plug("COM4", 1);
+            subject.scan();
+            awaitUnits(subject);
+
+            Assertions.assertEquals(2, subject.getPassed());
+            Assertions.assertEquals(0, subject.getFailed());
+            Assertions.assertEquals(2, subject.boards.size());
+            for (P2RomEmulator board : subject.boards) {
+                Assertions.assertTrue(board.isRunning());
+                Assertions.assertArrayEquals(image, Arrays.copyOf(board.getRam(), image.length));
+            }
+            Assertions.assertTrue(subject.getUnitsPerHour() > 0);
+
+            subject.expireProbes();
+            subject.scan();
+            Assertions.assertEquals(2, subject.getUnits().size());
+        }
+    }
+
+    @Test
+    void testReplacedBoard() throws Exception {
+        byte[] image = FirmwareImages.createImage(4096, 13);
+
+        try (UploadEventLoop loop = new UploadEventLoop(); TestStation subject = new TestStation(new Firmware(2, image, "Test"), loop)) {
+            subject.plug("COM2", 2);
+            subject.scan();
+            awaitUnits(subject);
+
+            subject.unplug("COM2");
+            subject.scan();
+            subject.plug("COM2", 2);
+            subject.scan();
+            awaitUnits(subject);
+
+            List<ProductionStation.Unit> units = subject.getUnits();
+            Assertions.assertEquals(2, units.size());
+            Assertions.assertEquals(2, units.get(1).getNumber());
+            Assertions.assertEquals("COM2", units.get(1).getPortName());
+            Assertions.assertEquals(ProductionStation.PASSED, units.get(1).getState());
+            Assertions.assertEquals(2, subject.getPassed());
+        }
+    }
+
+    @Test
+    void testReplacedBoardBehindAdapter() throws Exception {
+        byte[] image = FirmwareImages.createImage(4096, 13);
+
+        try (UploadEventLoop loop = new UploadEventLoop(); TestStation subject = new TestStation(new Firmware(2, image, "Test"), loop)) {
+            subject.plug("COM2", 2);
+            subject.scan();
+            awaitUnits(subject);
+
+            // The adapter stays connected, the board is removed and a new one is plugged in
+            subject.plug("COM2", 0);
+            subject.expireProbes();
+            subject.scan();
+            Assertions.assertEquals(1, subject.getUnits().size());
+
+            subject.plug("COM2", 2);
+            subject.scan();
+            awaitUnits(subject);
+
+            Assertions.assertEquals(2, subject.getUnits().size());
+            Assertions.assertEquals(2, subject.getPassed());
+        }
+    }
+
+    @Test
+    void testFailedBoard() throws Exception {
+        byte[] image = FirmwareImages.createImage(4096, 13);
+
+        try (UploadEventLoop loop = new UploadEventLoop(); TestStation subject = new TestStation(new Firmware(2, image, "Test"), loop)) {
+            subject.plug("BAD-COM2", 2);
+            subject.scan();
+            awaitUnits(subject);
+
+            ProductionStation.Unit unit = subject.getUnits().get(0);
+            Assertions.assertEquals(ProductionStation.FAILED, unit.getState());
+            Assertions.assertEquals("No propeller chip on port BAD-COM2", unit.getError());
+            Assertions.assertEquals(0, subject.getPassed());
+            Assertions.assertEquals(1, subject.getFailed());
+            Assertions.assertEquals(0.0, subject.getUnitsPerHour());
+
+            // Not flashed again until requested
+            subject.expireProbes();
+            subject.scan();
+            Assertions.assertEquals(1, subject.getUnits().size());
+
+            Assertions.assertEquals(1, subject.retryFailed());
+            awaitUnits(subject);
+
+            Assertions.assertEquals(ProductionStation.RETRIED, unit.getState());
+            Assertions.assertEquals(2, subject.getUnits().size());
+            Assertions.assertEquals(ProductionStation.FAILED, subject.getUnits().get(1).getState());
+            Assertions.assertEquals(1, subject.getFailed());
+            Assertions.assertFalse(subject.retry(unit));
+        }
+    }
+
+    @Test
+    void testRemovedWhileFlashing() throws Exception {
+        byte[] image = FirmwareImages.createImage(65536, 13);
+
+        try (UploadEventLoop loop = new UploadEventLoop(); TestStation subject = new TestStation(new Firmware(2, image, "Test"), loop) {
+
+            @Override
+            protected ComPort createComPort(String portName) {
+                P2RomEmulator board = new P2RomEmulator(portName);
+                board.setLineRateEmulation(true);
+                return board;
+            }
+
+        }) {
+            subject.plug("COM2", 2);
+            subject.scan();
+            subject.unplug("COM2");
+            subject.scan();
+            awaitUnits(subject);
+
+            ProductionStation.Unit unit = subject.getUnits().get(0);
+            Assertions.assertEquals(ProductionStation.REMOVED, unit.getState());
+            Assertions.assertEquals("Board removed", unit.getError());
+            Assertions.assertEquals(0, subject.getFailed());
+        }
+    }
+
+    static void awaitUnits(ProductionStation subject) throws Exception {
+        for (ProductionStation.Unit unit : subject.getUnits()) {
+            try {
+                unit.future.join();
+            } catch (Exception e) {
+                // Do nothing
+            }
+        }
+        // The state is set by the completion handler, after the future is completed
+        long timeout = System.currentTimeMillis() + 1000;
+        for (ProductionStation.Unit unit : subject.getUnits()) {
+            while (unit.getState() == ProductionStation.FLASHING && System.currentTimeMillis() < timeout) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+}
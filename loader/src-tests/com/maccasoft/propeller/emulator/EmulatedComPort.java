@@ -0,0 +1,432 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller.emulator;
+
+import java.util.ArrayDeque;
+
+import com.maccasoft.propeller.port.ComPort;
+import com.maccasoft.propeller.port.ComPortException;
+
+/**
+ * In-memory serial port connected to an emulated device.
+ *
+ * Bytes written by the host are handed to {@link #receive(int, long)} with the time, in nanoseconds,
+ * at which they reach the device. When line rate emulation is enabled the arrival times are spaced
+ * by the character time at the configured baud rate and write calls block until the data is on the
+ * wire, responses are made available to the host only after their transmission time.
+ */
+public abstract class EmulatedComPort extends ComPort {
+
+    static class Response {
+
+        final int data;
+        final long time;
+
+        Response(int data, long time) {
+            this.data = data;
+            this.time = time;
+        }
+
+    }
+
+    final String portName;
+
+    boolean opened;
+    int baudRate = 115200;
+    boolean lineRateEmulation;
+    int bootTime;
+
+    byte[] writeBuffer;
+    int writeCount;
+
+    long txFreeTime;
+    long rxFreeTime;
+    long resetTime;
+
+    final ArrayDeque<Response> rxQueue = new ArrayDeque<>();
+
+    long bytesWritten;
+    long bytesRead;
+    long writeCalls;
+    long readCalls;
+
+    protected EmulatedComPort(String portName) {
+        this.portName = portName;
+    }
+
+    @Override
+    public String getName() {
+        return portName;
+    }
+
+    @Override
+    public String getDescription() {
+        return portName;
+    }
+
+    @Override
+    public String getPortName() {
+        return portName;
+    }
+
+    @Override
+    public boolean isOpened() {
+        return opened;
+    }
+
+    @Override
+    public boolean openPort() throws ComPortException {
+        if (opened) {
+            throw new ComPortException("Port busy");
+        }
+        opened = true;
+        return true;
+    }
+
+    @Override
+    public boolean setParams(int baudRate, int dataBits, int stopBits, int parity) throws ComPortException {
+        checkOpened();
+        flush();
+        this.baudRate = baudRate;
+        return true;
+    }
+
+    @Override
+    public void closePort() throws ComPortException {
+        checkOpened();
+        try {
+            flush();
+        } catch (ComPortException e) {
+            // Do nothing
+        }
+        opened = false;
+    }
+
+    @Override
+    public void hwreset(int delay) {
+        writeCount = 0;
+        synchronized (rxQueue) {
+            rxQueue.clear();
+        }
+        resetTime = System.nanoTime();
+        txFreeTime = rxFreeTime = resetTime;
+        reset(delay, resetTime);
+        msleep(delay);
+    }
+
+    @Override
+    public int readByteWithTimeout(int timeout) throws ComPortException {
+        checkOpened();
+        flush();
+        readCalls++;
+
+        timeout = limitTimeout(timeout);
+        long deadline = System.nanoTime() + timeout * 1_000_000L;
+        synchronized (rxQueue) {
+            for (;;) {
+                long now = System.nanoTime();
+                Response response = rxQueue.peek();
+                if (response != null && response.time <= now) {
+                    rxQueue.remove();
+                    bytesRead++;
+                    return response.data & 0xFF;
+                }
+                checkDeadline();
+                long wait = deadline - now;
+                if (wait <= 0) {
+                    return -1;
+                }
+                if (response != null) {
+                    wait = Math.min(wait, response.time - now);
+                }
+                if (this.deadline != null) {
+                    wait = Math.min(wait, DEADLINE_POLL_INTERVAL * 1_000_000L);
+                }
+                try {
+                    rxQueue.wait(Math.max(wait / 1_000_000L, 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return -1;
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean writeInt(int singleInt) throws ComPortException {
+        return writeBytes(new byte[] {
+            (byte) singleInt
+        }, 0, 1);
+    }
+
+    @Override
+    public boolean writeByte(byte singleByte) throws ComPortException {
+        return writeBytes(new byte[] {
+            singleByte
+        }, 0, 1);
+    }
+
+    @Override
+    public boolean writeBytes(byte[] buffer) throws ComPortException {
+        return writeBytes(buffer, 0, buffer.length);
+    }
+
+    @Override
+    public boolean writeBytes(byte[] buffer, int offset, int length) throws ComPortException {
+        if (writeBuffer != null) {
+            if (length > writeBuffer.length - writeCount) {
+                flush();
+            }
+            if (length <= writeBuffer.length) {
+                System.arraycopy(buffer, offset, writeBuffer, writeCount, length);
+                writeCount += length;
+                return true;
+            }
+        }
+        return write(buffer, offset, length);
+    }
+
+    /**
+     * Sets the size of the write buffer, with the same behaviour of the serial port buffer.
+     *
+     * @param size the buffer size, or 0 to write the bytes immediately
+     */
+    public void setWriteBufferSize(int size) throws ComPortException {
+        flush();
+        writeBuffer = size > 0 ? new byte[size] : null;
+    }
+
+    @Override
+    public void flush() throws ComPortException {
+        if (writeCount != 0) {
+            int count = writeCount;
+            writeCount = 0;
+            write(writeBuffer, 0, count);
+        }
+    }
+
+    @Override
+    public boolean writeString(String string) throws ComPortException {
+        return writeBytes(string.getBytes());
+    }
+
+    protected boolean write(byte[] buffer, int ofs, int len) throws ComPortException {
+        checkOpened();
+        checkDeadline();
+        writeCalls++;
+
+        long now = System.nanoTime();
+        long time = Math.max(now, txFreeTime);
+        long characterTime = getCharacterTime();
+        for (int i = 0; i < len; i++) {
+            if (lineRateEmulation) {
+                time += characterTime;
+            }
+            else {
+                time = System.nanoTime();
+            }
+            if (time - resetTime >= bootTime * 1_000_000L) {
+                receive(buffer[ofs + i] & 0xFF, time);
+            }
+        }
+        bytesWritten += len;
+
+        if (lineRateEmulation) {
+            txFreeTime = time;
+            sleepUntil(time);
+        }
+        return true;
+    }
+
+    @Override
+    public byte[] readBytes() throws ComPortException {
+        checkOpened();
+        flush();
+        readCalls++;
+
+        synchronized (rxQueue) {
+            long now = System.nanoTime();
+            int count = 0;
+            for (Response response : rxQueue) {
+                if (response.time > now) {
+                    break;
+                }
+                count++;
+            }
+            if (count == 0) {
+                return null;
+            }
+            byte[] result = new byte[count];
+            for (int i = 0; i < count; i++) {
+                result[i] = (byte) rxQueue.remove().data;
+            }
+            bytesRead += count;
+            return result;
+        }
+    }
+
+    @Override
+    public int readBytes(byte[] buffer, int offset, int length, int timeout) throws ComPortException {
+        if (length == 0) {
+            return 0;
+        }
+        int b = readByteWithTimeout(timeout);
+        if (b == -1) {
+            return 0;
+        }
+        buffer[offset] = (byte) b;
+
+        int count = 1;
+        synchronized (rxQueue) {
+            long now = System.nanoTime();
+            while (count < length) {
+                Response response = rxQueue.peek();
+                if (response == null || response.time > now) {
+                    break;
+                }
+                rxQueue.remove();
+                buffer[offset + count++] = (byte) response.data;
+            }
+            bytesRead += count - 1;
+        }
+        return count;
+    }
+
+    @Override
+    public void setRTS(boolean enable) throws ComPortException {
+        checkOpened();
+    }
+
+    @Override
+    public void setDTR(boolean enable) throws ComPortException {
+        checkOpened();
+    }
+
+    @Override
+    public boolean isCTS() throws ComPortException {
+        return false;
+    }
+
+    @Override
+    public boolean isDSR() throws ComPortException {
+        return false;
+    }
+
+    /**
+     * Queues a byte to be sent to the host, the byte is sent after any pending response and not
+     * before the given time.
+     */
+    protected void send(int data, long time) {
+        synchronized (rxQueue) {
+            if (lineRateEmulation) {
+                time = Math.max(time, rxFreeTime) + getCharacterTime();
+                rxFreeTime = time;
+            }
+            rxQueue.add(new Response(data, time));
+            rxQueue.notifyAll();
+        }
+    }
+
+    protected void send(byte[] data, long time) {
+        for (int i = 0; i < data.length; i++) {
+            send(data[i], time);
+        }
+    }
+
+    /**
+     * Called when the host pulses the reset line, the device should restart its boot sequence.
+     *
+     * @param delay the time, in milliseconds, the host waits before talking to the device
+     * @param time the reset time
+     */
+    protected abstract void reset(int delay, long time);
+
+    /**
+     * Called for each byte received from the host.
+     *
+     * @param data the received byte
+     * @param time the time the byte reached the device
+     */
+    protected abstract void receive(int data, long time);
+
+    public long getCharacterTime() {
+        return 10 * 1_000_000_000L / baudRate;
+    }
+
+    public int getBaudRate() {
+        return baudRate;
+    }
+
+    /**
+     * Sets the time the device needs after the reset before it can receive data, bytes received
+     * earlier are lost.
+     *
+     * @param bootTime the boot time, in milliseconds
+     */
+    public void setBootTime(int bootTime) {
+        this.bootTime = bootTime;
+    }
+
+    public boolean isLineRateEmulation() {
+        return lineRateEmulation;
+    }
+
+    public void setLineRateEmulation(boolean lineRateEmulation) {
+        this.lineRateEmulation = lineRateEmulation;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getWriteCalls() {
+        return writeCalls;
+    }
+
+    public long getReadCalls() {
+        return readCalls;
+    }
+
+    public void resetStatistics() {
+        bytesWritten = bytesRead = writeCalls = readCalls = 0;
+    }
+
+    void checkOpened() throws ComPortException {
+        if (!opened) {
+            throw new ComPortException("Port not opened");
+        }
+    }
+
+    static void sleepUntil(long time) {
+        long delay = time - System.nanoTime();
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay / 1_000_000L, (int) (delay % 1_000_000L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    static void msleep(int msec) {
+        try {
+            Thread.sleep(msec);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller.emulator;
+
+/**
+ * Emulates the P8X32A boot ROM serial loader.
+ *
+ * The emulator answers the LFSR handshake and version bits, decodes the 3-bit per byte long
+ * encoding, validates the RAM checksum and simulates the EEPROM program and verify timings.
+ */
+public class P1RomEmulator extends EmulatedComPort {
+
+    public static final int VERSION = 1;
+
+    public static final int RAM_SIZE = 32768;
+    public static final int EEPROM_SIZE = 32768;
+
+    public static final int DEFAULT_CHECKSUM_TIME = 32;
+    public static final int DEFAULT_EEPROM_PROGRAM_TIME = 2048;
+    public static final int DEFAULT_EEPROM_VERIFY_TIME = 740;
+
+    static final int SHUTDOWN = 0;
+    static final int CALIBRATION = 1;
+    static final int LFSR = 2;
+    static final int HANDSHAKE = 3;
+    static final int COMMAND = 4;
+    static final int VERIFY_RAM = 5;
+    static final int PROGRAM_EEPROM = 6;
+    static final int VERIFY_EEPROM = 7;
+    static final int RUNNING = 8;
+
+    static final int[] initCallFrame = {
+        0xFF, 0xFF, 0xF9, 0xFF, 0xFF, 0xFF, 0xF9, 0xFF
+    };
+
+    volatile int state;
+    int lfsr;
+    int count;
+
+    int[] encodedLong = new int[11];
+    int encodedCount;
+
+    int command;
+    int longCount;
+    int longIndex;
+
+    boolean checksumValid;
+    long readyTime;
+
+    final byte[] ram = new byte[RAM_SIZE];
+    final byte[] eeprom = new byte[EEPROM_SIZE];
+
+    int checksumTime = DEFAULT_CHECKSUM_TIME;
+    int eepromProgramTime = DEFAULT_EEPROM_PROGRAM_TIME;
+    int eepromVerifyTime = DEFAULT_EEPROM_VERIFY_TIME;
+
+    int loadCount;
+    int checksumErrors;
+
+    public P1RomEmulator() {
+        this("P1");
+    }
+
+    public P1RomEmulator(String portName) {
+        super(portName);
+    }
+
+    @Override
+    protected void reset(int delay, long time) {
+        state = CALIBRATION;
+    }
+
+    @Override
+    protected void receive(int data, long time) {
+        switch (state) {
+            case CALIBRATION:
+                if (data == 0xF9) {
+                    lfsr = 'P';
+                    count = 0;
+                    state = LFSR;
+                }
+                break;
+
+            case LFSR:
+                if (data != (0xFE | iterate())) {
+                    state = SHUTDOWN;
+                    break;
+                }
+                if (++count == 250) {
+                    count = 0;
+                    state = HANDSHAKE;
+                }
+                break;
+
+            case HANDSHAKE:
+                if (data == 0xF9) {
+                    int bit = count < 250 ? iterate() : (VERSION >> (count - 250)) & 1;
+                    send(0xFE | bit, time);
+                    if (++count == 258) {
+                        encodedCount = 0;
+                        longCount = longIndex = -1;
+                        command = -1;
+                        state = COMMAND;
+                    }
+                }
+                break;
+
+            case COMMAND:
+                encodedLong[encodedCount++] = data;
+                if (encodedCount == encodedLong.length) {
+                    encodedCount = 0;
+                    receiveLong(time);
+                }
+                break;
+
+            case VERIFY_RAM:
+                if (data == 0xF9 && time >= readyTime) {
+                    if (!checksumValid) {
+                        state = SHUTDOWN;
+                    }
+                    else if ((command & 2) != 0) {
+                        readyTime = time + eepromProgramTime * 1_000_000L;
+                        state = PROGRAM_EEPROM;
+                    }
+                    else {
+                        state = RUNNING;
+                    }
+                    send(checksumValid ? 0xFE : 0xFF, time);
+                }
+                break;
+
+            case PROGRAM_EEPROM:
+                if (data == 0xF9 && time >= readyTime) {
+                    System.arraycopy(ram, 0, eeprom, 0, eeprom.length);
+                    send(0xFE, time);
+                    readyTime = time + eepromVerifyTime * 1_000_000L;
+                    state = VERIFY_EEPROM;
+                }
+                break;
+
+            case VERIFY_EEPROM:
+                if (data == 0xF9 && time >= readyTime) {
+                    state = (command & 1) != 0 ? RUNNING : SHUTDOWN;
+                    send(0xFE, time);
+                }
+                break;
+        }
+    }
+
+    void receiveLong(long time) {
+        int value = 0;
+
+        for (int i = 9; i >= 0; i--) {
+            int data = encodedLong[i];
+            if ((data & 0xB6) != 0x92) {
+                state = SHUTDOWN;
+                return;
+            }
+            value = (value << 3) | ((data >> 4) & 4) | ((data >> 2) & 2) | (data & 1);
+        }
+
+        int data = encodedLong[10];
+        if ((data & 0xF6) != 0xF2) {
+            state = SHUTDOWN;
+            return;
+        }
+        value |= (((data >> 2) & 2) | (data & 1)) << 30;
+
+        if (command == -1) {
+            command = value;
+            if (command < 1 || command > 3) {
+                state = SHUTDOWN;
+            }
+        }
+        else if (longCount == -1) {
+            longCount = value;
+            longIndex = 0;
+            if (longCount < 0 || longCount > RAM_SIZE / 4) {
+                state = SHUTDOWN;
+                return;
+            }
+            for (int i = 0; i < ram.length; i++) {
+                ram[i] = 0;
+            }
+            if (longCount == 0) {
+                verifyChecksum(time);
+            }
+        }
+        else {
+            int addr = longIndex * 4;
+            ram[addr] = (byte) value;
+            ram[addr + 1] = (byte) (value >> 8);
+            ram[addr + 2] = (byte) (value >> 16);
+            ram[addr + 3] = (byte) (value >> 24);
+            if (++longIndex == longCount) {
+                verifyChecksum(time);
+            }
+        }
+    }
+
+    void verifyChecksum(long time) {
+        int sum = 0;
+        for (int i = 0; i < ram.length; i++) {
+            sum += ram[i];
+        }
+        for (int i = 0; i < initCallFrame.length; i++) {
+            sum += initCallFrame[i];
+        }
+        checksumValid = (sum & 0xFF) == 0;
+        if (!checksumValid) {
+            checksumErrors++;
+        }
+        loadCount++;
+
+        readyTime = time + checksumTime * 1_000_000L;
+        state = VERIFY_RAM;
+    }
+
+    int iterate() {
+        int bit = lfsr & 1;
+        lfsr = ((lfsr << 1) | (((lfsr >> 7) ^ (lfsr >> 5) ^ (lfsr >> 4) ^ (lfsr >> 1)) & 1)) & 0xFF;
+        return bit;
+    }
+
+    public void setChecksumTime(int checksumTime) {
+        this.checksumTime = checksumTime;
+    }
+
+    public void setEepromTiming(int programTime, int verifyTime) {
+        this.eepromProgramTime = programTime;
+        this.eepromVerifyTime = verifyTime;
+    }
+
+    public boolean isRunning() {
+        return state == RUNNING;
+    }
+
+    public int getCommand() {
+        return command;
+    }
+
+    public byte[] getRam() {
+        return ram;
+    }
+
+    public byte[] getEeprom() {
+        return eeprom;
+    }
+
+    public int getLoadCount() {
+        return loadCount;
+    }
+
+    public int getChecksumErrors() {
+        return checksumErrors;
+    }
+
+}
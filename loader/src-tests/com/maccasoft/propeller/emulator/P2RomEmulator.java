@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller.emulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.maccasoft.propeller.loader.Propeller2Loader;
+
+/**
+ * Emulates the P2X8C4M64P boot ROM serial loader.
+ *
+ * The emulator answers Prop_Chk, decodes Prop_Txt (base64) and Prop_Hex data, checks the
+ * 0x706F7250 checksum and replies with '.' or '!'. When the loaded image starts with the
+ * flash_loader.binary stub, the appended application is written to the emulated flash memory
+ * using the configured erase and program times.
+ */
+public class P2RomEmulator extends EmulatedComPort {
+
+    public static final char VERSION = 'G';
+
+    public static final int CHECKSUM = 0x706F7250;
+
+    public static final int RAM_SIZE = 512 * 1024;
+    public static final int FLASH_SIZE = 16 * 1024 * 1024;
+    public static final int FLASH_SECTOR_SIZE = 4096;
+    public static final int FLASH_PAGE_SIZE = 256;
+
+    public static final int DEFAULT_SECTOR_ERASE_TIME = 45_000;
+    public static final int DEFAULT_PAGE_PROGRAM_TIME = 700;
+
+    static final int SHUTDOWN = 0;
+    static final int COMMAND = 1;
+    static final int TEXT_DATA = 2;
+    static final int HEX_DATA = 3;
+    static final int RUNNING = 4;
+
+    static final String BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    static final byte[] flashLoader;
+    static {
+        byte[] data = new byte[0];
+        try (InputStream is = Propeller2Loader.class.getResourceAsStream("flash_loader.binary")) {
+            data = is.readAllBytes();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        flashLoader = data;
+    }
+
+    volatile int state;
+
+    final StringBuilder token = new StringBuilder();
+    final List<String> tokens = new ArrayList<>();
+
+    final ByteArrayOutputStream image = new ByteArrayOutputStream();
+    int bits;
+    int bitCount;
+
+    byte[] ram = new byte[0];
+    final byte[] flash = new byte[FLASH_SIZE];
+    int flashLength;
+    long flashReadyTime;
+
+    int sectorEraseTime = DEFAULT_SECTOR_ERASE_TIME;
+    int pageProgramTime = DEFAULT_PAGE_PROGRAM_TIME;
+
+    int loadCount;
+    int checksumErrors;
+    int flashWriteCount;
+
+    public P2RomEmulator() {
+        this("P2");
+    }
+
+    public P2RomEmulator(String portName) {
+        super(portName);
+        Arrays.fill(flash, (byte) 0xFF);
+    }
+
+    @Override
+    protected void reset(int delay, long time) {
+        token.setLength(0);
+        tokens.clear();
+        state = COMMAND;
+    }
+
+    @Override
+    protected void receive(int data, long time) {
+        switch (state) {
+            case COMMAND:
+                receiveCommand(data, time);
+                break;
+
+            case TEXT_DATA:
+                if (data == '?' || data == '~') {
+                    endOfData(data == '?', time);
+                }
+                else if (BASE64.indexOf(data) != -1) {
+                    bits = (bits << 6) | BASE64.indexOf(data);
+                    bitCount += 6;
+                    if (bitCount >= 8) {
+                        bitCount -= 8;
+                        image.write(bits >> bitCount);
+                    }
+                }
+                break;
+
+            case HEX_DATA:
+                if (data == '?' || data == '~') {
+                    addHexByte();
+                    endOfData(data == '?', time);
+                }
+                else if (Character.digit(data, 16) != -1) {
+                    token.append((char) data);
+                }
+                else {
+                    addHexByte();
+                }
+                break;
+        }
+    }
+
+    void receiveCommand(int data, long time) {
+        if (data == ' ' || data == '\t' || data == '>' || data == '\r' || data == '\n') {
+            if (token.length() != 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+            if (tokens.size() != 0 && !tokens.get(0).startsWith("Prop_")) {
+                tokens.clear();
+            }
+            if (tokens.size() == 5) {
+                String command = tokens.get(0);
+                tokens.clear();
+                if ("Prop_Chk".equals(command)) {
+                    send(("\r\nProp_Ver " + VERSION + "\r\n").getBytes(), time);
+                }
+                else if ("Prop_Txt".equals(command)) {
+                    image.reset();
+                    bits = bitCount = 0;
+                    state = TEXT_DATA;
+                }
+                else if ("Prop_Hex".equals(command)) {
+                    image.reset();
+                    state = HEX_DATA;
+                }
+            }
+        }
+        else {
+            token.append((char) data);
+        }
+    }
+
+    void addHexByte() {
+        if (token.length() != 0) {
+            image.write(Integer.parseInt(token.toString(), 16));
+            token.setLength(0);
+        }
+    }
+
+    void endOfData(boolean checksum, long time) {
+        byte[] data = image.toByteArray();
+        loadCount++;
+
+        if (checksum) {
+            if (longSum(data, data.length) != CHECKSUM) {
+                checksumErrors++;
+                state = SHUTDOWN;
+                send('!', time);
+                return;
+            }
+            data = Arrays.copyOf(data, data.length - 4);
+        }
+
+        ram = data;
+        state = RUNNING;
+
+        if (isFlashLoader(data)) {
+            programFlash(data, time);
+        }
+
+        if (checksum) {
+            send('.', time);
+        }
+    }
+
+    boolean isFlashLoader(byte[] data) {
+        if (flashLoader.length == 0 || data.length < flashLoader.length) {
+            return false;
+        }
+        for (int i = 12; i < flashLoader.length; i++) {
+            if (data[i] != flashLoader[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void programFlash(byte[] data, long time) {
+        int length = (data[8] & 0xFF) | ((data[9] & 0xFF) << 8) | ((data[10] & 0xFF) << 16) | ((data[11] & 0xFF) << 24);
+        if (length < flashLoader.length || length > data.length || longSum(data, length) != 0) {
+            return;
+        }
+
+        flashLength = length - flashLoader.length;
+        System.arraycopy(data, flashLoader.length, flash, 0, flashLength);
+        flashWriteCount++;
+
+        long sectors = (flashLength + FLASH_SECTOR_SIZE - 1) / FLASH_SECTOR_SIZE;
+        long pages = (flashLength + FLASH_PAGE_SIZE - 1) / FLASH_PAGE_SIZE;
+        flashReadyTime = time + sectors * sectorEraseTime * 1_000L + pages * pageProgramTime * 1_000L;
+    }
+
+    static int longSum(byte[] data, int length) {
+        int sum = 0;
+        for (int i = 0; i < length; i += 4) {
+            int value = data[i] & 0xFF;
+            if (i + 1 < length) {
+                value |= (data[i + 1] & 0xFF) << 8;
+            }
+            if (i + 2 < length) {
+                value |= (data[i + 2] & 0xFF) << 16;
+            }
+            if (i + 3 < length) {
+                value |= (data[i + 3] & 0xFF) << 24;
+            }
+            sum += value;
+        }
+        return sum;
+    }
+
+    /**
+     * Sets the flash timings.
+     *
+     * @param sectorEraseTime the 4K sector erase time, in microseconds
+     * @param pageProgramTime the 256 bytes page program time, in microseconds
+     */
+    public void setFlashTiming(int sectorEraseTime, int pageProgramTime) {
+        this.sectorEraseTime = sectorEraseTime;
+        this.pageProgramTime = pageProgramTime;
+    }
+
+    public boolean isRunning() {
+        return state == RUNNING;
+    }
+
+    public boolean isFlashBusy() {
+        return flashReadyTime > System.nanoTime();
+    }
+
+    public void waitFlashReady() {
+        sleepUntil(flashReadyTime);
+    }
+
+    public byte[] getRam() {
+        return ram;
+    }
+
+    public byte[] getFlash() {
+        return Arrays.copyOf(flash, flashLength);
+    }
+
+    public int getLoadCount() {
+        return loadCount;
+    }
+
+    public int getChecksumErrors() {
+        return checksumErrors;
+    }
+
+    public int getFlashWriteCount() {
+        return flashWriteCount;
+    }
+
+}
@@ -0,0 +1,604 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller.emulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.maccasoft.propeller.loader.LoaderImage;
+import com.maccasoft.propeller.port.ComPortException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import jssc.SerialPort;
+
+/**
+ * Stand-in for a Parallax WX WiFi module.
+ *
+ * Serves the /propeller/load, /propeller/reset and /wx/setting HTTP requests, the telnet serial
+ * bridge and the UDP discovery protocol. Bytes received on the telnet port are forwarded to the
+ * emulated target chip, except while the P1 second-stage loader delivered with /propeller/load is
+ * running, in which case the packet and acknowledge protocol is handled directly.
+ *
+ * Latency, jitter, bandwidth and packet loss can be injected to measure the network upload
+ * throughput without hardware.
+ */
+public class WxModuleEmulator {
+
+    public static final int MAX_DATA_SIZE = 1024;
+
+    public static final int END_OF_PACKET_GAP = 10;
+
+    static final int[] initCallFrame = {
+        0xFF, 0xFF, 0xF9, 0xFF, 0xFF, 0xFF, 0xF9, 0xFF
+    };
+
+    final String name;
+    final String macAddress;
+    final EmulatedComPort target;
+
+    HttpServer httpServer;
+    ServerSocket telnetServer;
+    DatagramSocket discoverSocket;
+
+    Thread telnetThread;
+    Thread pumpThread;
+    Thread discoverThread;
+    volatile boolean running;
+
+    volatile Socket client;
+    volatile OutputStream clientOutput;
+
+    int latency;
+    int jitter;
+    int bandwidth;
+    double packetLoss;
+    double ackLoss;
+    final Random random = new Random(0);
+
+    boolean secondStage;
+    int expectedId;
+    int lastPacketId;
+    byte[] lastAck;
+    final ByteArrayOutputStream ram = new ByteArrayOutputStream();
+    byte[] eeprom = new byte[0];
+    boolean launched;
+    int eepromProgramTime = P1RomEmulator.DEFAULT_EEPROM_PROGRAM_TIME + P1RomEmulator.DEFAULT_EEPROM_VERIFY_TIME;
+
+    int packetsReceived;
+    int packetsDropped;
+    int acksDropped;
+    int duplicatePackets;
+
+    public WxModuleEmulator(String name, String macAddress, EmulatedComPort target) {
+        this.name = name;
+        this.macAddress = macAddress;
+        this.target = target;
+    }
+
+    /**
+     * Starts the servers, a port number of 0 selects a free port.
+     */
+    public void start(InetAddress address, int httpPort, int telnetPort, int discoverPort) throws IOException {
+        try {
+            target.openPort();
+        } catch (ComPortException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        running = true;
+
+        httpServer = HttpServer.create(new InetSocketAddress(address, httpPort), 0);
+        httpServer.createContext("/propeller/load", (exchange) -> handleLoad(exchange));
+        httpServer.createContext("/propeller/reset", (exchange) -> handleReset(exchange));
+        httpServer.createContext("/wx/setting", (exchange) -> handleSetting(exchange));
+        httpServer.start();
+
+        telnetServer = new ServerSocket(telnetPort, 1, address);
+        telnetThread = new Thread(() -> telnetLoop(), "WX telnet");
+        telnetThread.setDaemon(true);
+        telnetThread.start();
+
+        pumpThread = new Thread(() -> pumpLoop(), "WX serial");
+        pumpThread.setDaemon(true);
+        pumpThread.start();
+
+        discoverSocket = new DatagramSocket(new InetSocketAddress(address, discoverPort));
+        discoverThread = new Thread(() -> discoverLoop(), "WX discover");
+        discoverThread.setDaemon(true);
+        discoverThread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+        closeQuietly(telnetServer);
+        closeQuietly(client);
+        if (discoverSocket != null) {
+            discoverSocket.close();
+        }
+        try {
+            if (telnetThread != null) {
+                telnetThread.join(1000);
+            }
+            if (pumpThread != null) {
+                pumpThread.join(1000);
+            }
+            if (discoverThread != null) {
+                discoverThread.join(1000);
+            }
+            target.closePort();
+        } catch (Exception e) {
+            // Do nothing
+        }
+    }
+
+    void handleLoad(HttpExchange exchange) throws IOException {
+        byte[] loaderImage = exchange.getRequestBody().readAllBytes();
+
+        byte sum = 0;
+        for (int i = 0; i < loaderImage.length; i++) {
+            sum += loaderImage[i];
+        }
+        if (loaderImage.length != LoaderImage.rawLoaderImage.length || sum != 0x14) {
+            sendResponse(exchange, 400, "Bad loader image\r\n");
+            return;
+        }
+
+        int initAreaOffset = loaderImage.length + LoaderImage.RAW_LOADER_INIT_OFFSET_FROM_END;
+        int packetId = getLong(loaderImage, initAreaOffset + 36);
+
+        synchronized (this) {
+            ram.reset();
+            launched = false;
+            expectedId = packetId;
+            lastPacketId = Integer.MIN_VALUE;
+            lastAck = null;
+            secondStage = true;
+        }
+
+        if (target.isLineRateEmulation()) {
+            // Handshake plus the loader image sent by the module at 115200 baud
+            long wireBytes = 509 + (2 + loaderImage.length / 4) * 11;
+            EmulatedComPort.msleep((int) (wireBytes * 10 * 1000 / 115200));
+        }
+
+        sendResponse(exchange, 200, "OK\r\n");
+
+        sendAck(packetId, 0);
+    }
+
+    void handleReset(HttpExchange exchange) throws IOException {
+        synchronized (this) {
+            secondStage = false;
+        }
+        synchronized (target) {
+            target.hwreset(0);
+        }
+        sendResponse(exchange, 200, "");
+    }
+
+    void handleSetting(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        if ("baud-rate".equals(query.get("name"))) {
+            try {
+                synchronized (target) {
+                    target.setParams(Integer.parseInt(query.get("value")), SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+                }
+            } catch (Exception e) {
+                sendResponse(exchange, 400, "");
+                return;
+            }
+        }
+        sendResponse(exchange, 200, "");
+    }
+
+    void sendResponse(HttpExchange exchange, int code, String body) throws IOException {
+        delay();
+        byte[] data = body.getBytes();
+        // Connections are not reused, avoids the client sending a request on a connection being closed
+        exchange.getResponseHeaders().set("Connection", "close");
+        exchange.sendResponseHeaders(code, data.length != 0 ? data.length : -1);
+        if (data.length != 0) {
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(data);
+            }
+        }
+        exchange.close();
+    }
+
+    static Map<String, String> parseQuery(String query) {
+        Map<String, String> result = new HashMap<>();
+        if (query != null) {
+            for (String s : query.split("&")) {
+                int i = s.indexOf('=');
+                if (i != -1) {
+                    result.put(s.substring(0, i), s.substring(i + 1));
+                }
+                else {
+                    result.put(s, "");
+                }
+            }
+        }
+        return result;
+    }
+
+    void telnetLoop() {
+        byte[] buffer = new byte[MAX_DATA_SIZE + 8];
+
+        while (running) {
+            try {
+                Socket socket = telnetServer.accept();
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(END_OF_PACKET_GAP);
+                client = socket;
+                clientOutput = socket.getOutputStream();
+
+                InputStream is = socket.getInputStream();
+                ByteArrayOutputStream packet = new ByteArrayOutputStream();
+                while (running && !socket.isClosed()) {
+                    int len;
+                    try {
+                        len = is.read(buffer, 0, isSecondStage() ? buffer.length - packet.size() : buffer.length);
+                    } catch (SocketTimeoutException e) {
+                        if (packet.size() != 0) {
+                            receivePacket(packet.toByteArray());
+                            packet.reset();
+                        }
+                        continue;
+                    }
+                    if (len == -1) {
+                        if (packet.size() != 0) {
+                            receivePacket(packet.toByteArray());
+                        }
+                        break;
+                    }
+                    throttle(len);
+                    if (isSecondStage()) {
+                        packet.write(buffer, 0, len);
+                        if (packet.size() == buffer.length) {
+                            receivePacket(packet.toByteArray());
+                            packet.reset();
+                        }
+                    }
+                    else {
+                        synchronized (target) {
+                            target.writeBytes(Arrays.copyOf(buffer, len));
+                        }
+                    }
+                }
+                closeQuietly(socket);
+                client = null;
+            } catch (SocketException e) {
+                // Server closed
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    void pumpLoop() {
+        while (running) {
+            try {
+                int b = target.readByteWithTimeout(50);
+                if (b == -1) {
+                    continue;
+                }
+                byte[] data = target.readBytes();
+                byte[] buffer = new byte[1 + (data != null ? data.length : 0)];
+                buffer[0] = (byte) b;
+                if (data != null) {
+                    System.arraycopy(data, 0, buffer, 1, data.length);
+                }
+                delay();
+                OutputStream os = clientOutput;
+                if (os != null && client != null) {
+                    os.write(buffer);
+                    os.flush();
+                }
+            } catch (Exception e) {
+                // Do nothing
+            }
+        }
+    }
+
+    void discoverLoop() {
+        byte[] buffer = new byte[64];
+
+        while (running) {
+            try {
+                DatagramPacket request = new DatagramPacket(buffer, buffer.length);
+                discoverSocket.receive(request);
+                if (request.getLength() < 4 || buffer[0] != 0x00) {
+                    continue;
+                }
+                String json = "{\"name\":\"" + name + "\","
+                    + "\"description\":\"Emulated WX module\","
+                    + "\"reset pin\":\"12\","
+                    + "\"rx pullup\":\"disabled\","
+                    + "\"mac address\":\"" + macAddress + "\"}";
+                byte[] data = json.getBytes();
+                delay();
+                discoverSocket.send(new DatagramPacket(data, data.length, request.getSocketAddress()));
+            } catch (SocketException e) {
+                // Socket closed
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    synchronized boolean isSecondStage() {
+        return secondStage;
+    }
+
+    void receivePacket(byte[] packet) throws IOException {
+        if (packet.length < 8) {
+            return;
+        }
+        packetsReceived++;
+        if (packetLoss != 0 && random.nextDouble() < packetLoss) {
+            packetsDropped++;
+            return;
+        }
+
+        int packetId = getLong(packet, 0);
+        int tag = getLong(packet, 4);
+        byte[] payload = Arrays.copyOfRange(packet, 8, packet.length);
+
+        byte[] ack;
+        synchronized (this) {
+            if (packetId == lastPacketId && lastAck != null) {
+                duplicatePackets++;
+                ack = lastAck;
+            }
+            else if (packetId != expectedId) {
+                return;
+            }
+            else if (expectedId > 0) {
+                ram.write(payload);
+                expectedId--;
+                ack = makeAck(expectedId, tag);
+            }
+            else if (Arrays.equals(payload, LoaderImage.verifyRAM)) {
+                byte[] image = ram.toByteArray();
+                int checksum = 0;
+                for (int i = 0; i < image.length; i++) {
+                    checksum += image[i] & 0xFF;
+                }
+                for (int i = 0; i < initCallFrame.length; i++) {
+                    checksum += initCallFrame[i];
+                }
+                expectedId = -checksum;
+                ack = makeAck(expectedId, tag);
+            }
+            else if (Arrays.equals(payload, LoaderImage.programVerifyEEPROM)) {
+                EmulatedComPort.msleep(eepromProgramTime);
+                eeprom = ram.toByteArray();
+                expectedId = expectedId * 2;
+                ack = makeAck(expectedId, tag);
+            }
+            else if (Arrays.equals(payload, LoaderImage.readyToLaunch)) {
+                expectedId--;
+                ack = makeAck(expectedId, tag);
+            }
+            else if (Arrays.equals(payload, LoaderImage.launchNow)) {
+                launched = true;
+                secondStage = false;
+                notifyAll();
+                return;
+            }
+            else {
+                return;
+            }
+            lastPacketId = packetId;
+            lastAck = ack;
+        }
+
+        if (ackLoss != 0 && random.nextDouble() < ackLoss) {
+            acksDropped++;
+            return;
+        }
+        delay();
+        writeToClient(ack);
+    }
+
+    void sendAck(int packetId, int tag) throws IOException {
+        delay();
+        for (int i = 0; i < 100 && clientOutput == null; i++) {
+            EmulatedComPort.msleep(10);
+        }
+        writeToClient(makeAck(packetId, tag));
+    }
+
+    void writeToClient(byte[] data) throws IOException {
+        OutputStream os = clientOutput;
+        if (os != null) {
+            os.write(data);
+            os.flush();
+        }
+    }
+
+    static byte[] makeAck(int packetId, int tag) {
+        byte[] ack = new byte[8];
+        setLong(ack, 0, packetId);
+        setLong(ack, 4, tag);
+        return ack;
+    }
+
+    void delay() {
+        int msec = latency;
+        if (jitter != 0) {
+            msec += random.nextInt(jitter + 1);
+        }
+        if (msec > 0) {
+            EmulatedComPort.msleep(msec);
+        }
+    }
+
+    void throttle(int len) {
+        if (bandwidth > 0) {
+            EmulatedComPort.sleepUntil(System.nanoTime() + len * 1_000_000_000L / bandwidth);
+        }
+    }
+
+    static int getLong(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8) | ((data[offset + 2] & 0xFF) << 16) | ((data[offset + 3] & 0xFF) << 24);
+    }
+
+    static void setLong(byte[] data, int offset, int value) {
+        data[offset + 0] = (byte) value;
+        data[offset + 1] = (byte) (value >> 8);
+        data[offset + 2] = (byte) (value >> 16);
+        data[offset + 3] = (byte) (value >> 24);
+    }
+
+    static void closeQuietly(AutoCloseable closeable) {
+        try {
+            if (closeable != null) {
+                closeable.close();
+            }
+        } catch (Exception e) {
+            // Do nothing
+        }
+    }
+
+    public int getHttpPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    public int getTelnetPort() {
+        return telnetServer.getLocalPort();
+    }
+
+    public int getDiscoverPort() {
+        return discoverSocket.getLocalPort();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getMacAddress() {
+        return macAddress;
+    }
+
+    public EmulatedComPort getTarget() {
+        return target;
+    }
+
+    /**
+     * Sets the latency added to each response and the maximum random jitter, in milliseconds.
+     */
+    public void setLatency(int latency, int jitter) {
+        this.latency = latency;
+        this.jitter = jitter;
+    }
+
+    /**
+     * Sets the bandwidth limit of the data received from the host, in bytes per second, 0 disables the limit.
+     */
+    public void setBandwidth(int bandwidth) {
+        this.bandwidth = bandwidth;
+    }
+
+    /**
+     * Sets the probability of losing a second-stage loader packet or its acknowledge.
+     */
+    public void setPacketLoss(double packetLoss, double ackLoss) {
+        this.packetLoss = packetLoss;
+        this.ackLoss = ackLoss;
+    }
+
+    public void setRandomSeed(long seed) {
+        random.setSeed(seed);
+    }
+
+    public void setEepromProgramTime(int eepromProgramTime) {
+        this.eepromProgramTime = eepromProgramTime;
+    }
+
+    public synchronized byte[] getRam() {
+        return ram.toByteArray();
+    }
+
+    public synchronized byte[] getEeprom() {
+        return eeprom;
+    }
+
+    public synchronized boolean isLaunched() {
+        return launched;
+    }
+
+    /**
+     * Waits for the launch packet that completes a second-stage upload, the packet is not acknowledged.
+     */
+    public synchronized boolean waitLaunched(int timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (!launched) {
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) {
+                break;
+            }
+            wait(wait);
+        }
+        return launched;
+    }
+
+    public int getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    public int getPacketsDropped() {
+        return packetsDropped;
+    }
+
+    public int getAcksDropped() {
+        return acksDropped;
+    }
+
+    public int getDuplicatePackets() {
+        return duplicatePackets;
+    }
+
+    public static void main(String[] args) {
+        try {
+            EmulatedComPort target = args.length > 0 && "p2".equalsIgnoreCase(args[0]) ? new P2RomEmulator() : new P1RomEmulator();
+            int httpPort = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+            int telnetPort = args.length > 2 ? Integer.parseInt(args[2]) : 2323;
+            int discoverPort = args.length > 3 ? Integer.parseInt(args[3]) : 32421;
+
+            WxModuleEmulator emulator = new WxModuleEmulator("wx-emulator", "00:00:00:00:00:01", target);
+            emulator.start(InetAddress.getLoopbackAddress(), httpPort, telnetPort, discoverPort);
+            System.out.println("Serving http=" + emulator.getHttpPort() + ", telnet=" + emulator.getTelnetPort() + ", discover=" + emulator.getDiscoverPort());
+            emulator.telnetThread.join();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.maccasoft.propeller.loader;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.maccasoft.propeller.emulator.P1RomEmulator;
+import com.maccasoft.propeller.emulator.P2RomEmulator;
+
+import jssc.SerialPort;
+
+class HandshakeTest {
+
+    @Test
+    void testP1() throws Exception {
+        P1RomEmulator emulator = new P1RomEmulator();
+        emulator.openPort();
+        emulator.hwreset(0);
+        emulator.resetStatistics();
+
+        Assertions.assertEquals(P1RomEmulator.VERSION, Handshake.p1(emulator));
+        Assertions.assertEquals(1, emulator.getWriteCalls());
+        Assertions.assertEquals(Handshake.P1_RESPONSE_LENGTH, emulator.getBytesRead());
+        Assertions.assertTrue(emulator.getReadCalls() <= 4);
+    }
+
+    @Test
+    void testP1LineRate() throws Exception {
+        P1RomEmulator emulator = new P1RomEmulator();
+        emulator.setLineRateEmulation(true);
+        emulator.openPort();
+        emulator.setParams(115200, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+        emulator.hwreset(0);
+
+        Assertions.assertEquals(P1RomEmulator.VERSION, Handshake.p1(emulator));
+    }
+
+    @Test
+    void testP1NotResponding() throws Exception {
+        P2RomEmulator emulator = new P2RomEmulator();
+        emulator.openPort();
+        emulator.hwreset(0);
+
+        Assertions.assertEquals(0, Handshake.p1(emulator));
+    }
+
+    @Test
+    void testP2() throws Exception {
+        P2RomEmulator emulator = new P2RomEmulator();
+        emulator.openPort();
+        emulator.hwreset(0);
+        emulator.resetStatistics();
+
+        Assertions.assertEquals(P2RomEmulator.VERSION, Handshake.p2(emulator));
+        Assertions.assertEquals(1, emulator.getWriteCalls());
+        Assertions.assertEquals(-1, emulator.readByteWithTimeout(10));
+    }
+
+    @Test
+    void testP2NotResponding() throws Exception {
+        P1RomEmulator emulator = new P1RomEmulator();
+        emulator.openPort();
+        emulator.hwreset(0);
+
+        Assertions.assertEquals(0, Handshake.p2(emulator));
+    }
+
+}
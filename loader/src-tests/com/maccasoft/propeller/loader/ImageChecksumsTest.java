@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller.loader;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ImageChecksumsTest {
+
+    @Test
+    void testCompute() {
+        Random random = new Random(1234);
+
+        for (int length = 0; length < 64; length++) {
+            byte[] image = new byte[length];
+            random.nextBytes(image);
+
+            ImageChecksums subject = ImageChecksums.compute(image);
+            Assertions.assertEquals(length, subject.getLength());
+            Assertions.assertEquals(byteSum(image), subject.getByteSum());
+            Assertions.assertEquals(longSum(image), subject.getLongSum());
+        }
+    }
+
+    @Test
+    void testComputeRange() {
+        byte[] image = new byte[1027];
+        new Random(5678).nextBytes(image);
+
+        ImageChecksums subject = ImageChecksums.compute(image, 3, 1021);
+
+        byte[] range = new byte[1021];
+        System.arraycopy(image, 3, range, 0, range.length);
+        Assertions.assertEquals(byteSum(range), subject.getByteSum());
+        Assertions.assertEquals(longSum(range), subject.getLongSum());
+    }
+
+    @Test
+    void testBinaryVersion() {
+        byte[] image = new byte[32];
+        image[5] = 0x14;
+        Assertions.assertEquals(1, ImageChecksums.compute(image).getBinaryVersion());
+
+        image[5] = 0x15;
+        Assertions.assertEquals(2, ImageChecksums.compute(image).getBinaryVersion());
+    }
+
+    @Test
+    void testP2Checksum() {
+        byte[] image = new byte[] {
+            0x01, 0x02, 0x03, 0x04, 0x05
+        };
+        ImageChecksums subject = ImageChecksums.compute(image);
+        Assertions.assertEquals(ImageChecksums.P2_CHECKSUM, subject.getLongSum() + subject.getP2Checksum());
+    }
+
+    static int byteSum(byte[] image) {
+        int sum = 0;
+        for (int i = 0; i < image.length; i++) {
+            sum += image[i] & 0xFF;
+        }
+        return sum;
+    }
+
+    static int longSum(byte[] image) {
+        int sum = 0;
+        for (int i = 0; i < image.length; i++) {
+            sum += (image[i] & 0xFF) << ((i & 3) * 8);
+        }
+        return sum;
+    }
+
+}
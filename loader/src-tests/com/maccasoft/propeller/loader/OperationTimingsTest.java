@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.maccasoft.propeller.loader;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OperationTimingsTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void testExpected() throws Exception {
+        OperationTimings subject = new OperationTimings();
+        Assertions.assertEquals(1000, subject.getExpected(1, OperationTimings.EEPROM_WRITE, 1000));
+
+        subject.record(1, OperationTimings.EEPROM_WRITE, 400);
+        subject.record(1, OperationTimings.EEPROM_WRITE, 800);
+
+        Assertions.assertEquals(500, subject.getExpected(1, OperationTimings.EEPROM_WRITE, 1000));
+        Assertions.assertEquals(2, subject.getSamples(1, OperationTimings.EEPROM_WRITE));
+        Assertions.assertEquals(1000, subject.getExpected(2, OperationTimings.EEPROM_WRITE, 1000));
+        Assertions.assertEquals(1000, subject.getExpected(1, OperationTimings.EEPROM_VERIFY, 1000));
+    }
+
+    @Test
+    void testSaveAndLoad() throws Exception {
+        File file = new File(tempDir, "timings/operation-timings.json");
+
+        OperationTimings subject = new OperationTimings(file);
+        subject.save();
+        Assertions.assertFalse(file.exists());
+
+        subject.record(1, OperationTimings.EEPROM_WRITE, 400);
+        subject.record(1, OperationTimings.EEPROM_VERIFY, 150);
+        subject.save();
+        Assertions.assertTrue(file.exists());
+
+        OperationTimings loaded = new OperationTimings(file);
+        Assertions.assertEquals(400, loaded.getExpected(1, OperationTimings.EEPROM_WRITE, 1000));
+        Assertions.assertEquals(150, loaded.getExpected(1, OperationTimings.EEPROM_VERIFY, 1000));
+        Assertions.assertEquals(1, loaded.getSamples(1, OperationTimings.EEPROM_WRITE));
+        Assertions.assertEquals(0, loaded.getSamples(1, OperationTimings.VERIFY_RAM));
+    }
+
+    @Test
+    void testUnreadableFile() throws Exception {
+        File file = new File(tempDir, "operation-timings.json");
+        Files.writeString(file.toPath(), "not json");
+
+        OperationTimings subject = new OperationTimings(file);
+        Assertions.assertEquals(1000, subject.getExpected(1, OperationTimings.EEPROM_WRITE, 1000));
+    }
+
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.maccasoft.propeller.loader;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.maccasoft.propeller.emulator.P1RomEmulator;
+import com.maccasoft.propeller.emulator.WxModuleEmulator;
+import com.maccasoft.propeller.port.ComPortException;
+import com.maccasoft.propeller.port.NetworkComPort;
+
+class Propeller1LoaderTest {
+
+    @Test
+    void testUploadRam() throws Exception {
+        P1RomEmulator emulator = new P1RomEmulator();
+        byte[] image = createImage(1024);
+
+        Propeller1Loader subject = new Propeller1Loader(emulator);
+        subject.upload(image, false);
+
+        Assertions.assertTrue(emulator.isRunning());
+        Assertions.assertEquals(Propeller1Loader.DOWNLOAD_RUN_BINARY, emulator.getCommand());
+        Assertions.assertArrayEquals(image, Arrays.copyOf(emulator.getRam(), image.length));
+        Assertions.assertFalse(emulator.isOpened());
+    }
+
+    @Test
+    void testUploadWriteBuffer() throws Exception {
+        byte[] image = createImage(4096);
+
+        P1RomEmulator emulator = new P1RomEmulator();
+        new Propeller1Loader(emulator).upload(image, false);
+        long writeCalls = emulator.getWriteCalls();
+
+        emulator = new P1RomEmulator();
+        emulator.setWriteBufferSize(4096);
+        new Propeller1Loader(emulator).upload(image, false);
+
+        Assertions.assertTrue(emulator.isRunning());
+        Assertions.assertArrayEquals(image, Arrays.copyOf(emulator.getRam(), image.length));
+        Assertions.assertTrue(emulator.getWriteCalls() < writeCalls / 10, "write calls " + emulator.getWriteCalls() + " / " + writeCalls);
+    }
+
+    @Test
+    void testUploadEeprom() throws Exception {
+        P1RomEmulator emulator = new P1RomEmulator();
+        emulator.setEepromTiming(150, 50);
+        byte[] image = createImage(2048);
+
+        Propeller1Loader subject = new Propeller1Loader(emulator);
+        subject.upload(image, true);
+
+        Assertions.assertTrue(emulator.isRunning());
+        Assertions.assertEquals(Propeller1Loader.DOWNLOAD_RUN_EEPROM, emulator.getCommand());
+        Assertions.assertArrayEquals(image, Arrays.copyOf(emulator.getEeprom(), image.length));
+    }
+
+    @Test
+    void testEepromTimingCalibration() throws Exception {
+        P1RomEmulator emulator = new P1RomEmulator();
+        emulator.setEepromTiming(300, 100);
+        byte[] image = createImage(2048);
+
+        OperationTimings timings = new OperationTimings();
+        Propeller1Loader subject = new Propeller1Loader(emulator);
+        subject.setTimings(timings);
+
+        subject.upload(image, true);
+        Assertions.assertEquals(1, timings.getSamples(1, OperationTimings.EEPROM_WRITE));
+        Assertions.assertEquals(1, timings.getSamples(1, OperationTimings.EEPROM_VERIFY));
+
+        subject.upload(image, true);
+        Assertions.assertEquals(2, timings.getSamples(1, OperationTimings.EEPROM_WRITE));
+        Assertions.assertTrue(emulator.isRunning());
+
+        int write = timings.getExpected(1, OperationTimings.EEPROM_WRITE, 0);
+        Assertions.assertTrue(write >= 300 && write < 300 + Propeller1Loader.MAX_POLL_INTERVAL * 2, "write " + write);
+        int verify = timings.getExpected(1, OperationTimings.EEPROM_VERIFY, 0);
+        Assertions.assertTrue(verify >= 100 && verify < 100 + Propeller1Loader.MAX_POLL_INTERVAL * 2, "verify " + verify);
+    }
+
+    @Test
+    void testTimeBudget() throws Exception {
+        P1RomEmulator emulator = new P1RomEmulator();
+        emulator.setEepromTiming(5000, 50);
+        byte[] image = createImage(2048);
+
+        Propeller1Loader subject = new Propeller1Loader(emulator);
+        subject.setTimings(new OperationTimings());
+        subject.setTimeBudget(500);
+
+        ComPortException e = Assertions.assertThrows(ComPortException.class, () -> {
+            subject.upload(image, true);
+        });
+        Assertions.assertEquals("Time budget exceeded", e.getMessage());
+        Assertions.assertArrayEquals(new byte[P1RomEmulator.EEPROM_SIZE], emulator.getEeprom());
+        Assertions.assertEquals(0, subject.getResult().getTotalRetries());
+        Assertions.assertFalse(emulator.isOpened());
+        Assertions.assertNull(emulator.getDeadline());
+    }
+
+    @Test
+    void testCancel() throws Exception {
+        P1RomEmulator emulator = new P1RomEmulator();
+        emulator.setEepromTiming(5000, 50);
+        byte[] image = createImage(2048);
+
+        Propeller1Loader subject = new Propeller1Loader(emulator);
+        subject.setTimings(new OperationTimings());
+
+        Thread thread = new Thread(() -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                // Do nothing
+            }
+            subject.cancel();
+        });
+        thread.start();
+
+        ComPortException e = Assertions.assertThrows(ComPortException.class, () -> {
+            subject.upload(image, true);
+        });
+        Assertions.assertEquals("Operation cancelled", e.getMessage());
+        Assertions.assertArrayEquals(new byte[P1RomEmulator.EEPROM_SIZE], emulator.getEeprom());
+        Assertions.assertEquals(0, subject.getResult().getTotalRetries());
+        thread.join();
+    }
+
+    @Test
+    void testUploadAfterCancel() throws Exception {
+        P1RomEmulator emulator = new P1RomEmulator();
+        byte[] image = createImage(2048);
+
+        Propeller1Loader subject = new Propeller1Loader(emulator);
+        subject.cancel();
+
+        ComPortException e = Assertions.assertThrows(ComPortException.class, () -> {
+            subject.upload(image, false);
+        });
+        Assertions.assertEquals("Operation cancelled", e.getMessage());
+
+        subject.upload(image, false);
+        Assertions.assertTrue(emulator.isRunning());
+        Assertions.assertArrayEquals(image, Arrays.copyOf(emulator.getRam(), image.length));
+    }
+
+    @Test
+    void testChecksumError() throws Exception {
+        P1RomEmulator emulator = new P1RomEmulator();
+        byte[] image = createImage(1024);
+        image[100]++;
+
+        Propeller1Loader subject = new Propeller1Loader(emulator);
+        subject.setRetryPolicy(RetryPolicy.none());
+        ComPortException e = Assertions.assertThrows(ComPortException.class, () -> {
+            subject.upload(image, false);
+        });
+
+        Assertions.assertEquals("Checksum error", e.getMessage());
+        Assertions.assertEquals(1, emulator.getChecksumErrors());
+        Assertions.assertFalse(emulator.isRunning());
+    }
+
+    @Test
+    void testChecksumErrorRetry() throws Exception {
+        P1RomEmulator emulator = new P1RomEmulator();
+        byte[] image = createImage(1024);
+        image[100]++;
+
+        Propeller1Loader subject = new Propeller1Loader(emulator);
+        Assertions.assertThrows(ComPortException.class, () -> {
+            subject.upload(image, false);
+        });
+
+        Assertions.assertEquals(2, emulator.getChecksumErrors());
+        Assertions.assertEquals(1, subject.getResult().getRetries(RetryPolicy.PHASE_VERIFY));
+        Assertions.assertEquals(RetryPolicy.getDefault().getAttempts(RetryPolicy.PHASE_VERIFY), emulator.getChecksumErrors());
+    }
+
+    @Test
+    void testHandshakeRetry() throws Exception {
+        P1RomEmulator emulator = new P1RomEmulator() {
+
+            int resets;
+
+            @Override
+            protected void reset(int delay, long time) {
+                // The first reset is lost
+                if (resets++ != 0) {
+                    super.reset(delay, time);
+                }
+            }
+
+        };
+        byte[] image = createImage(1024);
+
+        Propeller1Loader subject = new Propeller1Loader(emulator);
+        subject.upload(image, false);
+
+        Assertions.assertTrue(emulator.isRunning());
+        Assertions.assertEquals(1, subject.getResult().getRetries(RetryPolicy.PHASE_HANDSHAKE));
+        Assertions.assertEquals(1, subject.getResult().getTotalRetries());
+        Assertions.assertNotNull(subject.getResult().getLastError());
+    }
+
+    @Test
+    void testLineRateEmulation() throws Exception {
+        P1RomEmulator emulator = new P1RomEmulator();
+        emulator.setLineRateEmulation(true);
+        byte[] image = createImage(1024);
+
+        long start = System.nanoTime();
+        Propeller1Loader subject = new Propeller1Loader(emulator);
+        subject.upload(image, false);
+        long elapsed = System.nanoTime() - start;
+
+        // 2 + 256 encoded longs of 11 bytes each, plus the 509 bytes handshake
+        long wireBytes = (2 + image.length / 4) * 11 + 509;
+        Assertions.assertTrue(elapsed >= wireBytes * emulator.getCharacterTime());
+        Assertions.assertTrue(emulator.isRunning());
+    }
+
+    @Test
+    void testNetworkUpload() throws Exception {
+        WxModuleEmulator emulator = new WxModuleEmulator("wx-test", "00:11:22:33:44:55", new P1RomEmulator());
+        emulator.start(InetAddress.getLoopbackAddress(), 0, 0, 0);
+        try {
+            byte[] image = createImage(4000);
+
+            Propeller1Loader subject = new Propeller1Loader(createNetworkComPort(emulator));
+            subject.upload(image, false);
+
+            Assertions.assertTrue(emulator.waitLaunched(1000));
+            Assertions.assertArrayEquals(image, emulator.getRam());
+        } finally {
+            emulator.stop();
+        }
+    }
+
+    @Test
+    void testNetworkUploadEeprom() throws Exception {
+        WxModuleEmulator emulator = new WxModuleEmulator("wx-test", "00:11:22:33:44:55", new P1RomEmulator());
+        emulator.setEepromProgramTime(100);
+        emulator.start(InetAddress.getLoopbackAddress(), 0, 0, 0);
+        try {
+            byte[] image = createImage(2048);
+
+            Propeller1Loader subject = new Propeller1Loader(createNetworkComPort(emulator));
+            subject.upload(image, true);
+
+            Assertions.assertTrue(emulator.waitLaunched(1000));
+            Assertions.assertArrayEquals(image, emulator.getEeprom());
+        } finally {
+            emulator.stop();
+        }
+    }
+
+    @Test
+    void testNetworkUploadPacketLoss() throws Exception {
+        WxModuleEmulator emulator = new WxModuleEmulator("wx-test", "00:11:22:33:44:55", new P1RomEmulator());
+        emulator.setPacketLoss(0.2, 0.2);
+        emulator.setRandomSeed(1);
+        emulator.start(InetAddress.getLoopbackAddress(), 0, 0, 0);
+        try {
+            byte[] image = createImage(8192);
+
+            Propeller1Loader subject = new Propeller1Loader(createNetworkComPort(emulator));
+            subject.setRetryPolicy(RetryPolicy.none());
+            subject.upload(image, false);
+
+            Assertions.assertTrue(emulator.waitLaunched(1000));
+            Assertions.assertArrayEquals(image, emulator.getRam());
+            Assertions.assertEquals(emulator.getPacketsDropped() + emulator.getAcksDropped(), subject.getResult().getRetransmissions());
+            Assertions.assertEquals(emulator.getAcksDropped(), emulator.getDuplicatePackets());
+            Assertions.assertTrue(subject.getResult().getRetransmissions() != 0);
+        } finally {
+            emulator.stop();
+        }
+    }
+
+    static NetworkComPort createNetworkComPort(WxModuleEmulator emulator) {
+        NetworkComPort comPort = new NetworkComPort(emulator.getName(), InetAddress.getLoopbackAddress(), emulator.getMacAddress(), "12");
+        comPort.setHttpPort(emulator.getHttpPort());
+        comPort.setTelnetPort(emulator.getTelnetPort());
+        return comPort;
+    }
+
+    static byte[] createImage(int size) {
+        byte[] image = new byte[size];
+        for (int i = 16; i < image.length; i++) {
+            image[i] = (byte) (i * 7);
+        }
+        byte sum = 0;
+        for (int i = 0; i < image.length; i++) {
+            sum += image[i];
+        }
+        image[5] = (byte) (0x14 - sum);
+        return image;
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.maccasoft.propeller.loader;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.maccasoft.propeller.emulator.P2RomEmulator;
+import com.maccasoft.propeller.emulator.WxModuleEmulator;
+
+import jssc.SerialPort;
+
+class Propeller2LoaderTest {
+
+    @Test
+    void testUploadRam() throws Exception {
+        P2RomEmulator emulator = new P2RomEmulator();
+        byte[] image = createImage(1000);
+
+        Propeller2Loader subject = new Propeller2Loader(emulator);
+        subject.upload(image, false);
+
+        Assertions.assertTrue(emulator.isRunning());
+        Assertions.assertArrayEquals(image, Arrays.copyOf(emulator.getRam(), image.length));
+        Assertions.assertEquals(0, emulator.getFlashWriteCount());
+        Assertions.assertFalse(emulator.isOpened());
+    }
+
+    @Test
+    void testUploadWriteBuffer() throws Exception {
+        P2RomEmulator emulator = new P2RomEmulator();
+        emulator.setWriteBufferSize(4096);
+        byte[] image = createImage(4096);
+
+        Propeller2Loader subject = new Propeller2Loader(emulator);
+        subject.upload(image, false);
+
+        Assertions.assertTrue(emulator.isRunning());
+        Assertions.assertArrayEquals(image, Arrays.copyOf(emulator.getRam(), image.length));
+        Assertions.assertTrue(emulator.getWriteCalls() < 10, "write calls " + emulator.getWriteCalls());
+    }
+
+    @Test
+    void testUploadFlash() throws Exception {
+        P2RomEmulator emulator = new P2RomEmulator();
+        emulator.setFlashTiming(100, 10);
+        byte[] image = createImage(65536);
+
+        Propeller2Loader subject = new Propeller2Loader(emulator);
+        subject.upload(image, true);
+
+        Assertions.assertTrue(emulator.isRunning());
+        Assertions.assertEquals(1, emulator.getFlashWriteCount());
+        Assertions.assertArrayEquals(image, emulator.getFlash());
+    }
+
+    @Test
+    void testHexUpload() throws Exception {
+        P2RomEmulator emulator = new P2RomEmulator();
+        byte[] image = createImage(256);
+
+        Propeller2Loader subject = new Propeller2Loader(emulator);
+        emulator.openPort();
+        emulator.setParams(2000000, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+        Assertions.assertEquals(2, subject.hwfind());
+        subject.hexUpload(image);
+        subject.verifyRam();
+        emulator.closePort();
+
+        Assertions.assertTrue(emulator.isRunning());
+        Assertions.assertArrayEquals(image, Arrays.copyOf(emulator.getRam(), image.length));
+    }
+
+    @Test
+    void testLineRateEmulation() throws Exception {
+        P2RomEmulator emulator = new P2RomEmulator();
+        emulator.setLineRateEmulation(true);
+        byte[] image = createImage(16384);
+
+        long start = System.nanoTime();
+        Propeller2Loader subject = new Propeller2Loader(emulator);
+        subject.upload(image, false);
+        long elapsed = System.nanoTime() - start;
+
+        Assertions.assertTrue(elapsed >= (image.length * 4L / 3) * emulator.getCharacterTime());
+        Assertions.assertTrue(emulator.isRunning());
+    }
+
+    @Test
+    void testNetworkUpload() throws Exception {
+        P2RomEmulator target = new P2RomEmulator();
+        WxModuleEmulator emulator = new WxModuleEmulator("wx-test", "00:11:22:33:44:55", target);
+        emulator.start(InetAddress.getLoopbackAddress(), 0, 0, 0);
+        try {
+            byte[] image = createImage(8192);
+
+            Propeller2Loader subject = new Propeller2Loader(Propeller1LoaderTest.createNetworkComPort(emulator));
+            subject.upload(image, false);
+
+            Assertions.assertTrue(target.isRunning());
+            Assertions.assertArrayEquals(image, Arrays.copyOf(target.getRam(), image.length));
+        } finally {
+            emulator.stop();
+        }
+    }
+
+    static byte[] createImage(int size) {
+        byte[] image = new byte[size];
+        for (int i = 0; i < image.length; i++) {
+            image[i] = (byte) (i * 13);
+        }
+        return image;
+    }
+
+}
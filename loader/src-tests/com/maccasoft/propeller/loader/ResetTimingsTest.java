@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.maccasoft.propeller.loader;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.maccasoft.propeller.emulator.P1RomEmulator;
+import com.maccasoft.propeller.emulator.P2RomEmulator;
+
+import jssc.SerialPort;
+
+class ResetTimingsTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void testDefaultDelay() throws Exception {
+        ResetTimings subject = new ResetTimings(null);
+
+        Assertions.assertEquals(Session.P1_RESET_DELAY, subject.getResetDelay("P1", 1));
+        Assertions.assertEquals(Session.P2_RESET_DELAY, subject.getResetDelay("P1", 2));
+        Assertions.assertEquals(-1, subject.getCalibratedDelay("P1", 1));
+    }
+
+    @Test
+    void testCalibrateP1() throws Exception {
+        P1RomEmulator emulator = new P1RomEmulator();
+        emulator.setBootTime(30);
+        emulator.openPort();
+
+        ResetTimings subject = new ResetTimings(null);
+        int delay = subject.calibrate(emulator, 1, 2);
+
+        Assertions.assertTrue(delay >= 30 && delay <= 30 + ResetTimings.RESOLUTION, "delay " + delay);
+        Assertions.assertEquals(delay, subject.getCalibratedDelay("P1", 1));
+        Assertions.assertEquals(delay + Math.max(delay / 4, ResetTimings.MIN_MARGIN), subject.getResetDelay("P1", 1));
+    }
+
+    @Test
+    void testCalibrateP2SlowBoot() throws Exception {
+        P2RomEmulator emulator = new P2RomEmulator();
+        emulator.setBootTime(40);
+        emulator.openPort();
+        emulator.setParams(Session.P2_BAUDRATE, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+
+        ResetTimings subject = new ResetTimings(null);
+        int delay = subject.calibrate(emulator, 2, 2);
+
+        Assertions.assertTrue(delay >= 40 && delay <= 40 + ResetTimings.RESOLUTION, "delay " + delay);
+        Assertions.assertEquals(delay + delay / 4, subject.getResetDelay("P2", 2));
+    }
+
+    @Test
+    void testNoChip() throws Exception {
+        P2RomEmulator emulator = new P2RomEmulator();
+        emulator.setBootTime(ResetTimings.MAX_RESET_DELAY + 100);
+        emulator.openPort();
+
+        ResetTimings subject = new ResetTimings(null);
+        Assertions.assertEquals(-1, subject.calibrate(emulator, 2, 1));
+        Assertions.assertEquals(-1, subject.getCalibratedDelay("P2", 2));
+    }
+
+    @Test
+    void testSaveAndLoad() throws Exception {
+        File file = new File(tempDir, "timings/reset-timings.json");
+
+        ResetTimings subject = new ResetTimings(file);
+        subject.setCalibratedDelay("COM1", 1, 40);
+        subject.setCalibratedDelay("COM2", 2, 8);
+        subject.save();
+
+        subject = new ResetTimings(file);
+        Assertions.assertEquals(40, subject.getCalibratedDelay("COM1", 1));
+        Assertions.assertEquals(8, subject.getCalibratedDelay("COM2", 2));
+        Assertions.assertEquals(-1, subject.getCalibratedDelay("COM2", 1));
+    }
+
+}
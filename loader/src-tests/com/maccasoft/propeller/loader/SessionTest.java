@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.maccasoft.propeller.loader;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.maccasoft.propeller.emulator.P1RomEmulator;
+import com.maccasoft.propeller.emulator.P2RomEmulator;
+
+class SessionTest {
+
+    @Test
+    void testOpenP1() throws Exception {
+        P1RomEmulator emulator = new P1RomEmulator();
+
+        Session session = Session.open(emulator);
+        Assertions.assertNotNull(session);
+        Assertions.assertEquals(1, session.getVersion());
+        Assertions.assertEquals(P1RomEmulator.VERSION, session.getChipVersion());
+        Assertions.assertTrue(emulator.isOpened());
+
+        session.close();
+        Assertions.assertFalse(emulator.isOpened());
+    }
+
+    @Test
+    void testOpenP2() throws Exception {
+        P2RomEmulator emulator = new P2RomEmulator();
+
+        Session session = Session.open(emulator);
+        Assertions.assertNotNull(session);
+        Assertions.assertEquals(2, session.getVersion());
+        Assertions.assertEquals(P2RomEmulator.VERSION, session.getChipVersion());
+        Assertions.assertTrue(emulator.isOpened());
+
+        session.close();
+        Assertions.assertFalse(emulator.isOpened());
+    }
+
+    @Test
+    void testNoDevice() throws Exception {
+        P2RomEmulator emulator = new P2RomEmulator() {
+
+            @Override
+            protected void receive(int data, long time) {
+                // Do nothing
+            }
+
+        };
+
+        Assertions.assertNull(Session.open(emulator));
+        Assertions.assertFalse(emulator.isOpened());
+    }
+
+}
@@ -0,0 +1,445 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.maccasoft.propeller.loader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.maccasoft.propeller.emulator.P1RomEmulator;
+import com.maccasoft.propeller.emulator.P2RomEmulator;
+import com.maccasoft.propeller.port.ComPortException;
+
+class UploadEventLoopTest {
+
+    @Test
+    void testUploadMany() throws Exception {
+        byte[] p1Image = Propeller1LoaderTest.createImage(2048);
+        byte[] p2Image = Propeller2LoaderTest.createImage(8192);
+
+        P1RomEmulator[] p1 = new P1RomEmulator[8];
+        P2RomEmulator[] p2 = new P2RomEmulator[8];
+        UploadTask[] tasks = new UploadTask[p1.length + p2.length];
+
+        try (UploadEventLoop subject = new UploadEventLoop()) {
+            for (int i = 0; i < p1.length; i++) {
+                p1[i] = new P1RomEmulator();
+                p1[i].setEepromTiming(150, 50);
+                Propeller1Loader loader = new Propeller1Loader(p1[i]);
+                loader.setTimings(new OperationTimings());
+                tasks[i] = subject.submit(loader, p1Image, (i & 1) != 0);
+            }
+            for (int i = 0; i < p2.length; i++) {
+                p2[i] = new P2RomEmulator();
+                p2[i].setFlashTiming(100, 10);
+                tasks[p1.length + i] = subject.submit(new Propeller2Loader(p2[i]), p2Image, (i & 1) != 0);
+            }
+        }
+
+        for (int i = 0; i < tasks.length; i++) {
+            Assertions.assertTrue(tasks[i].isDone());
+            Assertions.assertNull(tasks[i].getError());
+            Assertions.assertEquals(0, tasks[i].get().getTotalRetries());
+        }
+        for (int i = 0; i < p1.length; i++) {
+            Assertions.assertTrue(p1[i].isRunning());
+            Assertions.assertFalse(p1[i].isOpened());
+            Assertions.assertNull(p1[i].getDeadline());
+            Assertions.assertArrayEquals(p1Image, Arrays.copyOf(p1[i].getRam(), p1Image.length));
+            if ((i & 1) != 0) {
+                Assertions.assertEquals(Propeller1Loader.DOWNLOAD_RUN_EEPROM, p1[i].getCommand());
+                Assertions.assertArrayEquals(p1Image, Arrays.copyOf(p1[i].getEeprom(), p1Image.length));
+            }
+            else {
+                Assertions.assertEquals(Propeller1Loader.DOWNLOAD_RUN_BINARY, p1[i].getCommand());
+            }
+        }
+        for (int i = 0; i < p2.length; i++) {
+            Assertions.assertTrue(p2[i].isRunning());
+            Assertions.assertFalse(p2[i].isOpened());
+            if ((i & 1) != 0) {
+                Assertions.assertEquals(1, p2[i].getFlashWriteCount());
+                Assertions.assertArrayEquals(p2Image, Arrays.copyOf(p2[i].getFlash(), p2Image.length));
+            }
+            else {
+                Assertions.assertEquals(0, p2[i].getFlashWriteCount());
+                Assertions.assertArrayEquals(p2Image, Arrays.copyOf(p2[i].getRam(), p2Image.length));
+            }
+        }
+    }
+
+    @Test
+    void testEepromTimingCalibration() throws Exception {
+        P1RomEmulator emulator = new P1RomEmulator();
+        emulator.setEepromTiming(300, 100);
+        byte[] image = Propeller1LoaderTest.createImage(2048);
+
+        OperationTimings timings = new OperationTimings();
+        Propeller1Loader loader = new Propeller1Loader(emulator);
+        loader.setTimings(timings);
+
+        try (UploadEventLoop subject = new UploadEventLoop()) {
+            subject.submit(loader, image, true).get();
+        }
+
+        Assertions.assertEquals(1, timings.getSamples(1, OperationTimings.EEPROM_WRITE));
+        Assertions.assertEquals(1, timings.getSamples(1, OperationTimings.EEPROM_VERIFY));
+        int write = timings.getExpected(1, OperationTimings.EEPROM_WRITE, 0);
+        Assertions.assertTrue(write >= 300 && write < 300 + Propeller1Loader.MAX_POLL_INTERVAL * 2, "write " + write);
+    }
+
+    @Test
+    void testChecksumErrorRetry() throws Exception {
+        P1RomEmulator emulator = new P1RomEmulator();
+        byte[] image = Propeller1LoaderTest.createImage(1024);
+        image[100]++;
+
+        UploadTask task;
+        try (UploadEventLoop subject = new UploadEventLoop()) {
+            task = subject.submit(new Propeller1Loader(emulator), image, false);
+        }
+
+        ComPortException e = Assertions.assertThrows(ComPortException.class, () -> {
+            task.get();
+        });
+        Assertions.assertEquals("Checksum error", e.getMessage());
+        Assertions.assertEquals(RetryPolicy.getDefault().getAttempts(RetryPolicy.PHASE_VERIFY), emulator.getChecksumErrors());
+        Assertions.assertEquals(1, task.getLoader().getResult().getRetries(RetryPolicy.PHASE_VERIFY));
+        Assertions.assertFalse(emulator.isOpened());
+    }
+
+    @Test
+    void testHandshakeRetry() throws Exception {
+        P2RomEmulator emulator = new P2RomEmulator() {
+
+            int resets;
+
+            @Override
+            protected void reset(int delay, long time) {
+                // The first reset is lost
+                if (resets++ != 0) {
+                    super.reset(delay, time);
+                }
+            }
+
+        };
+        byte[] image = Propeller2LoaderTest.createImage(1000);
+
+        UploadResult result;
+        try (UploadEventLoop subject = new UploadEventLoop()) {
+            result = subject.submit(new Propeller2Loader(emulator), image, false).get();
+        }
+
+        Assertions.assertTrue(emulator.isRunning());
+        Assertions.assertEquals(1, result.getRetries(RetryPolicy.PHASE_HANDSHAKE));
+        Assertions.assertEquals(1, result.getTotalRetries());
+    }
+
+    @Test
+    void testCancel() throws Exception {
+        P1RomEmulator emulator = new P1RomEmulator();
+        emulator.setEepromTiming(5000, 50);
+        byte[] image = Propeller1LoaderTest.createImage(2048);
+
+        Propeller1Loader loader = new Propeller1Loader(emulator);
+        loader.setTimings(new OperationTimings());
+
+        try (UploadEventLoop subject = new UploadEventLoop()) {
+            UploadTask task = subject.submit(loader, image, true);
+            Assertions.assertFalse(task.await(300, TimeUnit.MILLISECONDS));
+
+            task.cancel();
+            Assertions.assertTrue(task.await(1, TimeUnit.SECONDS));
+            Assertions.assertEquals("Operation cancelled", task.getError().getMessage());
+            Assertions.assertArrayEquals(new byte[P1RomEmulator.EEPROM_SIZE], emulator.getEeprom());
+            Assertions.assertEquals(0, loader.getResult().getTotalRetries());
+            Assertions.assertFalse(emulator.isOpened());
+        }
+    }
+
+    @Test
+    void testBlockingFallback() throws Exception {
+        P1RomEmulator emulator = new P1RomEmulator();
+        emulator.setEepromTiming(150, 50);
+        byte[] image = Propeller1LoaderTest.createImage(2048);
+
+        Propeller1Loader loader = createBlockingLoader(emulator);
+        Assertions.assertNull(loader.createTask(image, ImageChecksums.compute(image), true));
+
+        try (UploadEventLoop subject = new UploadEventLoop()) {
+            subject.submit(loader, image, true).get();
+        }
+
+        Assertions.assertTrue(emulator.isRunning());
+        Assertions.assertArrayEquals(image, Arrays.copyOf(emulator.getEeprom(), image.length));
+    }
+
+    @Test
+    void testUploadAsync() throws Exception {
+        byte[] image = Propeller2LoaderTest.createImage(4096);
+
+        P2RomEmulator[] emulators = new P2RomEmulator[16];
+        List<CompletableFuture<UploadResult>> futures = new ArrayList<>();
+        for (int i = 0; i < emulators.length; i++) {
+            emulators[i] = new P2RomEmulator();
+            futures.add(new Propeller2Loader(emulators[i]).uploadAsync(image, false));
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+
+        for (int i = 0; i < emulators.length; i++) {
+            Assertions.assertTrue(emulators[i].isRunning());
+            Assertions.assertArrayEquals(image, Arrays.copyOf(emulators[i].getRam(), image.length));
+            Assertions.assertEquals(0, futures.get(i).get().getTotalRetries());
+        }
+    }
+
+    @Test
+    void testUploadAsyncError() throws Exception {
+        P1RomEmulator emulator = new P1RomEmulator();
+        byte[] image = Propeller1LoaderTest.createImage(1024);
+        image[100]++;
+
+        Propeller1Loader loader = new Propeller1Loader(emulator);
+        loader.setRetryPolicy(RetryPolicy.none());
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> {
+            loader.uploadAsync(image, false).get(10, TimeUnit.SECONDS);
+        });
+        Assertions.assertEquals(ComPortException.class, e.getCause().getClass());
+        Assertions.assertEquals("Checksum error", e.getCause().getMessage());
+    }
+
+    @Test
+    void testUploadAsyncCancel() throws Exception {
+        P1RomEmulator emulator = new P1RomEmulator();
+        emulator.setEepromTiming(5000, 50);
+        byte[] image = Propeller1LoaderTest.createImage(2048);
+
+        Propeller1Loader loader = new Propeller1Loader(emulator);
+        loader.setTimings(new OperationTimings());
+
+        try (UploadEventLoop loop = new UploadEventLoop()) {
+            UploadTask task = loop.submit(loader, image, ImageChecksums.compute(image), true);
+            Thread.sleep(300);
+            task.getFuture().cancel(true);
+
+            Assertions.assertThrows(CancellationException.class, () -> {
+                task.getFuture().get();
+            });
+            Assertions.assertTrue(task.await(1, TimeUnit.SECONDS));
+            Assertions.assertEquals("Operation cancelled", task.getError().getMessage());
+        }
+        Assertions.assertFalse(emulator.isOpened());
+    }
+
+    @Test
+    void testEvents() throws Exception {
+        P1RomEmulator emulator = new P1RomEmulator() {
+
+            int resets;
+
+            @Override
+            protected void reset(int delay, long time) {
+                // The first reset is lost
+                if (resets++ != 0) {
+                    super.reset(delay, time);
+                }
+            }
+
+        };
+        emulator.setEepromTiming(150, 50);
+        byte[] image = Propeller1LoaderTest.createImage(8192);
+
+        List<UploadEvent> events = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        Propeller1Loader loader = new Propeller1Loader(emulator);
+        loader.setTimings(new OperationTimings());
+        loader.getEvents().subscribe(new Flow.Subscriber<UploadEvent>() {
+
+            Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(UploadEvent item) {
+                events.add(item);
+                if (item.getType() == UploadEvent.DONE) {
+                    done.countDown();
+                }
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+
+            }
+
+            @Override
+            public void onComplete() {
+
+            }
+
+        });
+
+        loader.uploadAsync(image, true).get(10, TimeUnit.SECONDS);
+        Assertions.assertTrue(done.await(1, TimeUnit.SECONDS));
+
+        List<Integer> phases = new ArrayList<>();
+        UploadEvent retry = null;
+        UploadEvent progress = null;
+        for (UploadEvent event : events) {
+            if (event.getType() == UploadEvent.PHASE) {
+                phases.add(event.getPhase());
+            }
+            else if (event.getType() == UploadEvent.RETRY) {
+                retry = event;
+            }
+            else if (event.getType() == UploadEvent.PROGRESS) {
+                progress = event;
+            }
+        }
+        Assertions.assertEquals(Arrays.asList(RetryPolicy.PHASE_HANDSHAKE, RetryPolicy.PHASE_HANDSHAKE, RetryPolicy.PHASE_TRANSFER, RetryPolicy.PHASE_VERIFY, RetryPolicy.PHASE_PROGRAM), phases);
+        Assertions.assertEquals(RetryPolicy.PHASE_HANDSHAKE, retry.getPhase());
+        Assertions.assertNotNull(retry.getError());
+        Assertions.assertEquals(image.length, progress.getSent());
+        Assertions.assertEquals(image.length, progress.getTotal());
+
+        UploadEvent last = events.get(events.size() - 1);
+        Assertions.assertEquals(UploadEvent.DONE, last.getType());
+        Assertions.assertNull(last.getError());
+    }
+
+    @Test
+    void testBlockingUploadEvents() throws Exception {
+        P1RomEmulator emulator = new P1RomEmulator();
+        emulator.setEepromTiming(150, 50);
+        byte[] image = Propeller1LoaderTest.createImage(2048);
+
+        List<UploadEvent> done = new ArrayList<>();
+        CountDownLatch completed = new CountDownLatch(1);
+
+        Propeller1Loader loader = createBlockingLoader(emulator);
+        loader.getEvents().subscribe(new Flow.Subscriber<UploadEvent>() {
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(UploadEvent item) {
+                if (item.getType() == UploadEvent.DONE) {
+                    done.add(item);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+
+            }
+
+            @Override
+            public void onComplete() {
+                completed.countDown();
+            }
+
+        });
+
+        loader.upload(image, true);
+
+        try (UploadEventLoop subject = new UploadEventLoop()) {
+            subject.submit(loader, image, true).get();
+        }
+
+        loader.cancel();
+        Assertions.assertThrows(ComPortException.class, () -> {
+            loader.upload(image, true);
+        });
+
+        loader.closeEvents();
+        Assertions.assertTrue(completed.await(1, TimeUnit.SECONDS));
+
+        Assertions.assertEquals(3, done.size());
+        Assertions.assertNull(done.get(0).getError());
+        Assertions.assertNull(done.get(1).getError());
+        Assertions.assertEquals("Operation cancelled", done.get(2).getError().getMessage());
+    }
+
+    @Test
+    void testStalledSubscriber() throws Exception {
+        byte[] image = Propeller2LoaderTest.createImage(4096);
+
+        Propeller2Loader loader = new Propeller2Loader(new P2RomEmulator());
+        loader.getEvents().subscribe(new Flow.Subscriber<UploadEvent>() {
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                // Never requests events
+            }
+
+            @Override
+            public void onNext(UploadEvent item) {
+                Assertions.fail();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+
+            }
+
+            @Override
+            public void onComplete() {
+
+            }
+
+        });
+
+        // Fill the subscriber buffer
+        SubmissionPublisher<UploadEvent> publisher = loader.events;
+        while (publisher.estimateMaximumLag() < publisher.getMaxBufferCapacity()) {
+            loader.upload(image, false);
+        }
+
+        try (UploadEventLoop subject = new UploadEventLoop()) {
+            UploadTask task = subject.submit(loader, image, false);
+            Assertions.assertNotNull(task.getFuture().get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * Returns a loader that has no upload task, like the network loader, so the uploads run on the
+     * blocking path.
+     */
+    static Propeller1Loader createBlockingLoader(P1RomEmulator emulator) {
+        return new Propeller1Loader(emulator) {
+
+            @Override
+            protected UploadTask createTask(byte[] binaryImage, ImageChecksums checksums, boolean writeEeprom) {
+                return null;
+            }
+
+        };
+    }
+
+}
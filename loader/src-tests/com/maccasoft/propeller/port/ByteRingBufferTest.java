@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.maccasoft.propeller.port;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ByteRingBufferTest {
+
+    @Test
+    void testCapacity() {
+        Assertions.assertEquals(16, new ByteRingBuffer(16).getCapacity());
+        Assertions.assertEquals(32, new ByteRingBuffer(17).getCapacity());
+    }
+
+    @Test
+    void testPutGet() {
+        ByteRingBuffer subject = new ByteRingBuffer(8);
+        Assertions.assertEquals(-1, subject.get());
+
+        Assertions.assertEquals(6, subject.put(new byte[] {
+            1, 2, 3, 4, 5, 6
+        }, 0, 6));
+        Assertions.assertEquals(1, subject.get());
+
+        byte[] data = new byte[8];
+        Assertions.assertEquals(3, subject.get(data, 0, 3));
+        Assertions.assertArrayEquals(new byte[] {
+            2, 3, 4, 0, 0, 0, 0, 0
+        }, data);
+
+        // Wraps around the end of the buffer
+        Assertions.assertEquals(5, subject.put(new byte[] {
+            7, 8, 9, 10, 11
+        }, 0, 5));
+        Assertions.assertEquals(7, subject.get(data, 0, data.length));
+        Assertions.assertArrayEquals(new byte[] {
+            5, 6, 7, 8, 9, 10, 11, 0
+        }, data);
+        Assertions.assertEquals(0, subject.available());
+    }
+
+    @Test
+    void testOverflow() {
+        ByteRingBuffer subject = new ByteRingBuffer(4);
+
+        Assertions.assertEquals(4, subject.put(new byte[6], 0, 6));
+        Assertions.assertTrue(subject.isOverflow());
+
+        subject.clear();
+        Assertions.assertFalse(subject.isOverflow());
+        Assertions.assertEquals(0, subject.available());
+    }
+
+    @Test
+    void testAwaitTimeout() {
+        ByteRingBuffer subject = new ByteRingBuffer(16);
+
+        long start = System.nanoTime();
+        Assertions.assertFalse(subject.await(20_000_000L));
+        Assertions.assertTrue(System.nanoTime() - start >= 20_000_000L);
+    }
+
+    @Test
+    void testProducerConsumer() throws Exception {
+        ByteRingBuffer subject = new ByteRingBuffer(256);
+        int total = 1 << 20;
+
+        Thread producer = new Thread(() -> {
+            Random random = new Random(0);
+            byte[] chunk = new byte[100];
+            int sent = 0;
+            while (sent < total) {
+                int length = Math.min(random.nextInt(chunk.length) + 1, total - sent);
+                while (subject.getCapacity() - subject.available() < length) {
+                    Thread.onSpinWait();
+                }
+                for (int i = 0; i < length; i++) {
+                    chunk[i] = (byte) (sent + i);
+                }
+                subject.put(chunk, 0, length);
+                sent += length;
+            }
+        });
+        producer.start();
+
+        byte[] data = new byte[64];
+        int received = 0;
+        while (received < total) {
+            Assertions.assertTrue(subject.await(1_000_000_000L));
+            int count = subject.get(data, 0, data.length);
+            for (int i = 0; i < count; i++) {
+                Assertions.assertEquals((byte) (received + i), data[i]);
+            }
+            received += count;
+        }
+        producer.join();
+
+        Assertions.assertFalse(subject.isOverflow());
+    }
+
+}
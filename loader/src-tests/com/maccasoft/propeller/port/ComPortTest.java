@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.maccasoft.propeller.port;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.maccasoft.propeller.emulator.P2RomEmulator;
+
+class ComPortTest {
+
+    static final String REQUEST = "> \r> Prop_Chk 0 0 0 0\r";
+    static final String RESPONSE = "\r\nProp_Ver " + P2RomEmulator.VERSION + "\r\n";
+
+    @Test
+    void testReadFully() throws Exception {
+        P2RomEmulator subject = createPort();
+        subject.writeString("xx" + REQUEST + "xx", 2, REQUEST.length());
+
+        byte[] buffer = new byte[RESPONSE.length() + 4];
+        Assertions.assertEquals(RESPONSE.length(), subject.readFully(buffer, 2, RESPONSE.length(), 500));
+        Assertions.assertEquals(RESPONSE, new String(buffer, 2, RESPONSE.length()));
+        Assertions.assertEquals(0, subject.readBytes(buffer, 0, buffer.length, 10));
+    }
+
+    @Test
+    void testReadFullyTimeout() throws Exception {
+        P2RomEmulator subject = createPort();
+        subject.writeString(REQUEST);
+
+        byte[] buffer = new byte[RESPONSE.length() + 4];
+        Assertions.assertEquals(RESPONSE.length(), subject.readFully(buffer, 0, buffer.length, 100));
+    }
+
+    @Test
+    void testByteBuffer() throws Exception {
+        P2RomEmulator subject = createPort();
+
+        ByteBuffer tx = ByteBuffer.allocateDirect(REQUEST.length());
+        tx.put(REQUEST.getBytes());
+        tx.flip();
+        subject.writeBytes(tx);
+        Assertions.assertEquals(0, tx.remaining());
+
+        ByteBuffer rx = ByteBuffer.allocate(64);
+        while (rx.position() < RESPONSE.length()) {
+            if (subject.readBytes(rx, 500) == 0) {
+                break;
+            }
+        }
+        Assertions.assertEquals(RESPONSE, new String(rx.array(), 0, rx.position()));
+    }
+
+    static P2RomEmulator createPort() throws ComPortException {
+        P2RomEmulator port = new P2RomEmulator();
+        port.openPort();
+        port.hwreset(0);
+        return port;
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.maccasoft.propeller.port;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.maccasoft.propeller.emulator.P1RomEmulator;
+
+class DeadlineTest {
+
+    @Test
+    void testLimit() throws Exception {
+        Deadline subject = Deadline.after(200);
+
+        Assertions.assertEquals(50, subject.limit(50));
+        Assertions.assertTrue(subject.limit(1000) <= 200);
+        Assertions.assertFalse(subject.isExpired());
+    }
+
+    @Test
+    void testExpired() throws Exception {
+        Deadline subject = Deadline.after(0);
+
+        Assertions.assertTrue(subject.isExpired());
+        Assertions.assertEquals(0, subject.getRemaining());
+        ComPortException e = Assertions.assertThrows(ComPortException.class, () -> {
+            subject.check();
+        });
+        Assertions.assertEquals("Time budget exceeded", e.getMessage());
+    }
+
+    @Test
+    void testCancel() throws Exception {
+        Deadline subject = new Deadline();
+        Assertions.assertEquals(Integer.MAX_VALUE, subject.getRemaining());
+        Assertions.assertEquals(1000, subject.limit(1000));
+
+        subject.cancel();
+        Assertions.assertTrue(subject.isExpired());
+        ComPortException e = Assertions.assertThrows(ComPortException.class, () -> {
+            subject.check();
+        });
+        Assertions.assertEquals("Operation cancelled", e.getMessage());
+    }
+
+    @Test
+    void testPortRead() throws Exception {
+        P1RomEmulator port = new P1RomEmulator();
+        port.openPort();
+        port.setDeadline(Deadline.after(100));
+
+        ComPortException e = Assertions.assertThrows(ComPortException.class, () -> {
+            port.readByteWithTimeout(5000);
+        });
+        Assertions.assertEquals("Time budget exceeded", e.getMessage());
+    }
+
+    @Test
+    void testPortReadCancel() throws Exception {
+        P1RomEmulator port = new P1RomEmulator();
+        port.openPort();
+        Deadline deadline = new Deadline();
+        port.setDeadline(deadline);
+
+        Thread thread = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                // Do nothing
+            }
+            deadline.cancel();
+        });
+        thread.start();
+
+        ComPortException e = Assertions.assertThrows(ComPortException.class, () -> {
+            port.readByteWithTimeout(5000);
+        });
+        Assertions.assertEquals("Operation cancelled", e.getMessage());
+        thread.join();
+    }
+
+}
@@ -11,7 +11,6 @@
 
 package com.maccasoft.propeller;
 
-import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
@@ -19,18 +18,22 @@ import java.net.InterfaceAddress;
 import java.net.NetworkInterface;
 import java.net.SocketTimeoutException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.maccasoft.propeller.port.ComPort;
+import com.maccasoft.propeller.loader.ResetTimings;
+import com.maccasoft.propeller.loader.Session;
 import com.maccasoft.propeller.port.ComPortException;
 import com.maccasoft.propeller.port.DeviceDescriptor;
 import com.maccasoft.propeller.port.NetworkComPort;
 import com.maccasoft.propeller.port.SerialComPort;
 
-import jssc.SerialPort;
 import jssc.SerialPortList;
 
 public class DeviceDiscover {
@@ -44,196 +47,86 @@ public class DeviceDiscover {
     public static final int DISCOVER_REPLY_TIMEOUT = 250;
     public static final int DISCOVER_ATTEMPTS = 3;
 
-    byte LFSR;
+    boolean calibrateReset;
 
     public DeviceDiscover() {
 
     }
 
+    /**
+     * Searches the local and network devices, the ports and the network devices found are probed
+     * at the same time, each on its own thread.
+     */
     public void find(boolean local, boolean network, DeviceDiscoverListener listener) {
-        List<Device> list = new ArrayList<>();
+        List<Supplier<List<Device>>> searches = new ArrayList<>();
         if (local) {
-            list.addAll(findLocalDevices());
+            searches.add(this::findLocalDevices);
         }
         if (network) {
-            list.addAll(findNetworkDevices());
+            searches.add(this::findNetworkDevices);
+        }
+
+        List<Device> list = new ArrayList<>();
+        for (List<Device> result : DeviceExecutor.map("Device discover", searches, Supplier::get)) {
+            list.addAll(result);
         }
         Collections.sort(list);
         listener.discoverCompleted(list);
     }
 
     List<Device> findLocalDevices() {
-        List<Device> list = new ArrayList<>();
-
-        String[] portNames = SerialPortList.getPortNames();
-        for (int i = 0; i < portNames.length; i++) {
-            SerialComPort comPort = new SerialComPort(portNames[i]);
+        return DeviceExecutor.map("Device discover", Arrays.asList(SerialPortList.getPortNames()), portName -> {
             try {
-                Device device = find(comPort);
-                if (device != null) {
-                    list.add(device);
-                }
+                return find(new SerialComPort(portName));
             } catch (Exception e) {
-                // Do nothing
+                return null;
             }
-        }
-
-        return list;
+        });
     }
 
     Device find(SerialComPort comPort) throws ComPortException {
-        int rc = 0;
-
-        comPort.openPort();
-
-        try {
-            rc = probeP2(comPort);
-            if (rc == 0) {
-                rc = probeP1(comPort);
-            }
-        } catch (Exception e) {
-            // Do nothing
-        }
-
-        comPort.closePort();
-
-        if (rc != 0) {
-            return new Device(getVersionText(rc), rc == 1 ? 1 : 2, comPort.getPortName());
+        Session session = Session.open(comPort);
+        if (session == null) {
+            return null;
         }
 
-        return null;
-    }
-
-    int probeP1(SerialComPort comPort) throws ComPortException {
-        int n, ii, jj;
-        byte[] buffer;
-
-        try {
-            comPort.setParams(115200, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
-
-            comPort.hwreset(90);
-
-            // send the calibration pulse
-            comPort.writeInt(0xF9);
-
-            // send the magic propeller LFSR byte stream.
-            LFSR = 'P';
-            buffer = new byte[250];
-            for (n = 0; n < 250; n++) {
-                buffer[n] = (byte) (iterate() | 0xFE);
-            }
-            comPort.writeBytes(buffer);
-
-            // Send 258 0xF9 for LFSR and Version ID
-            // These bytes clock the LSFR bits and ID from propeller back to us.
-            buffer = new byte[258];
-            for (n = 0; n < 258; n++) {
-                buffer[n] = (byte) (0xF9);
-            }
-            comPort.writeBytes(buffer);
-
-            // Wait at least 100ms for the first response. Allow some margin.
-            // Some chips may respond < 50ms, but there's no guarantee all will.
-            // If we don't get it, we can assume the propeller is not there.
-            if ((ii = getBit(comPort, 110)) == -1) {
-                throw new ComPortException("timeout waiting for first response bit");
-            }
-
-            // wait for response so we know we have a Propeller
-            for (n = 1; n < 250; n++) {
-                jj = iterate();
-
-                if (ii != jj) {
-                    for (n = 0; n < 300; n++) {
-                        if (comPort.readByteWithTimeout(50) == -1) {
-                            break;
-                        }
-                    }
-                    return 0;
-                }
-
-                int to = 0;
-                do {
-                    if ((ii = getBit(comPort, 110)) != -1) {
-                        break;
-                    }
-                } while (to++ < 100);
-
-                if (to > 100) {
-                    throw new ComPortException("timeout waiting for response bit");
+        if (calibrateReset) {
+            ResetTimings timings = ResetTimings.getDefault();
+            try {
+                if (timings.calibrate(comPort, session.getVersion(), ResetTimings.CALIBRATION_ATTEMPTS) != -1) {
+                    timings.save();
                 }
+            } catch (Exception e) {
+                e.printStackTrace();
             }
 
-            int rc = 0;
-            for (n = 0; n < 8; n++) {
-                rc >>= 1;
-                if ((ii = getBit(comPort, 110)) != -1) {
-                    rc += (ii != 0) ? 0x80 : 0;
-                }
+            // The calibration leaves the chip in an unknown state
+            session.close();
+            session = Session.open(comPort);
+            if (session == null) {
+                return null;
             }
-
-            return rc;
-
-        } catch (Exception e) {
-            // Do nothing
         }
 
-        return 0;
-    }
-
-    int getBit(SerialComPort comPort, int timeout) {
-        try {
-            int rx = comPort.readByteWithTimeout(timeout);
-            return rx & 1;
-        } catch (ComPortException e) {
+        Device device = new Device(getVersionText(session.getChipVersion()), session.getVersion(), comPort.getPortName());
+        session.close();
 
-        }
-        return -1;
+        return device;
     }
 
-    int iterate() {
-        int bit = LFSR & 1;
-        LFSR = (byte) ((LFSR << 1) | (((LFSR >> 7) ^ (LFSR >> 5) ^ (LFSR >> 4) ^ (LFSR >> 1)) & 1));
-        return bit;
+    public boolean isCalibrateReset() {
+        return calibrateReset;
     }
 
-    int probeP2(ComPort comPort) throws ComPortException {
-
-        comPort.setParams(2000000, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
-
-        comPort.hwreset(15);
-        comPort.writeString("> \r> Prop_Chk 0 0 0 0\r");
-
-        readStringWithTimeout(comPort, 50);
-
-        String result = readStringWithTimeout(comPort, 50);
-        if (result.startsWith("Prop_Ver ")) {
-            return result.charAt(9);
-        }
-
-        return 0;
-    }
-
-    private String readStringWithTimeout(ComPort comPort, int timeout) throws ComPortException {
-        int b;
-        StringBuilder sb = new StringBuilder();
-
-        do {
-            b = comPort.readByteWithTimeout(timeout);
-            if (b != -1) {
-                if (b == '\r') {
-                    b = comPort.readByteWithTimeout(timeout);
-                    break;
-                }
-                sb.append((char) b);
-            }
-        } while (b != -1);
-
-        return sb.toString();
+    /**
+     * Calibrates and saves the reset delay of the local devices found.
+     */
+    public void setCalibrateReset(boolean calibrateReset) {
+        this.calibrateReset = calibrateReset;
     }
 
     public List<Device> findNetworkDevices() {
-        List<Device> list = new ArrayList<>();
+        List<InetAddress> targets = new ArrayList<>();
 
         try {
             Enumeration<NetworkInterface> nets = NetworkInterface.getNetworkInterfaces();
@@ -243,10 +136,7 @@ public class DeviceDiscover {
                     for (InterfaceAddress addr : nif.getInterfaceAddresses()) {
                         InetAddress inetAddr = addr.getBroadcast();
                         if (inetAddr != null) {
-                            Device result = probe(inetAddr, true);
-                            if (result != null) {
-                                list.add(result);
-                            }
+                            targets.add(inetAddr);
                         }
                     }
                 }
@@ -255,81 +145,110 @@ public class DeviceDiscover {
             e.printStackTrace();
         }
 
-        return list;
+        Map<InetAddress, DeviceDescriptor> replies = discover(targets);
+
+        return DeviceExecutor.map("Network probe", new ArrayList<>(replies.entrySet()), entry -> probe(entry.getKey(), entry.getValue()));
     }
 
-    Device probe(InetAddress inetAddr, boolean broadcast) throws IOException {
-        Device found = null;
+    /**
+     * Sends the discovery request to the given addresses and collects the replies, the request is
+     * sent again if no device replied.
+     *
+     * @param targets the broadcast or device addresses
+     * @return the descriptors of the replying devices, by address
+     */
+    Map<InetAddress, DeviceDescriptor> discover(List<InetAddress> targets) {
+        Map<InetAddress, DeviceDescriptor> replies = new LinkedHashMap<>();
+        if (targets.isEmpty()) {
+            return replies;
+        }
+
         byte[] buffer = new byte[2048];
+        ObjectMapper mapper = new ObjectMapper();
 
-        DatagramSocket socket = new DatagramSocket(DISCOVER_PORT);
-        if (broadcast) {
+        try (DatagramSocket socket = new DatagramSocket(DISCOVER_PORT)) {
             socket.setBroadcast(true);
-        }
-        socket.setSoTimeout(DISCOVER_REPLY_TIMEOUT);
 
-        for (int i = 0; i < DISCOVER_ATTEMPTS && found == null; i++) {
-            socket.send(new DatagramPacket(new byte[] {
-                0x00, 0x00, 0x00, 0x00
-            }, 4, inetAddr, DISCOVER_PORT));
+            for (int i = 0; i < DISCOVER_ATTEMPTS && replies.isEmpty(); i++) {
+                for (InetAddress target : targets) {
+                    socket.send(new DatagramPacket(new byte[] {
+                        0x00, 0x00, 0x00, 0x00
+                    }, 4, target, DISCOVER_PORT));
+                }
 
-            try {
-                DatagramPacket response = new DatagramPacket(buffer, buffer.length);
-                do {
-                    socket.receive(response);
-                    if (response.getLength() > 0) {
-                        byte[] data = response.getData();
-                        if (data[0] != 0x00) {
-                            String json = new String(data, 0, response.getLength());
-                            try {
-                                ObjectMapper mapper = new ObjectMapper();
-                                DeviceDescriptor descriptor = mapper.readValue(json, DeviceDescriptor.class);
-                                if (descriptor != null) {
-                                    NetworkComPort serialPort = new NetworkComPort(descriptor.name, inetAddr, descriptor.mac_address, descriptor.reset_pin);
-                                    try {
-                                        serialPort.openPort();
-                                        int rc = probeP2(serialPort);
-                                        if (rc == 0) {
-                                            rc = probeP2(serialPort);
-                                        }
-                                        if (rc == 0) {
-                                            rc = probeP2(serialPort);
-                                        }
-                                        if (rc != 0) {
-                                            String version = getVersionText(rc);
-                                            if (version != null) {
-                                                found = new Device(version, 2, response.getAddress(), descriptor.mac_address, descriptor.reset_pin);
-                                            }
-                                        }
-                                    } catch (Exception e) {
-                                        // Do nothing
-                                    }
-                                    if (serialPort.isOpened()) {
-                                        serialPort.closePort();
-                                    }
-
-                                    if (found == null) {
-                                        found = new Device(descriptor.name, 1, response.getAddress(), descriptor.mac_address, descriptor.reset_pin);
-                                    }
-                                }
-                            } catch (Exception e) {
-                                e.printStackTrace();
+                long deadline = System.currentTimeMillis() + DISCOVER_REPLY_TIMEOUT;
+                for (;;) {
+                    long timeout = deadline - System.currentTimeMillis();
+                    if (timeout <= 0) {
+                        break;
+                    }
+                    socket.setSoTimeout((int) timeout);
+
+                    DatagramPacket response = new DatagramPacket(buffer, buffer.length);
+                    try {
+                        socket.receive(response);
+                    } catch (SocketTimeoutException e) {
+                        break;
+                    }
+
+                    // The requests are received back from the broadcast
+                    if (response.getLength() > 0 && buffer[0] != 0x00) {
+                        try {
+                            String json = new String(buffer, 0, response.getLength());
+                            DeviceDescriptor descriptor = mapper.readValue(json, DeviceDescriptor.class);
+                            if (descriptor != null) {
+                                replies.putIfAbsent(response.getAddress(), descriptor);
                             }
-                            break;
+                        } catch (Exception e) {
+                            e.printStackTrace();
                         }
                     }
-                } while (found == null);
-            } catch (SocketTimeoutException e) {
-                // Do nothing
-            } catch (Exception e) {
-                e.printStackTrace();
-                break;
+                }
             }
+        } catch (Exception e) {
+            e.printStackTrace();
         }
 
-        socket.close();
+        return replies;
+    }
+
+    /**
+     * Identifies the chip connected to a network device.
+     *
+     * @param inetAddr the device address
+     * @param descriptor the discovery reply of the device
+     * @return the device, as P1 if the chip doesn't reply to the P2 handshake
+     */
+    Device probe(InetAddress inetAddr, DeviceDescriptor descriptor) {
+        NetworkComPort serialPort = new NetworkComPort(descriptor.name, inetAddr, descriptor.mac_address, descriptor.reset_pin);
+        try {
+            serialPort.openPort();
+            int rc = Session.probeP2(serialPort);
+            if (rc == 0) {
+                rc = Session.probeP2(serialPort);
+            }
+            if (rc == 0) {
+                rc = Session.probeP2(serialPort);
+            }
+            if (rc != 0) {
+                String version = getVersionText(rc);
+                if (version != null) {
+                    return new Device(version, 2, inetAddr, descriptor.mac_address, descriptor.reset_pin);
+                }
+            }
+        } catch (Exception e) {
+            // Do nothing
+        } finally {
+            if (serialPort.isOpened()) {
+                try {
+                    serialPort.closePort();
+                } catch (ComPortException e) {
+                    // Do nothing
+                }
+            }
+        }
 
-        return found;
+        return new Device(descriptor.name, 1, inetAddr, descriptor.mac_address, descriptor.reset_pin);
     }
 
     String getVersionText(int version) {
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Executors for the blocking operations on the devices, one task for each device or probe.
+ *
+ * On runtimes supporting virtual threads (Java 21 and later) each task runs on its own virtual
+ * thread, so hundreds of ports waiting for their chips don't need as many platform threads. On
+ * older runtimes the tasks run on a bounded pool of platform threads.
+ */
+public class DeviceExecutor {
+
+    public static final int MAX_PLATFORM_THREADS = 16;
+
+    static final int KEEP_ALIVE_TIME = 10;
+
+    static final Method newVirtualThreadPerTaskExecutor;
+
+    static {
+        Method method = null;
+        try {
+            method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            // Do nothing
+        }
+        newVirtualThreadPerTaskExecutor = method;
+    }
+
+    /**
+     * Returns true if the tasks run on virtual threads.
+     */
+    public static boolean isVirtualThreads() {
+        return newVirtualThreadPerTaskExecutor != null;
+    }
+
+    /**
+     * Creates an executor running each task on a virtual thread, or on a bounded pool of platform
+     * threads if virtual threads are not available. The executor must be shut down by the caller.
+     *
+     * @param name the name of the platform threads
+     * @return the executor
+     */
+    public static ExecutorService create(String name) {
+        if (isVirtualThreads()) {
+            try {
+                return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+            } catch (Exception e) {
+                // Do nothing
+            }
+        }
+        return createPlatformPool(name, MAX_PLATFORM_THREADS);
+    }
+
+    static ExecutorService createPlatformPool(String name, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_TIME, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, name + " " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Runs the function on each item, all at the same time, and waits for the results.
+     *
+     * @param name the name of the platform threads
+     * @param items the items
+     * @param function the function, returning null for the items to discard
+     * @return the results in the order of the items, without the nulls and the failed items
+     */
+    public static <T, R> List<R> map(String name, List<T> items, Function<T, R> function) {
+        return map(name, items, Integer.MAX_VALUE, function, null);
+    }
+
+    /**
+     * Runs the function on each item, at most the given number of items at the same time, and
+     * waits for the results.
+     *
+     * @param name the name of the platform threads
+     * @param items the items
+     * @param parallelism the maximum number of items processed at the same time
+     * @param function the function, returning null for the items to discard
+     * @param errorHandler the handler of the errors thrown by the function, or null to discard them
+     * @return the results in the order of the items, without the nulls and the failed items
+     */
+    public static <T, R> List<R> map(String name, List<T> items, int parallelism, Function<T, R> function, Consumer<Throwable> errorHandler) {
+        List<R> list = new ArrayList<>();
+
+        Semaphore permits = new Semaphore(Math.max(parallelism, 1));
+        ExecutorService executor = create(name);
+        try {
+            List<Future<R>> futures = new ArrayList<>();
+            for (T item : items) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return function.apply(item);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            for (Future<R> future : futures) {
+                try {
+                    R result = future.get();
+                    if (result != null) {
+                        list.add(result);
+                    }
+                } catch (ExecutionException e) {
+                    if (errorHandler != null) {
+                        errorHandler.accept(e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return list;
+    }
+
+}
@@ -12,12 +12,14 @@
 package com.maccasoft.propeller;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.maccasoft.propeller.loader.ImageChecksums;
 
 public class Firmware {
 
@@ -30,30 +32,29 @@ public class Firmware {
     @JsonInclude(Include.ALWAYS)
     byte[] binaryImage;
 
-    public static Firmware fromFile(File file) throws IOException {
+    @JsonIgnore
+    FirmwareImageSource imageSource;
 
-        InputStream is = new FileInputStream(file);
-        try {
-            byte[] binaryImage = new byte[is.available()];
-            is.read(binaryImage);
+    @JsonIgnore
+    ImageChecksums checksums;
 
-            byte checksum = 0;
-            for (int i = 0; i < binaryImage.length; i++) {
-                checksum += binaryImage[i];
-            }
-            int binaryVersion = checksum == 0x14 ? 1 : 2;
+    public static Firmware fromFile(File file) throws IOException {
+        byte[] binaryImage = Files.readAllBytes(file.toPath());
+        ImageChecksums checksums = ImageChecksums.compute(binaryImage);
+        int binaryVersion = checksums.getBinaryVersion();
 
-            String description = (binaryVersion == 1 ? "P8X32A Firmware" : "P2X8C4M64P Rev B/C Firmware");
+        Firmware firmware = new Firmware(binaryVersion, binaryImage, getDefaultDescription(binaryVersion));
+        firmware.checksums = checksums;
 
-            return new Firmware(binaryVersion, binaryImage, description);
+        return firmware;
+    }
 
-        } finally {
-            try {
-                is.close();
-            } catch (Exception e) {
+    public static int detectBinaryVersion(byte[] binaryImage) {
+        return ImageChecksums.compute(binaryImage).getBinaryVersion();
+    }
 
-            }
-        }
+    public static String getDefaultDescription(int binaryVersion) {
+        return binaryVersion == 1 ? "P8X32A Firmware" : "P2X8C4M64P Rev B/C Firmware";
     }
 
     public Firmware() {
@@ -66,6 +67,12 @@ public class Firmware {
         this.description = description;
     }
 
+    public Firmware(int binaryVersion, FirmwareImageSource imageSource, String description) {
+        this.binaryVersion = binaryVersion;
+        this.imageSource = imageSource;
+        this.description = description;
+    }
+
     public String getDescription() {
         return description;
     }
@@ -83,11 +90,31 @@ public class Firmware {
     }
 
     public byte[] getBinaryImage() {
+        if (binaryImage == null && imageSource != null) {
+            try {
+                return FirmwareImageCache.getDefault().get(imageSource);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
         return binaryImage;
     }
 
     public void setBinaryImage(byte[] binaryImage) {
         this.binaryImage = binaryImage;
+        this.imageSource = null;
+        this.checksums = null;
+    }
+
+    /**
+     * Returns the image checksums, computed on first use.
+     */
+    @JsonIgnore
+    public ImageChecksums getChecksums() {
+        if (checksums == null) {
+            checksums = ImageChecksums.compute(getBinaryImage());
+        }
+        return checksums;
     }
 
     @Override
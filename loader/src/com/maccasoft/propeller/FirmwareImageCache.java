@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded, least recently used cache of the images loaded from a FirmwareImageSource.
+ */
+public class FirmwareImageCache {
+
+    public static final long DEFAULT_MAX_SIZE = 32L * 1024L * 1024L;
+
+    static final FirmwareImageCache defaultCache = new FirmwareImageCache(DEFAULT_MAX_SIZE);
+
+    final LinkedHashMap<FirmwareImageSource, byte[]> map = new LinkedHashMap<>(16, 0.75f, true);
+    final long maxSize;
+    long size;
+
+    public static FirmwareImageCache getDefault() {
+        return defaultCache;
+    }
+
+    public FirmwareImageCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public byte[] get(FirmwareImageSource source) throws IOException {
+        synchronized (this) {
+            byte[] image = map.get(source);
+            if (image != null) {
+                return image;
+            }
+        }
+
+        byte[] image = source.getBinaryImage();
+
+        synchronized (this) {
+            if (image.length <= maxSize) {
+                byte[] previous = map.put(source, image);
+                if (previous != null) {
+                    size -= previous.length;
+                }
+                size += image.length;
+
+                Iterator<Map.Entry<FirmwareImageSource, byte[]>> iter = map.entrySet().iterator();
+                while (size > maxSize && iter.hasNext()) {
+                    Map.Entry<FirmwareImageSource, byte[]> entry = iter.next();
+                    if (entry.getKey() != source) {
+                        size -= entry.getValue().length;
+                        iter.remove();
+                    }
+                }
+            }
+        }
+
+        return image;
+    }
+
+    public synchronized boolean contains(FirmwareImageSource source) {
+        return map.containsKey(source);
+    }
+
+    public synchronized void remove(FirmwareImageSource source) {
+        byte[] image = map.remove(source);
+        if (image != null) {
+            size -= image.length;
+        }
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        size = 0;
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+}
@@ -22,6 +22,8 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 
 public class FirmwarePack {
 
+    public static final int DEFAULT_PARALLEL_UPLOADS = 4;
+
     @JsonInclude(Include.ALWAYS)
     List<Firmware> firmwareList;
 
@@ -29,9 +31,12 @@ public class FirmwarePack {
     boolean enableLocal;
     @JsonInclude(Include.ALWAYS)
     boolean enableNetwork;
+    @JsonInclude(Include.ALWAYS)
+    int parallelUploads;
 
     public FirmwarePack() {
         enableLocal = true;
+        parallelUploads = DEFAULT_PARALLEL_UPLOADS;
         firmwareList = new ArrayList<>();
     }
 
@@ -51,6 +56,17 @@ public class FirmwarePack {
         this.enableNetwork = enableNetwork;
     }
 
+    public int getParallelUploads() {
+        return parallelUploads;
+    }
+
+    /**
+     * Sets the maximum number of devices updated at the same time.
+     */
+    public void setParallelUploads(int parallelUploads) {
+        this.parallelUploads = parallelUploads;
+    }
+
     public List<Firmware> getFirmwareList() {
         return firmwareList;
     }
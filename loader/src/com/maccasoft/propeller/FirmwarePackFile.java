@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Binary firmware pack container.
+ *
+ * The file starts with the "PFWP" magic, the format version and the length of a JSON manifest that
+ * describes each firmware with the length, SHA-256 hash and offset of its image, relative to the end
+ * of the manifest. The images follow the manifest and are read from the file only when requested,
+ * identical images are stored once.
+ */
+public class FirmwarePackFile {
+
+    public static final String EXTENSION = ".fwpack";
+
+    static final byte[] MAGIC = {
+        'P', 'F', 'W', 'P'
+    };
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 12;
+
+    public static class Manifest {
+
+        public boolean enableLocal;
+        public boolean enableNetwork;
+        public int parallelUploads = FirmwarePack.DEFAULT_PARALLEL_UPLOADS;
+        public List<Entry> firmwareList = new ArrayList<>();
+
+    }
+
+    public static class Entry {
+
+        public String description;
+        public int binaryVersion;
+        public long offset;
+        public int length;
+        public String sha256;
+
+    }
+
+    static class FileImageSource implements FirmwareImageSource {
+
+        final Path path;
+        final long offset;
+        final int length;
+        final String sha256;
+
+        boolean verified;
+
+        FileImageSource(Path path, long offset, int length, String sha256) {
+            this.path = path;
+            this.offset = offset;
+            this.length = length;
+            this.sha256 = sha256;
+        }
+
+        @Override
+        public synchronized byte[] getBinaryImage() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (offset + length > channel.size()) {
+                    throw new IOException("Truncated firmware pack " + path);
+                }
+                readFully(channel, buffer, offset);
+            }
+
+            byte[] image = buffer.array();
+            if (!verified) {
+                if (!sha256.equalsIgnoreCase(sha256(image))) {
+                    throw new IOException("Firmware image checksum mismatch in " + path);
+                }
+                verified = true;
+            }
+
+            return image;
+        }
+
+    }
+
+    public static boolean isFirmwarePackFile(File file) {
+        return file.getName().toLowerCase().endsWith(EXTENSION);
+    }
+
+    public static FirmwarePack read(File file) throws IOException {
+        return read(file, null);
+    }
+
+    /**
+     * Reads the pack, the images are resolved through the given store.
+     *
+     * @param file the pack file
+     * @param store the firmware store, or null to read the images from the pack only
+     * @return the pack
+     * @throws IOException
+     */
+    public static FirmwarePack read(File file, FirmwareStore store) throws IOException {
+        Path path = file.toPath();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (header.get(i) != MAGIC[i]) {
+                    throw new IOException("Not a firmware pack file " + file);
+                }
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException("Unsupported firmware pack version " + header.getInt(4));
+            }
+            int manifestLength = header.getInt(8);
+            if (manifestLength < 0 || HEADER_SIZE + manifestLength > channel.size()) {
+                throw new IOException("Truncated firmware pack " + file);
+            }
+
+            ByteBuffer data = ByteBuffer.allocate(manifestLength);
+            readFully(channel, data, HEADER_SIZE);
+
+            ObjectMapper mapper = new ObjectMapper();
+            mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+            Manifest manifest = mapper.readValue(data.array(), Manifest.class);
+
+            long dataOffset = HEADER_SIZE + manifestLength;
+
+            FirmwarePack pack = new FirmwarePack();
+            pack.setEnableLocal(manifest.enableLocal);
+            pack.setEnableNetwork(manifest.enableNetwork);
+            pack.setParallelUploads(manifest.parallelUploads);
+
+            Map<String, FileImageSource> sources = new HashMap<>();
+            for (Entry entry : manifest.firmwareList) {
+                if (entry.offset < 0 || entry.length < 0 || entry.offset > channel.size() - dataOffset - entry.length || entry.sha256 == null) {
+                    throw new IOException("Invalid firmware pack entry " + entry.description + " in " + file);
+                }
+                FileImageSource source = sources.get(entry.sha256);
+                if (source == null || source.offset != dataOffset + entry.offset || source.length != entry.length) {
+                    source = new FileImageSource(path, dataOffset + entry.offset, entry.length, entry.sha256);
+                    sources.put(entry.sha256, source);
+                }
+                if (store != null) {
+                    pack.addFirmware(store.ingest(file, source.offset, entry.sha256, entry.binaryVersion, entry.description, source));
+                }
+                else {
+                    pack.addFirmware(new Firmware(entry.binaryVersion, source, entry.description));
+                }
+            }
+
+            return pack;
+        }
+    }
+
+    public static void write(FirmwarePack pack, File file) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.enableLocal = pack.isEnableLocal();
+        manifest.enableNetwork = pack.isEnableNetwork();
+        manifest.parallelUploads = pack.getParallelUploads();
+
+        List<byte[]> images = new ArrayList<>();
+        Map<String, Entry> written = new HashMap<>();
+
+        long offset = 0;
+        for (Firmware firmware : pack.getFirmwareList()) {
+            byte[] image = firmware.getBinaryImage();
+
+            Entry entry = new Entry();
+            entry.description = firmware.getDescription();
+            entry.binaryVersion = firmware.getBinaryVersion();
+            entry.length = image.length;
+            entry.sha256 = sha256(image);
+
+            Entry existing = written.get(entry.sha256);
+            if (existing != null) {
+                entry.offset = existing.offset;
+            }
+            else {
+                entry.offset = offset;
+                offset += image.length;
+                images.add(image);
+                written.put(entry.sha256, entry);
+            }
+            manifest.firmwareList.add(entry);
+        }
+
+        ObjectMapper mapper = new ObjectMapper();
+        byte[] manifestData = mapper.writeValueAsBytes(manifest);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.put(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(manifestData.length);
+            header.flip();
+            writeFully(channel, header);
+            writeFully(channel, ByteBuffer.wrap(manifestData));
+            for (byte[] image : images) {
+                writeFully(channel, ByteBuffer.wrap(image));
+            }
+        }
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n == -1) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+    }
+
+    static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    static String sha256(byte[] data) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            FirmwarePack pack = new FirmwarePack();
+            for (int i = 1; i < args.length; i++) {
+                pack.addFirmware(Firmware.fromFile(new File(args[i])));
+            }
+            write(pack, new File(args[0]));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+}
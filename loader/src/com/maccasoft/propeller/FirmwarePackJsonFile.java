@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Streaming reader for JSON firmware packs.
+ *
+ * The pack is indexed in a single pass: descriptions and versions are read immediately while the
+ * base64 encoded images are skipped, recording only their position in the file. An image is decoded
+ * when the firmware is selected for upload.
+ */
+public class FirmwarePackJsonFile {
+
+    public static final String EXTENSION = ".json";
+
+    static final JsonFactory factory = new JsonFactory();
+
+    static class JsonImageSource implements FirmwareImageSource {
+
+        final Path path;
+        final long offset;
+
+        JsonImageSource(Path path, long offset) {
+            this.path = path;
+            this.offset = offset;
+        }
+
+        @Override
+        public byte[] getBinaryImage() throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                channel.position(offset);
+                try (JsonParser parser = factory.createParser(new BufferedInputStream(Channels.newInputStream(channel)))) {
+                    if (parser.nextToken() != JsonToken.VALUE_STRING) {
+                        throw new IOException("Firmware image not found in " + path);
+                    }
+                    return parser.getBinaryValue();
+                }
+            }
+        }
+
+    }
+
+    public static boolean isFirmwarePackJsonFile(File file) {
+        return file.getName().toLowerCase().endsWith(EXTENSION);
+    }
+
+    public static FirmwarePack read(File file) throws IOException {
+        return read(file, null);
+    }
+
+    /**
+     * Reads the pack, the images are resolved through the given store.
+     *
+     * @param file the pack file
+     * @param store the firmware store, or null to read the images from the pack only
+     * @return the pack
+     * @throws IOException
+     */
+    public static FirmwarePack read(File file, FirmwareStore store) throws IOException {
+        Path path = file.toPath();
+
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(path)); JsonParser parser = factory.createParser(is)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Not a firmware pack file " + file);
+            }
+
+            FirmwarePack pack = new FirmwarePack();
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if ("enableLocal".equals(name)) {
+                    pack.setEnableLocal(parser.getValueAsBoolean());
+                }
+                else if ("enableNetwork".equals(name)) {
+                    pack.setEnableNetwork(parser.getValueAsBoolean());
+                }
+                else if ("parallelUploads".equals(name)) {
+                    pack.setParallelUploads(parser.getValueAsInt(FirmwarePack.DEFAULT_PARALLEL_UPLOADS));
+                }
+                else if ("firmwareList".equals(name) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        Firmware firmware = readFirmware(path, parser);
+                        if (store != null && firmware.imageSource instanceof JsonImageSource) {
+                            JsonImageSource source = (JsonImageSource) firmware.imageSource;
+                            firmware = store.ingest(file, source.offset, null, firmware.getBinaryVersion(), firmware.getDescription(), source);
+                        }
+                        pack.addFirmware(firmware);
+                    }
+                }
+                else {
+                    parser.skipChildren();
+                }
+            }
+
+            return pack;
+        }
+    }
+
+    static Firmware readFirmware(Path path, JsonParser parser) throws IOException {
+        Firmware firmware = new Firmware();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("description".equals(name)) {
+                firmware.setDescription(parser.getValueAsString());
+            }
+            else if ("binaryVersion".equals(name)) {
+                firmware.setBinaryVersion(parser.getValueAsInt());
+            }
+            else if ("binaryImage".equals(name) && token == JsonToken.VALUE_STRING) {
+                // The string content is not requested, the parser skips it without decoding
+                firmware.imageSource = new JsonImageSource(path, parser.currentTokenLocation().getByteOffset());
+            }
+            else {
+                parser.skipChildren();
+            }
+        }
+
+        return firmware;
+    }
+
+}
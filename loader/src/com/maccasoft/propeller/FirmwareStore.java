@@ -0,0 +1,498 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.maccasoft.propeller.loader.ImageChecksums;
+
+/**
+ * Local firmware store addressed by the SHA-256 hash of the image content.
+ *
+ * Ingested images are written once in the store directory and the parsed metadata is kept in an
+ * index, so the same image referenced by different files or packs is read, hashed and checked only
+ * the first time. The index also records the files and pack entries already ingested, by path,
+ * size, modification time and offset, so unchanged files are resolved without reading them again
+ * on the next launches. The store is bounded in size, least recently used images not referenced by
+ * a firmware in use are removed first.
+ *
+ * The store directory can be shared by several processes, the index is updated holding a lock on
+ * a lock file and the changes made by the other processes are merged before saving it.
+ */
+public class FirmwareStore {
+
+    public static final long DEFAULT_MAX_SIZE = 64L * 1024L * 1024L;
+
+    static final String INDEX_FILE = "index.json";
+    static final String LOCK_FILE = "index.lock";
+    static final String IMAGE_EXTENSION = ".binary";
+
+    static FirmwareStore defaultStore;
+
+    /** Serializes the index updates of the stores of this process, the file lock is per process */
+    static final ReentrantLock indexLock = new ReentrantLock();
+
+    public static class Entry {
+
+        public String sha256;
+        public int binaryVersion;
+        public String description;
+        public int length;
+        public int byteSum;
+        public int longSum;
+
+    }
+
+    public static class FileEntry {
+
+        public String path;
+        public long size;
+        public long lastModified;
+        public long offset;
+        public String sha256;
+
+    }
+
+    static class Index {
+
+        public List<Entry> entries = new ArrayList<>();
+        public List<FileEntry> files = new ArrayList<>();
+
+    }
+
+    record FileKey(Path path, long size, long lastModified, long offset) {
+
+    }
+
+    class StoreImageSource implements FirmwareImageSource {
+
+        final String sha256;
+
+        StoreImageSource(String sha256) {
+            this.sha256 = sha256;
+        }
+
+        @Override
+        public byte[] getBinaryImage() throws IOException {
+            byte[] image = Files.readAllBytes(getImagePath(sha256));
+            if (!sha256.equals(FirmwarePackFile.sha256(image))) {
+                remove(sha256);
+                throw new IOException("Firmware image " + sha256 + " is corrupted");
+            }
+            return image;
+        }
+
+    }
+
+    class PackImageSource implements FirmwareImageSource {
+
+        final FileKey key;
+        final FirmwareImageSource source;
+        final int binaryVersion;
+        final String description;
+
+        PackImageSource(FileKey key, FirmwareImageSource source, int binaryVersion, String description) {
+            this.key = key;
+            this.source = source;
+            this.binaryVersion = binaryVersion;
+            this.description = description;
+        }
+
+        @Override
+        public byte[] getBinaryImage() throws IOException {
+            byte[] image = source.getBinaryImage();
+            try {
+                addPackImage(key, image, binaryVersion, description);
+            } catch (IOException e) {
+                // The image is still available from the pack
+            }
+            return image;
+        }
+
+    }
+
+    final Path root;
+    final long maxSize;
+
+    final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(16, 0.75f, true);
+    final Map<String, WeakReference<StoreImageSource>> sources = new HashMap<>();
+    final Map<FileKey, String> files = new HashMap<>();
+    long size;
+
+    FileChannel lockChannel;
+
+    public static synchronized FirmwareStore getDefault() throws IOException {
+        if (defaultStore == null) {
+            defaultStore = new FirmwareStore(new File(System.getProperty("user.home"), ".propeller-firmware-loader/store"), DEFAULT_MAX_SIZE);
+        }
+        return defaultStore;
+    }
+
+    public FirmwareStore(File root, long maxSize) throws IOException {
+        this.root = root.toPath();
+        this.maxSize = maxSize;
+
+        Files.createDirectories(this.root);
+        loadIndex();
+    }
+
+    void loadIndex() throws IOException {
+        // The index is read when the lock is acquired
+        lockIndex();
+        unlockIndex();
+    }
+
+    /**
+     * Locks the index shared with the other processes and reloads it.
+     */
+    void lockIndex() throws IOException {
+        indexLock.lock();
+        if (indexLock.getHoldCount() == 1) {
+            try {
+                lockChannel = FileChannel.open(root.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                lockChannel.lock();
+                mergeIndex();
+            } catch (IOException | RuntimeException e) {
+                unlockIndex();
+                throw e;
+            }
+        }
+    }
+
+    void unlockIndex() throws IOException {
+        try {
+            if (indexLock.getHoldCount() == 1 && lockChannel != null) {
+                lockChannel.close();
+                lockChannel = null;
+            }
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    /**
+     * Reads the saved index and adds the images and files not known yet, the images removed from
+     * the directory are dropped.
+     */
+    void mergeIndex() {
+        Iterator<Entry> iter = index.values().iterator();
+        while (iter.hasNext()) {
+            Entry entry = iter.next();
+            if (!Files.exists(getImagePath(entry.sha256))) {
+                iter.remove();
+                size -= entry.length;
+                files.values().removeIf(entry.sha256::equals);
+            }
+        }
+
+        Path path = root.resolve(INDEX_FILE);
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try {
+            ObjectMapper mapper = new ObjectMapper();
+            mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+            Index data = mapper.readValue(path.toFile(), Index.class);
+            for (Entry entry : data.entries) {
+                if (!index.containsKey(entry.sha256) && Files.exists(getImagePath(entry.sha256))) {
+                    index.put(entry.sha256, entry);
+                    size += entry.length;
+                }
+            }
+            for (FileEntry entry : data.files) {
+                if (index.containsKey(entry.sha256)) {
+                    files.putIfAbsent(new FileKey(Path.of(entry.path), entry.size, entry.lastModified, entry.offset), entry.sha256);
+                }
+            }
+        } catch (IOException e) {
+            // Unreadable index, keep the known images
+        }
+    }
+
+    void saveIndex() throws IOException {
+        Index data = new Index();
+        data.entries.addAll(index.values());
+        for (Map.Entry<FileKey, String> element : files.entrySet()) {
+            FileKey key = element.getKey();
+            FileEntry entry = new FileEntry();
+            entry.path = key.path().toString();
+            entry.size = key.size();
+            entry.lastModified = key.lastModified();
+            entry.offset = key.offset();
+            entry.sha256 = element.getValue();
+            data.files.add(entry);
+        }
+
+        Path path = root.resolve(INDEX_FILE);
+        Path temp = root.resolve(INDEX_FILE + ".tmp");
+        new ObjectMapper().writeValue(temp.toFile(), data);
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Adds the image read from the given file to the store.
+     *
+     * Files already ingested and not modified since are resolved without reading them again.
+     *
+     * @param file the firmware binary file
+     * @return the firmware backed by the stored image
+     * @throws IOException
+     */
+    public synchronized Firmware ingest(File file) throws IOException {
+        FileKey key = getFileKey(file, 0);
+
+        String sha256 = files.get(key);
+        if (sha256 != null) {
+            Firmware firmware = get(sha256);
+            if (firmware != null) {
+                return firmware;
+            }
+        }
+
+        byte[] image = Files.readAllBytes(key.path());
+        ImageChecksums checksums = ImageChecksums.compute(image);
+        int binaryVersion = checksums.getBinaryVersion();
+        lockIndex();
+        try {
+            Firmware firmware = ingest(image, checksums, binaryVersion, Firmware.getDefaultDescription(binaryVersion));
+            putFile(key, ((StoreImageSource) firmware.imageSource).sha256);
+            saveIndex();
+            return firmware;
+        } finally {
+            unlockIndex();
+        }
+    }
+
+    /**
+     * Returns the firmware of an image embedded in a pack file.
+     *
+     * Images already in the store, by hash or by the position in a pack file not modified since, are
+     * read from the store. Other images are read from the pack when first used and added to the
+     * store at that time.
+     *
+     * @param file the pack file
+     * @param offset the offset of the image in the pack file
+     * @param sha256 the image hash, or null if not known
+     * @param binaryVersion the image version
+     * @param description the firmware description
+     * @param source the image source in the pack
+     * @return the firmware
+     * @throws IOException
+     */
+    public synchronized Firmware ingest(File file, long offset, String sha256, int binaryVersion, String description, FirmwareImageSource source) throws IOException {
+        FileKey key = getFileKey(file, offset);
+
+        if (sha256 == null) {
+            sha256 = files.get(key);
+        }
+        if (sha256 != null) {
+            Entry entry = index.get(sha256);
+            if (entry != null) {
+                return createFirmware(entry, description);
+            }
+        }
+
+        return new Firmware(binaryVersion, new PackImageSource(key, source, binaryVersion, description), description);
+    }
+
+    synchronized void addPackImage(FileKey key, byte[] image, int binaryVersion, String description) throws IOException {
+        String sha256 = FirmwarePackFile.sha256(image);
+        lockIndex();
+        try {
+            ingest(image, ImageChecksums.compute(image), binaryVersion, description);
+            if (index.containsKey(sha256) && !sha256.equals(files.get(key))) {
+                putFile(key, sha256);
+                saveIndex();
+            }
+        } finally {
+            unlockIndex();
+        }
+    }
+
+    /**
+     * Records the image of a file position, replacing the key of the previous version of the file.
+     */
+    void putFile(FileKey key, String sha256) {
+        files.keySet().removeIf(other -> other.path().equals(key.path()) && other.offset() == key.offset());
+        files.put(key, sha256);
+    }
+
+    FileKey getFileKey(File file, long offset) throws IOException {
+        Path path = file.toPath().toAbsolutePath();
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        return new FileKey(path, attrs.size(), attrs.lastModifiedTime().toMillis(), offset);
+    }
+
+    public synchronized Firmware ingest(byte[] image, int binaryVersion, String description) throws IOException {
+        return ingest(image, ImageChecksums.compute(image), binaryVersion, description);
+    }
+
+    Firmware ingest(byte[] image, ImageChecksums checksums, int binaryVersion, String description) throws IOException {
+        String sha256 = FirmwarePackFile.sha256(image);
+
+        lockIndex();
+        try {
+            Entry entry = index.get(sha256);
+            if (entry == null) {
+                Path path = getImagePath(sha256);
+                Path temp = root.resolve(sha256 + ".tmp");
+                Files.write(temp, image);
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                entry = new Entry();
+                entry.sha256 = sha256;
+                entry.binaryVersion = binaryVersion;
+                entry.description = description;
+                entry.length = image.length;
+                entry.byteSum = checksums.getByteSum();
+                entry.longSum = checksums.getLongSum();
+
+                index.put(sha256, entry);
+                size += image.length;
+
+                evict(sha256);
+                saveIndex();
+            }
+
+            return createFirmware(entry, description);
+        } finally {
+            unlockIndex();
+        }
+    }
+
+    /**
+     * Returns the firmware with the given image hash.
+     *
+     * @param sha256 the image hash
+     * @return the firmware, or null if the image is not in the store
+     */
+    public synchronized Firmware get(String sha256) {
+        Entry entry = index.get(sha256);
+        if (entry == null) {
+            return null;
+        }
+        return createFirmware(entry, entry.description);
+    }
+
+    Firmware createFirmware(Entry entry, String description) {
+        WeakReference<StoreImageSource> reference = sources.get(entry.sha256);
+        StoreImageSource source = reference != null ? reference.get() : null;
+        if (source == null) {
+            source = new StoreImageSource(entry.sha256);
+            sources.put(entry.sha256, new WeakReference<>(source));
+        }
+        Firmware firmware = new Firmware(entry.binaryVersion, source, description);
+        firmware.checksums = new ImageChecksums(entry.length, entry.byteSum, entry.longSum);
+        return firmware;
+    }
+
+    void evict(String keep) throws IOException {
+        Iterator<Entry> iter = index.values().iterator();
+        while (size > maxSize && iter.hasNext()) {
+            Entry entry = iter.next();
+            if (!entry.sha256.equals(keep) && !isReferenced(entry.sha256)) {
+                iter.remove();
+                size -= entry.length;
+                deleteImage(entry.sha256);
+            }
+        }
+        pruneFiles();
+    }
+
+    /**
+     * Removes the keys of the files deleted or modified since they were ingested.
+     */
+    void pruneFiles() {
+        files.keySet().removeIf(key -> {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(key.path(), BasicFileAttributes.class);
+                return attrs.size() != key.size() || attrs.lastModifiedTime().toMillis() != key.lastModified();
+            } catch (IOException e) {
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Returns true if a firmware in use reads its image from the store.
+     */
+    synchronized boolean isReferenced(String sha256) {
+        WeakReference<StoreImageSource> reference = sources.get(sha256);
+        if (reference == null) {
+            return false;
+        }
+        if (reference.get() == null) {
+            sources.remove(sha256);
+            return false;
+        }
+        return true;
+    }
+
+    synchronized void remove(String sha256) throws IOException {
+        lockIndex();
+        try {
+            Entry entry = index.remove(sha256);
+            if (entry != null) {
+                size -= entry.length;
+                deleteImage(sha256);
+                saveIndex();
+            }
+        } finally {
+            unlockIndex();
+        }
+    }
+
+    void deleteImage(String sha256) throws IOException {
+        Files.deleteIfExists(getImagePath(sha256));
+        WeakReference<StoreImageSource> reference = sources.remove(sha256);
+        StoreImageSource source = reference != null ? reference.get() : null;
+        if (source != null) {
+            FirmwareImageCache.getDefault().remove(source);
+        }
+        files.values().removeIf(sha256::equals);
+    }
+
+    Path getImagePath(String sha256) {
+        return root.resolve(sha256 + IMAGE_EXTENSION);
+    }
+
+    public synchronized boolean contains(String sha256) {
+        return index.containsKey(sha256);
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+}
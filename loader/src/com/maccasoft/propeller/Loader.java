@@ -12,11 +12,14 @@
 package com.maccasoft.propeller;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 import org.eclipse.core.databinding.observable.Realm;
@@ -66,10 +69,9 @@ import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.swt.widgets.Text;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.maccasoft.propeller.internal.ImageRegistry;
 import com.maccasoft.propeller.internal.InternalErrorDialog;
+import com.maccasoft.propeller.loader.OperationTimings;
 import com.maccasoft.propeller.loader.Propeller1Loader;
 import com.maccasoft.propeller.loader.Propeller2Loader;
 import com.maccasoft.propeller.loader.PropellerLoader;
@@ -83,6 +85,9 @@ public class Loader {
     public static final String APP_TITLE = "Propeller Firmware Loader";
     public static final String APP_VERSION = "0.2.0";
 
+    /** Maximum time of the upload to a device, including the retries */
+    public static final int DEVICE_TIME_BUDGET = 120_000;
+
     private static final int HORIZONTAL_DIALOG_UNIT_PER_CHAR = 4;
     private static final int VERTICAL_DIALOG_UNITS_PER_CHAR = 8;
 
@@ -92,9 +97,9 @@ public class Loader {
         "Firmware Packs",
     };
     public static final String[] filterExtensions = new String[] {
-        "*.binary;*.bin;*.json",
+        "*.binary;*.bin;*.json;*.fwpack",
         "*.binary;*.bin",
-        "*.json",
+        "*.json;*.fwpack",
     };
 
     Display display;
@@ -122,6 +127,7 @@ public class Loader {
     Button discoverButton;
 
     Button updateButton;
+    Button stationButton;
 
     LoaderParameters parameters;
     boolean embeddedFirmware;
@@ -222,6 +228,7 @@ public class Loader {
             }
 
             updateButton.setEnabled(parameters.canDoUpdate());
+            stationButton.setEnabled(parameters.getFirmware() != null);
         });
     }
 
@@ -340,16 +347,27 @@ public class Loader {
 
         try {
             String name = file.getName().toLowerCase();
-            if (name.endsWith(".json")) {
-                if (file.getName().toLowerCase().endsWith(".json")) {
-                    ObjectMapper mapper = new ObjectMapper();
-                    mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
-                    FirmwarePack pack = mapper.readValue(file, FirmwarePack.class);
-                    updateFrom(pack);
-                }
+            if (FirmwarePackJsonFile.isFirmwarePackJsonFile(file)) {
+                FirmwarePack pack = FirmwarePackJsonFile.read(file, getFirmwareStore());
+                updateFrom(pack);
+            }
+            else if (FirmwarePackFile.isFirmwarePackFile(file)) {
+                FirmwarePack pack = FirmwarePackFile.read(file, getFirmwareStore());
+                updateFrom(pack);
             }
             else if (name.endsWith(".binary") || name.endsWith(".bin")) {
-                Firmware firmware = Firmware.fromFile(file);
+                Firmware firmware = null;
+                FirmwareStore store = getFirmwareStore();
+                if (store != null) {
+                    try {
+                        firmware = store.ingest(file);
+                    } catch (IOException e) {
+                        // Do nothing
+                    }
+                }
+                if (firmware == null) {
+                    firmware = Firmware.fromFile(file);
+                }
                 updateFrom(firmware);
             }
         } catch (Exception e) {
@@ -360,6 +378,23 @@ public class Loader {
         selectionGroup.layout();
     }
 
+    /**
+     * Returns the default firmware store, or null if it is not enabled or can't be opened.
+     *
+     * The store copies the opened firmware images to the user directory, it is enabled by setting
+     * the FIRMWARE_STORE system property to true.
+     */
+    static FirmwareStore getFirmwareStore() {
+        if (!Boolean.getBoolean("FIRMWARE_STORE")) {
+            return null;
+        }
+        try {
+            return FirmwareStore.getDefault();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
     public void updateFrom(FirmwarePack pack) {
         parameters.updateFrom(pack);
     }
@@ -588,6 +623,7 @@ public class Loader {
                 CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
                     try {
                         DeviceDiscover discover = new DeviceDiscover();
+                        discover.setCalibrateReset(System.getenv("LOADER_CALIBRATE_RESET") != null);
                         discover.find(parameters.isEnableLocal(), parameters.isEnableNetwork(), (list) -> {
                             display.asyncExec(() -> {
                                 parameters.setDevices(list);
@@ -623,7 +659,7 @@ public class Loader {
 
     void createButtonsGroup(Composite parent) {
         Composite container = new Composite(parent, SWT.NONE);
-        GridLayout layout = new GridLayout(3, false);
+        GridLayout layout = new GridLayout(4, false);
         layout.marginWidth = layout.marginHeight = 0;
         container.setLayout(layout);
         container.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, false));
@@ -652,6 +688,26 @@ public class Loader {
 
         });
 
+        stationButton = new Button(container, SWT.PUSH);
+        stationButton.setText("Station");
+        stationButton.setToolTipText("Flash the boards as they are plugged in");
+        stationButton.setLayoutData(new GridData(convertHorizontalDLUsToPixels(60), SWT.DEFAULT));
+        stationButton.setEnabled(parameters.getFirmware() != null);
+        stationButton.addSelectionListener(new SelectionAdapter() {
+
+            @Override
+            public void widgetSelected(SelectionEvent event) {
+                try {
+                    boolean writeToFlash = System.getenv("LOADER_WRITE_TO_RAM") == null;
+                    ProductionStationDialog dlg = new ProductionStationDialog(shell, parameters.getFirmware(), writeToFlash);
+                    dlg.open();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+
+        });
+
         label = new Label(container, SWT.NONE);
         label.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
 
@@ -701,6 +757,7 @@ public class Loader {
         discoverButton.setEnabled(enable);
 
         updateButton.setEnabled(enable && parameters.canDoUpdate());
+        stationButton.setEnabled(enable && parameters.getFirmware() != null);
     }
 
     void startUpdate(boolean writeFlash) {
@@ -710,6 +767,7 @@ public class Loader {
             CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
                 try {
                     DeviceDiscover discover = new DeviceDiscover();
+                    discover.setCalibrateReset(System.getenv("LOADER_CALIBRATE_RESET") != null);
                     discover.find(parameters.isEnableLocal(), parameters.isEnableNetwork(), (list) -> {
                         selectedDevices.addAll(list);
                         display.asyncExec(() -> {
@@ -731,7 +789,8 @@ public class Loader {
 
         Iterator<Device> iter = selectedDevices.iterator();
         while (iter.hasNext()) {
-            if (iter.next().getVersion() != firmware.getBinaryVersion()) {
+            Device device = iter.next();
+            if (device.getVersion() != firmware.getBinaryVersion()) {
                 iter.remove();
             }
         }
@@ -743,7 +802,19 @@ public class Loader {
 
         boolean doUpdate = MessageDialog.openConfirm(shell, APP_TITLE, "Found " + selectedDevices.size() + " device(s). Confirm firmware update?");
         if (doUpdate) {
-            ProgressMonitorDialog dlg = new ProgressMonitorDialog(shell);
+            Set<PropellerLoader> runningLoaders = ConcurrentHashMap.newKeySet();
+
+            ProgressMonitorDialog dlg = new ProgressMonitorDialog(shell) {
+
+                @Override
+                protected void cancelPressed() {
+                    super.cancelPressed();
+                    for (PropellerLoader loader : runningLoaders) {
+                        loader.cancel();
+                    }
+                }
+
+            };
 
             for (Device device : selectedDevices) {
                 device.clearStatus();
@@ -754,31 +825,6 @@ public class Loader {
 
                 @Override
                 public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
-
-                    PropellerLoaderListener listener = new PropellerLoaderListener() {
-
-                        @Override
-                        public void bufferUpload(int type, byte[] binaryImage, String text) {
-                            monitor.subTask("Loading " + text + " to RAM");
-                        }
-
-                        @Override
-                        public void verifyRam() {
-                            monitor.subTask("Verifying RAM ... ");
-                        }
-
-                        @Override
-                        public void eepromWrite() {
-                            monitor.subTask("Writing EEPROM ... ");
-                        }
-
-                        @Override
-                        public void eepromVerify() {
-                            monitor.subTask("Verifying EEPROM ... ");
-                        }
-
-                    };
-
                     monitor.beginTask("Firmware upload", selectedDevices.size());
 
                     Display.getDefault().syncExec(new Runnable() {
@@ -789,37 +835,18 @@ public class Loader {
                         }
                     });
 
-                    ComPort comPort;
-                    for (Device device : selectedDevices) {
-                        String portName = device.getSerialPort();
-                        if (portName != null && !portName.isBlank()) {
-                            comPort = new SerialComPort(portName);
-                        }
-                        else {
-                            comPort = new NetworkComPort(device.getName(), device.getInetAddr(), device.getMacAddr(), device.getResetPin());
-                        }
-                        monitor.setTaskName("Firmware upload to " + comPort.getDescription());
-
-                        try {
-                            PropellerLoader loader = firmware.getBinaryVersion() == 1 ? new Propeller1Loader(comPort) : new Propeller2Loader(comPort);
-                            loader.setListener(listener);
-                            loader.upload(firmware.getBinaryImage(), writeFlash);
-                            device.setStatus(0);
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                            device.setStatus(1);
+                    // Each device has its own thread, up to the configured number of uploads run at the same time
+                    DeviceExecutor.map("Firmware upload", selectedDevices, parameters.getParallelUploads(), device -> {
+                        if (!monitor.isCanceled()) {
+                            upload(device, firmware, writeFlash, monitor, runningLoaders);
                         }
-
-                        Display.getDefault().syncExec(new Runnable() {
-
-                            @Override
-                            public void run() {
-                                devicesViewer.update(device, null);
-                            }
-                        });
-
                         monitor.worked(1);
-                    }
+                        return null;
+                    }, e -> {
+                        Display.getDefault().asyncExec(() -> openInternalError(shell, "An unexpected error has occured.", e));
+                    });
+
+                    saveOperationTimings();
                 }
 
             };
@@ -833,6 +860,70 @@ public class Loader {
         }
     }
 
+    void upload(Device device, Firmware firmware, boolean writeFlash, IProgressMonitor monitor, Set<PropellerLoader> runningLoaders) {
+        ComPort comPort;
+
+        String portName = device.getSerialPort();
+        if (portName != null && !portName.isBlank()) {
+            comPort = new SerialComPort(portName);
+        }
+        else {
+            comPort = new NetworkComPort(device.getName(), device.getInetAddr(), device.getMacAddr(), device.getResetPin());
+        }
+        String prefix = comPort.getDescription() + ": ";
+
+        PropellerLoaderListener listener = new PropellerLoaderListener() {
+
+            @Override
+            public void bufferUpload(int type, byte[] binaryImage, String text) {
+                monitor.subTask(prefix + "Loading " + text + " to RAM");
+            }
+
+            @Override
+            public void verifyRam() {
+                monitor.subTask(prefix + "Verifying RAM ... ");
+            }
+
+            @Override
+            public void eepromWrite() {
+                monitor.subTask(prefix + "Writing EEPROM ... ");
+            }
+
+            @Override
+            public void eepromVerify() {
+                monitor.subTask(prefix + "Verifying EEPROM ... ");
+            }
+
+        };
+
+        PropellerLoader loader = firmware.getBinaryVersion() == 1 ? new Propeller1Loader(comPort) : new Propeller2Loader(comPort);
+        runningLoaders.add(loader);
+        if (monitor.isCanceled()) {
+            loader.cancel();
+        }
+        try {
+            loader.setListener(listener);
+            loader.setTimeBudget(DEVICE_TIME_BUDGET);
+            if (comPort instanceof SerialComPort) {
+                ((SerialComPort) comPort).setWriteBufferSize(SerialComPort.DEFAULT_WRITE_BUFFER_SIZE);
+            }
+            loader.upload(firmware.getBinaryImage(), firmware.getChecksums(), writeFlash);
+            device.setStatus(0);
+        } catch (Exception e) {
+            e.printStackTrace();
+            device.setStatus(1);
+        }
+        runningLoaders.remove(loader);
+
+        Display.getDefault().syncExec(new Runnable() {
+
+            @Override
+            public void run() {
+                devicesViewer.update(device, null);
+            }
+        });
+    }
+
     protected int convertHorizontalDLUsToPixels(int dlus) {
         if (fontMetrics == null) {
             return 0;
@@ -911,9 +1002,14 @@ public class Loader {
                     Loader app = new Loader(shell);
 
                     try {
-                        ObjectMapper mapper = new ObjectMapper();
-                        mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
-                        FirmwarePack pack = mapper.readValue(new File(System.getProperty("APP_DIR"), "firmware.json"), FirmwarePack.class);
+                        FirmwarePack pack;
+                        File file = new File(System.getProperty("APP_DIR"), "firmware" + FirmwarePackFile.EXTENSION);
+                        if (file.exists()) {
+                            pack = FirmwarePackFile.read(file, getFirmwareStore());
+                        }
+                        else {
+                            pack = FirmwarePackJsonFile.read(new File(System.getProperty("APP_DIR"), "firmware" + FirmwarePackJsonFile.EXTENSION), getFirmwareStore());
+                        }
                         app.updateFrom(pack);
                         app.setEmbeddedFirmware(true);
 
@@ -950,6 +1046,17 @@ public class Loader {
         display.dispose();
     }
 
+    /**
+     * Saves the operation durations observed by the uploads, used to schedule the next waits.
+     */
+    static void saveOperationTimings() {
+        try {
+            OperationTimings.getDefault().save();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
     static boolean internalErrorRunning;
 
     public static void openInternalError(Shell shell, String message, Throwable details) {
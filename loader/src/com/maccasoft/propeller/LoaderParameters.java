@@ -27,6 +27,7 @@ public class LoaderParameters {
     public static final String PROP_DEVICES = "devices";
     public static final String PROP_ENABLE_LOCAL = "enableLocal";
     public static final String PROP_ENABLE_NETWORK = "enableNetwork";
+    public static final String PROP_PARALLEL_UPLOADS = "parallelUploads";
 
     public static final String PROP_DEVICE_SELECTION = "deviceSelection";
 
@@ -40,6 +41,8 @@ public class LoaderParameters {
     boolean enableLocal;
     boolean enableNetwork;
 
+    int parallelUploads;
+
     Firmware firmware;
 
     private final PropertyChangeSupport changeSupport = new PropertyChangeSupport(this);
@@ -47,6 +50,7 @@ public class LoaderParameters {
     public LoaderParameters() {
         updateAll = true;
         enableLocal = true;
+        parallelUploads = FirmwarePack.DEFAULT_PARALLEL_UPLOADS;
         devices = new ArrayList<>();
         firmwareList = new ArrayList<>();
     }
@@ -63,6 +67,7 @@ public class LoaderParameters {
         }
         setEnableLocal(pack.isEnableLocal());
         setEnableNetwork(pack.isEnableNetwork());
+        setParallelUploads(pack.getParallelUploads());
     }
 
     public void addPropertyChangeListener(PropertyChangeListener listener) {
@@ -144,6 +149,14 @@ public class LoaderParameters {
         changeSupport.firePropertyChange(PROP_ENABLE_NETWORK, this.enableNetwork, this.enableNetwork = enableNetwork);
     }
 
+    public int getParallelUploads() {
+        return parallelUploads;
+    }
+
+    public void setParallelUploads(int parallelUploads) {
+        changeSupport.firePropertyChange(PROP_PARALLEL_UPLOADS, this.parallelUploads, this.parallelUploads = parallelUploads);
+    }
+
     public List<Firmware> getFirmwareList() {
         return firmwareList;
     }
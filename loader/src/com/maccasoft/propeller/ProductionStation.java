@@ -0,0 +1,403 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import com.maccasoft.propeller.loader.Propeller1Loader;
+import com.maccasoft.propeller.loader.Propeller2Loader;
+import com.maccasoft.propeller.loader.PropellerLoader;
+import com.maccasoft.propeller.loader.Session;
+import com.maccasoft.propeller.loader.UploadEventLoop;
+import com.maccasoft.propeller.loader.UploadResult;
+import com.maccasoft.propeller.port.ComPort;
+import com.maccasoft.propeller.port.ComPortException;
+import com.maccasoft.propeller.port.SerialComPort;
+
+import jssc.SerialPortList;
+
+/**
+ * Production line station, flashes the firmware to each board plugged in.
+ *
+ * The serial ports are scanned periodically and the idle ports are probed with a reset and
+ * handshake, a board replying with the chip version of the firmware is flashed. The uploads run on
+ * the event loop, so the scan of the next fixtures continues while the boards are flashed. A flashed
+ * board is probed at longer intervals until it no longer replies, then the next board connected to
+ * the same port, or to the same adapter, is flashed. A port disappearing cancels its running
+ * upload. Failed units are flashed again only when requested with retry.
+ */
+public class ProductionStation implements AutoCloseable {
+
+    public static final int FLASHING = 0;
+    public static final int PASSED = 1;
+    public static final int FAILED = 2;
+    public static final int REMOVED = 3;
+    public static final int RETRIED = 4;
+
+    public static final int SCAN_INTERVAL = 500;
+
+    /** Interval between the probes of the boards already flashed, each probe resets the board */
+    public static final int REMOVAL_PROBE_INTERVAL = 1000;
+
+    static final int PORT_EMPTY = 0;
+    static final int PORT_BUSY = 1;
+    static final int PORT_DONE = 2;
+
+    public static class Unit {
+
+        final int number;
+        final String portName;
+        final long startTime;
+
+        volatile int state;
+        volatile long endTime;
+        volatile String error;
+        volatile boolean removed;
+        CompletableFuture<UploadResult> future;
+
+        Unit(int number, String portName, long startTime) {
+            this.number = number;
+            this.portName = portName;
+            this.startTime = startTime;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public String getPortName() {
+            return portName;
+        }
+
+        public int getState() {
+            return state;
+        }
+
+        /**
+         * Returns the upload time, or the time since the start if the upload is running.
+         */
+        public long getElapsed() {
+            return (state == FLASHING ? System.currentTimeMillis() : endTime) - startTime;
+        }
+
+        /**
+         * Returns the error message of failed uploads, or null.
+         */
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return "Unit [" + number + ", " + portName + ", " + state + (error != null ? ", " + error : "") + "]";
+        }
+
+    }
+
+    final Firmware firmware;
+    final boolean writeFlash;
+    final UploadEventLoop loop;
+    final ProductionStationListener listener;
+
+    final Map<String, Integer> ports = new HashMap<>();
+    final Map<String, Long> probeTimes = new HashMap<>();
+    final Map<String, Unit> present = new HashMap<>();
+    final List<Unit> units = new ArrayList<>();
+    long firstStartTime;
+    int passed;
+    int failed;
+
+    Thread thread;
+    volatile boolean closed;
+
+    public ProductionStation(Firmware firmware, boolean writeFlash, ProductionStationListener listener) {
+        this(firmware, writeFlash, UploadEventLoop.getDefault(), listener);
+    }
+
+    public ProductionStation(Firmware firmware, boolean writeFlash, UploadEventLoop loop, ProductionStationListener listener) {
+        this.firmware = firmware;
+        this.writeFlash = writeFlash;
+        this.loop = loop;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts the scan thread.
+     */
+    public void start() {
+        thread = new Thread(() -> {
+            while (!closed) {
+                scan();
+                try {
+                    Thread.sleep(SCAN_INTERVAL);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }, "Production station");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    protected String[] getPortNames() {
+        return SerialPortList.getPortNames();
+    }
+
+    protected ComPort createComPort(String portName) {
+        SerialComPort comPort = new SerialComPort(portName);
+        try {
+            comPort.setWriteBufferSize(SerialComPort.DEFAULT_WRITE_BUFFER_SIZE);
+        } catch (ComPortException e) {
+            // Do nothing
+        }
+        return comPort;
+    }
+
+    /**
+     * Resets the board connected to the port and runs the handshake.
+     *
+     * @param portName the port name
+     * @return the chip version, 1 or 2, or 0 if no chip replied
+     */
+    protected int probe(String portName) {
+        try {
+            Session session = Session.open(createComPort(portName));
+            if (session != null) {
+                session.close();
+                return session.getVersion();
+            }
+        } catch (ComPortException e) {
+            // Do nothing
+        }
+        return 0;
+    }
+
+    /**
+     * Checks the serial ports, probes the idle ports and starts the uploads to the new boards. Ports
+     * without a chip, or with a chip of a different version, are never flashed.
+     */
+    public void scan() {
+        List<String> probes = new ArrayList<>();
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            Set<String> portNames = new HashSet<>(Arrays.asList(getPortNames()));
+
+            Iterator<String> iter = ports.keySet().iterator();
+            while (iter.hasNext()) {
+                String portName = iter.next();
+                if (!portNames.contains(portName)) {
+                    iter.remove();
+                    probeTimes.remove(portName);
+                    Unit unit = present.remove(portName);
+                    if (unit != null && unit.state == FLASHING) {
+                        unit.removed = true;
+                        unit.future.cancel(false);
+                    }
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            for (String portName : portNames) {
+                int state = ports.getOrDefault(portName, PORT_EMPTY);
+                if (state == PORT_BUSY) {
+                    continue;
+                }
+                if (state == PORT_DONE && now - probeTimes.getOrDefault(portName, 0L) < REMOVAL_PROBE_INTERVAL) {
+                    continue;
+                }
+                probes.add(portName);
+            }
+            probes.sort(null);
+        }
+
+        // Each probe resets a board and waits for the handshake, they run at the same time
+        List<Entry<String, Integer>> results = DeviceExecutor.map("Production probe", probes, portName -> Map.entry(portName, probe(portName)));
+
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (Entry<String, Integer> result : results) {
+                if (closed) {
+                    return;
+                }
+                String portName = result.getKey();
+                int version = result.getValue();
+                int state = ports.getOrDefault(portName, PORT_EMPTY);
+                probeTimes.put(portName, now);
+                if (version == 0) {
+                    ports.put(portName, PORT_EMPTY);
+                }
+                else if (state == PORT_EMPTY) {
+                    if (version == firmware.getBinaryVersion()) {
+                        flash(portName);
+                    }
+                    else {
+                        ports.put(portName, PORT_DONE);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Flashes again the port of a failed unit, if the board is still connected.
+     *
+     * @param unit the failed unit
+     * @return true if the upload was started
+     */
+    public synchronized boolean retry(Unit unit) {
+        if (closed || unit.state != FAILED || present.get(unit.portName) != unit || ports.getOrDefault(unit.portName, PORT_EMPTY) != PORT_DONE) {
+            return false;
+        }
+        unit.state = RETRIED;
+        failed--;
+        fireUnitChanged(unit);
+
+        flash(unit.portName);
+
+        return true;
+    }
+
+    /**
+     * Flashes again the ports of all the failed units still connected.
+     *
+     * @return the number of uploads started
+     */
+    public synchronized int retryFailed() {
+        int count = 0;
+        for (Unit unit : new ArrayList<>(present.values())) {
+            if (retry(unit)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    Unit flash(String portName) {
+        Unit unit = new Unit(units.size() + 1, portName, System.currentTimeMillis());
+        if (units.isEmpty()) {
+            firstStartTime = unit.startTime;
+        }
+        units.add(unit);
+        present.put(portName, unit);
+        ports.put(portName, PORT_BUSY);
+        fireUnitChanged(unit);
+
+        ComPort comPort = createComPort(portName);
+        PropellerLoader loader = firmware.getBinaryVersion() == 1 ? new Propeller1Loader(comPort) : new Propeller2Loader(comPort);
+        unit.future = loader.uploadAsync(loop, firmware.getBinaryImage(), firmware.getChecksums(), writeFlash);
+        unit.future.whenComplete((result, e) -> completed(unit, e));
+
+        return unit;
+    }
+
+    void completed(Unit unit, Throwable e) {
+        synchronized (this) {
+            unit.endTime = System.currentTimeMillis();
+            if (e == null) {
+                unit.state = PASSED;
+                passed++;
+            }
+            else {
+                if (e instanceof CompletionException && e.getCause() != null) {
+                    e = e.getCause();
+                }
+                if (unit.removed && e instanceof CancellationException) {
+                    unit.error = "Board removed";
+                    unit.state = REMOVED;
+                }
+                else {
+                    unit.error = e.getMessage() != null ? e.getMessage() : e.toString();
+                    unit.state = FAILED;
+                    failed++;
+                }
+            }
+            if (present.get(unit.portName) == unit) {
+                ports.put(unit.portName, PORT_DONE);
+                probeTimes.put(unit.portName, unit.endTime);
+            }
+        }
+        fireUnitChanged(unit);
+    }
+
+    void fireUnitChanged(Unit unit) {
+        if (listener != null) {
+            listener.unitChanged(unit);
+        }
+    }
+
+    /**
+     * Returns all the units flashed, in order.
+     */
+    public synchronized List<Unit> getUnits() {
+        return new ArrayList<>(units);
+    }
+
+    public synchronized int getPassed() {
+        return passed;
+    }
+
+    public synchronized int getFailed() {
+        return failed;
+    }
+
+    /**
+     * Returns the rate of the passed units, since the first unit was plugged in.
+     */
+    public synchronized double getUnitsPerHour() {
+        long elapsed = System.currentTimeMillis() - firstStartTime;
+        if (passed == 0 || elapsed <= 0) {
+            return 0;
+        }
+        return passed * 3_600_000.0 / elapsed;
+    }
+
+    /**
+     * Stops the scan and cancels the running uploads. If the calling thread is interrupted it doesn't
+     * wait for the scan thread and its interrupt status is set.
+     */
+    @Override
+    public void close() {
+        List<Unit> running;
+        synchronized (this) {
+            closed = true;
+            running = new ArrayList<>(present.values());
+            present.clear();
+        }
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (Unit unit : running) {
+            unit.future.cancel(false);
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jface.dialogs.Dialog;
+import org.eclipse.jface.dialogs.IDialogConstants;
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.StyledCellLabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.ViewerCell;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.StyleRange;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Shell;
+
+/**
+ * Shows the production station board, the station runs until the dialog is closed.
+ */
+public class ProductionStationDialog extends Dialog {
+
+    static final int REFRESH_INTERVAL = 1000;
+
+    static final int RETRY_ID = IDialogConstants.CLIENT_ID + 1;
+
+    final Firmware firmware;
+    final boolean writeFlash;
+
+    ProductionStation station;
+    TableViewer viewer;
+    Label summary;
+
+    final Runnable refresh = new Runnable() {
+
+        @Override
+        public void run() {
+            if (viewer.getControl().isDisposed()) {
+                return;
+            }
+            updateBoard();
+            viewer.getControl().getDisplay().timerExec(REFRESH_INTERVAL, this);
+        }
+
+    };
+
+    public ProductionStationDialog(Shell parentShell, Firmware firmware, boolean writeFlash) {
+        super(parentShell);
+        this.firmware = firmware;
+        this.writeFlash = writeFlash;
+    }
+
+    @Override
+    protected void configureShell(Shell newShell) {
+        super.configureShell(newShell);
+        newShell.setText(Loader.APP_TITLE + " - Station");
+    }
+
+    @Override
+    protected Control createDialogArea(Composite parent) {
+        Composite content = (Composite) super.createDialogArea(parent);
+
+        Label label = new Label(content, SWT.NONE);
+        label.setText("Plug the boards to flash " + firmware.getDescription());
+
+        viewer = new TableViewer(content, SWT.V_SCROLL | SWT.BORDER | SWT.FULL_SELECTION);
+        viewer.setContentProvider(new ArrayContentProvider());
+        viewer.setLabelProvider(new StyledCellLabelProvider() {
+
+            @Override
+            public void update(ViewerCell cell) {
+                StringBuilder sb = new StringBuilder();
+                List<StyleRange> styles = new ArrayList<StyleRange>();
+
+                ProductionStation.Unit element = (ProductionStation.Unit) cell.getElement();
+                sb.append(String.format("#%d %s ", element.getNumber(), element.getPortName()));
+
+                String description;
+                switch (element.getState()) {
+                    case ProductionStation.PASSED:
+                        description = "Ok";
+                        styles.add(new StyleRange(sb.length(), description.length(), new Color(0x00, 0xC0, 0x00), null));
+                        break;
+                    case ProductionStation.FAILED:
+                        description = "Error - " + element.getError();
+                        styles.add(new StyleRange(sb.length(), description.length(), new Color(0xC0, 0x00, 0x00), null));
+                        break;
+                    case ProductionStation.REMOVED:
+                        description = "Removed";
+                        styles.add(new StyleRange(sb.length(), description.length(), new Color(0x80, 0x80, 0x80), null));
+                        break;
+                    case ProductionStation.RETRIED:
+                        description = "Retried - " + element.getError();
+                        styles.add(new StyleRange(sb.length(), description.length(), new Color(0x80, 0x80, 0x80), null));
+                        break;
+                    default:
+                        description = "Flashing";
+                        styles.add(new StyleRange(sb.length(), description.length(), new Color(0x80, 0x80, 0x00), null));
+                        break;
+                }
+                sb.append(description);
+                sb.append(String.format(" (%.1f s)", element.getElapsed() / 1000.0));
+
+                cell.setText(sb.toString());
+                cell.setStyleRanges(styles.toArray(new StyleRange[styles.size()]));
+            }
+
+        });
+
+        GridData gridData = new GridData(SWT.FILL, SWT.FILL, true, true);
+        gridData.widthHint = convertWidthInCharsToPixels(65);
+        gridData.heightHint = convertHeightInCharsToPixels(15);
+        viewer.getControl().setLayoutData(gridData);
+
+        summary = new Label(content, SWT.NONE);
+        summary.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+
+        station = new ProductionStation(firmware, writeFlash, unit -> {
+            if (!viewer.getControl().isDisposed()) {
+                viewer.getControl().getDisplay().asyncExec(() -> {
+                    if (!viewer.getControl().isDisposed()) {
+                        updateBoard();
+                    }
+                });
+            }
+        });
+        station.start();
+
+        viewer.getControl().getDisplay().timerExec(REFRESH_INTERVAL, refresh);
+        updateBoard();
+
+        return content;
+    }
+
+    void updateBoard() {
+        viewer.setInput(station.getUnits());
+        summary.setText(String.format("Passed: %d  Failed: %d  Units per hour: %.0f", station.getPassed(), station.getFailed(), station.getUnitsPerHour()));
+    }
+
+    @Override
+    protected void createButtonsForButtonBar(Composite parent) {
+        createButton(parent, RETRY_ID, "Retry Failed", false);
+        createButton(parent, IDialogConstants.CLOSE_ID, IDialogConstants.CLOSE_LABEL, true);
+    }
+
+    @Override
+    protected void buttonPressed(int buttonId) {
+        if (buttonId == RETRY_ID) {
+            station.retryFailed();
+            updateBoard();
+        }
+        else if (buttonId == IDialogConstants.CLOSE_ID) {
+            close();
+        }
+        super.buttonPressed(buttonId);
+    }
+
+    @Override
+    public boolean close() {
+        if (station != null) {
+            station.close();
+            Loader.saveOperationTimings();
+        }
+        return super.close();
+    }
+
+}
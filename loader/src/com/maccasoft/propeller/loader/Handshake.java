@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller.loader;
+
+import com.maccasoft.propeller.port.ComPort;
+import com.maccasoft.propeller.port.ComPortException;
+
+/**
+ * Boot ROM identification handshakes.
+ *
+ * The request streams and the expected responses are computed once, each handshake sends the whole
+ * request with a single write and verifies the response read in bulk within an overall deadline.
+ * The chip must be reset by the caller before starting the handshake.
+ */
+public class Handshake {
+
+    public static final int P1_TIMEOUT = 250;
+    public static final int P2_TIMEOUT = 100;
+
+    static final int P1_LFSR_LENGTH = 250;
+    static final int P1_VERSION_BITS = 8;
+    static final int P1_RESPONSE_LENGTH = P1_LFSR_LENGTH + P1_VERSION_BITS;
+
+    static final int DRAIN_TIMEOUT = 50;
+
+    static final byte[] P1_REQUEST;
+    static final byte[] P1_RESPONSE;
+
+    static final byte[] P2_REQUEST = "> \r> Prop_Chk 0 0 0 0\r".getBytes();
+    static final String P2_RESPONSE = "Prop_Ver ";
+
+    static {
+        int lfsr = 'P';
+
+        P1_REQUEST = new byte[1 + P1_LFSR_LENGTH + P1_RESPONSE_LENGTH];
+        P1_RESPONSE = new byte[P1_LFSR_LENGTH];
+
+        // the calibration pulse, the LFSR stream and the 0xF9 bytes that clock the response bits
+        int n = 0;
+        P1_REQUEST[n++] = (byte) 0xF9;
+        for (int i = 0; i < P1_LFSR_LENGTH; i++) {
+            P1_REQUEST[n++] = (byte) ((lfsr & 1) | 0xFE);
+            lfsr = ((lfsr << 1) | (((lfsr >> 7) ^ (lfsr >> 5) ^ (lfsr >> 4) ^ (lfsr >> 1)) & 1)) & 0xFF;
+        }
+        for (int i = 0; i < P1_RESPONSE_LENGTH; i++) {
+            P1_REQUEST[n++] = (byte) 0xF9;
+        }
+
+        // the chip continues the same sequence
+        for (int i = 0; i < P1_LFSR_LENGTH; i++) {
+            P1_RESPONSE[i] = (byte) (lfsr & 1);
+            lfsr = ((lfsr << 1) | (((lfsr >> 7) ^ (lfsr >> 5) ^ (lfsr >> 4) ^ (lfsr >> 1)) & 1)) & 0xFF;
+        }
+    }
+
+    /**
+     * Runs the P1 handshake.
+     *
+     * @param comPort the port, set at 115200 baud
+     * @return the chip version, or 0 if no P1 chip replied
+     * @throws ComPortException
+     */
+    public static int p1(ComPort comPort) throws ComPortException {
+        comPort.writeBytes(P1_REQUEST);
+
+        byte[] response = new byte[P1_RESPONSE_LENGTH];
+        int count = comPort.readFully(response, 0, response.length, P1_TIMEOUT);
+        if (count == 0) {
+            return 0;
+        }
+
+        int rc = checkP1Response(response, count);
+        if (rc == 0) {
+            drain(comPort);
+        }
+
+        return rc;
+    }
+
+    /**
+     * Verifies the response bits received from a P1 chip.
+     *
+     * @param response the received bytes
+     * @param count the number of bytes received
+     * @return the chip version, or 0 if the response doesn't match
+     */
+    static int checkP1Response(byte[] response, int count) {
+        for (int i = 0; i < P1_LFSR_LENGTH; i++) {
+            if (i >= count || (response[i] & 1) != P1_RESPONSE[i]) {
+                return 0;
+            }
+        }
+
+        int rc = 0;
+        for (int i = 0; i < P1_VERSION_BITS; i++) {
+            rc >>= 1;
+            if (P1_LFSR_LENGTH + i < count) {
+                rc += (response[P1_LFSR_LENGTH + i] & 1) != 0 ? 0x80 : 0;
+            }
+        }
+
+        return rc;
+    }
+
+    /**
+     * Runs the P2 handshake.
+     *
+     * @param comPort the port, set at the loader baud rate
+     * @return the chip version character, or 0 if no P2 chip replied
+     * @throws ComPortException
+     */
+    public static int p2(ComPort comPort) throws ComPortException {
+        comPort.writeBytes(P2_REQUEST);
+
+        StringBuilder sb = new StringBuilder();
+        byte[] rx = new byte[P2_RESPONSE.length() + 3];
+
+        long deadline = System.currentTimeMillis() + P2_TIMEOUT;
+        for (;;) {
+            int rc = parseP2Response(sb);
+            if (rc != 0) {
+                return rc;
+            }
+
+            long timeout = deadline - System.currentTimeMillis();
+            if (timeout <= 0) {
+                return 0;
+            }
+
+            int count = comPort.readBytes(rx, 0, rx.length, (int) timeout);
+            if (count == 0) {
+                return 0;
+            }
+            for (int i = 0; i < count; i++) {
+                sb.append((char) (rx[i] & 0xFF));
+            }
+        }
+    }
+
+    /**
+     * Searches the complete version line in the text received from a P2 chip.
+     *
+     * @return the chip version character, or 0 if the line was not yet received
+     */
+    static int parseP2Response(StringBuilder sb) {
+        int index = sb.indexOf(P2_RESPONSE);
+        if (index != -1 && sb.indexOf("\r\n", index) == index + P2_RESPONSE.length() + 1) {
+            return sb.charAt(index + P2_RESPONSE.length());
+        }
+        return 0;
+    }
+
+    /**
+     * Discards the incoming data until the line is idle.
+     */
+    static void drain(ComPort comPort) throws ComPortException {
+        byte[] rx = new byte[64];
+        while (comPort.readBytes(rx, 0, rx.length, DRAIN_TIMEOUT) != 0) {
+            // Do nothing
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller.loader;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Checksums of a binary image, computed in a single pass.
+ *
+ * The byte sum is used to detect P1 images and by the P1 network loader to verify the RAM contents,
+ * the sum of the little-endian longs (with the last long zero-padded) is used by the P2 loaders.
+ */
+public class ImageChecksums {
+
+    public static final int P2_CHECKSUM = 0x706F7250;
+
+    final int length;
+    final int byteSum;
+    final int longSum;
+
+    public static ImageChecksums compute(byte[] image) {
+        return compute(image, 0, image.length);
+    }
+
+    public static ImageChecksums compute(byte[] image, int offset, int length) {
+        int byteSum = 0;
+        int longSum = 0;
+
+        IntBuffer buffer = ByteBuffer.wrap(image, offset, length).slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        while (buffer.hasRemaining()) {
+            int data = buffer.get();
+            longSum += data;
+
+            // Adds the four bytes in parallel, two per 16-bit lane
+            int pairs = (data & 0x00FF00FF) + ((data >>> 8) & 0x00FF00FF);
+            byteSum += (pairs & 0xFFFF) + (pairs >>> 16);
+        }
+
+        int tail = 0;
+        for (int i = length & ~3, shift = 0; i < length; i++, shift += 8) {
+            int data = image[offset + i] & 0xFF;
+            tail |= data << shift;
+            byteSum += data;
+        }
+        longSum += tail;
+
+        return new ImageChecksums(length, byteSum, longSum);
+    }
+
+    public ImageChecksums(int length, int byteSum, int longSum) {
+        this.length = length;
+        this.byteSum = byteSum;
+        this.longSum = longSum;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the sum of all the image bytes as unsigned values.
+     */
+    public int getByteSum() {
+        return byteSum;
+    }
+
+    /**
+     * Returns the sum of the image as little-endian longs, the last long is zero-padded.
+     */
+    public int getLongSum() {
+        return longSum;
+    }
+
+    /**
+     * Returns the binary version, 1 if the image has a valid P1 checksum, 2 otherwise.
+     */
+    public int getBinaryVersion() {
+        return (byte) byteSum == 0x14 ? 1 : 2;
+    }
+
+    /**
+     * Returns the value that, appended to the image, makes the long sum equal to the P2 boot
+     * loader checksum.
+     */
+    public int getP2Checksum() {
+        return P2_CHECKSUM - longSum;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ImageChecksums [length=%d, byteSum=0x%08X, longSum=0x%08X]", length, byteSum, longSum);
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller.loader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Observed durations of the chip operations the loaders wait for.
+ *
+ * Each completed operation updates a moving average of its duration, by chip version and operation,
+ * the loaders use the average in place of the calculated estimate once the operation has been
+ * observed. The values are saved to a JSON file, next to the reset timings.
+ */
+public class OperationTimings {
+
+    public static final int VERIFY_RAM = 0;
+    public static final int EEPROM_WRITE = 1;
+    public static final int EEPROM_VERIFY = 2;
+
+    static OperationTimings defaultTimings;
+
+    public static class Entry {
+
+        public int version;
+        public int operation;
+        public int average;
+        public int samples;
+
+    }
+
+    static class Data {
+
+        public List<Entry> entries = new ArrayList<>();
+
+    }
+
+    final File file;
+    final Map<String, Entry> entries = new LinkedHashMap<>();
+    boolean modified;
+
+    public static synchronized OperationTimings getDefault() {
+        if (defaultTimings == null) {
+            defaultTimings = new OperationTimings(new File(System.getProperty("user.home"), ".propeller-firmware-loader/operation-timings.json"));
+        }
+        return defaultTimings;
+    }
+
+    /**
+     * Creates the timings kept only in memory.
+     */
+    public OperationTimings() {
+        this(null);
+    }
+
+    /**
+     * Creates the timings backed by the given file.
+     *
+     * @param file the file, or null to keep the timings only in memory
+     */
+    public OperationTimings(File file) {
+        this.file = file;
+
+        if (file != null && file.exists()) {
+            try {
+                ObjectMapper mapper = new ObjectMapper();
+                mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+                Data data = mapper.readValue(file, Data.class);
+                for (Entry entry : data.entries) {
+                    if (entry.samples > 0 && entry.average >= 0) {
+                        entries.put(getKey(entry.version, entry.operation), entry);
+                    }
+                }
+            } catch (IOException e) {
+                // Unreadable file, start without observed values
+            }
+        }
+    }
+
+    /**
+     * Returns the expected duration of the operation.
+     *
+     * @param version the chip version, 1 or 2
+     * @param operation the operation
+     * @param estimate the calculated duration, in milliseconds
+     * @return the observed average duration, or the estimate if the operation was not observed yet
+     */
+    public synchronized int getExpected(int version, int operation, int estimate) {
+        Entry entry = entries.get(getKey(version, operation));
+        return entry != null ? entry.average : estimate;
+    }
+
+    /**
+     * Records the observed duration of the operation.
+     *
+     * @param version the chip version, 1 or 2
+     * @param operation the operation
+     * @param duration the duration, in milliseconds
+     */
+    public synchronized void record(int version, int operation, int duration) {
+        Entry entry = entries.get(getKey(version, operation));
+        if (entry == null) {
+            entry = new Entry();
+            entry.version = version;
+            entry.operation = operation;
+            entry.average = duration;
+            entries.put(getKey(version, operation), entry);
+        }
+        else {
+            entry.average += (duration - entry.average) / 4;
+        }
+        entry.samples++;
+        modified = true;
+    }
+
+    public synchronized int getSamples(int version, int operation) {
+        Entry entry = entries.get(getKey(version, operation));
+        return entry != null ? entry.samples : 0;
+    }
+
+    /**
+     * Saves the timings, if they changed since loaded or last saved.
+     */
+    public synchronized void save() throws IOException {
+        if (file == null || !modified) {
+            return;
+        }
+
+        Data data = new Data();
+        data.entries.addAll(entries.values());
+
+        Path path = file.toPath();
+        Files.createDirectories(path.getParent());
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        new ObjectMapper().writeValue(temp.toFile(), data);
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        modified = false;
+    }
+
+    static String getKey(int version, int operation) {
+        return version + ":" + operation;
+    }
+
+}
@@ -23,7 +23,6 @@ import java.time.Duration;
 import com.maccasoft.propeller.port.ComPort;
 import com.maccasoft.propeller.port.ComPortException;
 import com.maccasoft.propeller.port.NetworkComPort;
-import com.maccasoft.propeller.port.SerialComPort;
 
 import jssc.SerialPort;
 
@@ -47,6 +46,31 @@ public class Propeller1Loader extends PropellerLoader {
     static final int DEF_LOADER_BAUDRATE = 115200;
     static final int DEF_FAST_LOADER_BAUDRATE = 921600;
 
+    static final int RAM_SIZE = 32768;
+    static final int EEPROM_TIMEOUT = 10_000;
+    static final int VERIFY_RAM_TIMEOUT = 10_000;
+
+    static final int ROM_CLOCK_SPEED = 12_000_000;
+    static final int ROM_CHECKSUM_CYCLES = 12;
+    static final int ROM_I2C_RATE = 400_000;
+    static final int EEPROM_SIZE = 32768;
+    static final int EEPROM_PAGE_SIZE = 64;
+    static final double EEPROM_PAGE_WRITE_TIME = 0.0025;
+
+    /** Expected duration of the boot ROM operations, before any calibration, in milliseconds */
+    static final int VERIFY_RAM_ESTIMATE = (int) ((long) RAM_SIZE * ROM_CHECKSUM_CYCLES * 1000L / ROM_CLOCK_SPEED);
+    // the boot ROM always programs the full EEPROM, one page at time
+    static final int EEPROM_WRITE_ESTIMATE = (int) ((EEPROM_SIZE * 9.0 / ROM_I2C_RATE + EEPROM_SIZE / EEPROM_PAGE_SIZE * EEPROM_PAGE_WRITE_TIME) * 1000.0);
+    static final int EEPROM_VERIFY_ESTIMATE = (int) (EEPROM_SIZE * 9.0 / ROM_I2C_RATE * 1000.0);
+
+    static final int POLL_INTERVAL = 20;
+    static final int MAX_POLL_INTERVAL = 100;
+
+    static final int PACKET_TIMEOUT = 500;
+    static final int ACK_TIMEOUT = 2000;
+    static final int EEPROM_ACK_TIMEOUT = 8000;
+    static final int PACKET_RETRIES = 5;
+
     static final double SSSHTime = 0.0000006;
     static final double SCLHighTime = 0.0000006;
     static final double SCLLowTime = 0.0000013;
@@ -56,12 +80,14 @@ public class Propeller1Loader extends PropellerLoader {
     };
 
     ComPort comPort;
-    byte LFSR;
 
     int loaderBaudRate = DEF_LOADER_BAUDRATE;
     int fastLoaderBaudRate = DEF_LOADER_BAUDRATE;
     double floatClockSpeed = 80000000.0;
 
+    OperationTimings timings = OperationTimings.getDefault();
+    long transmitEndTime;
+
     public Propeller1Loader(ComPort serialPort) {
         this.comPort = serialPort;
     }
@@ -76,106 +102,64 @@ public class Propeller1Loader extends PropellerLoader {
     }
 
     @Override
-    public void upload(byte[] binaryImage, boolean writeEeprom) throws ComPortException {
+    public void upload(byte[] binaryImage, ImageChecksums checksums, boolean writeEeprom) throws ComPortException {
+        int type = writeEeprom ? DOWNLOAD_RUN_EEPROM : DOWNLOAD_RUN_BINARY;
 
+        result = new UploadResult();
+        long start = System.nanoTime();
+        ComPortException error = null;
+        startDeadline(comPort);
         try {
             comPort.openPort();
             comPort.setParams(115200, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
 
-            if (comPort instanceof NetworkComPort) {
-                bufferUpload((NetworkComPort) comPort, writeEeprom ? DOWNLOAD_RUN_EEPROM : DOWNLOAD_RUN_BINARY, binaryImage, "binary image");
-            }
-            else {
-                int rc = hwfind();
-                if (rc == 0) {
-                    rc = hwfind();
-                }
-                if (rc == 0) {
-                    rc = hwfind();
-                }
-                if (rc == 0) {
-                    throw new ComPortException("No propeller chip on port " + comPort.getPortName());
+            runAttempts(() -> {
+                if (comPort instanceof NetworkComPort) {
+                    bufferUpload((NetworkComPort) comPort, type, binaryImage, checksums, "binary image");
+                    return;
                 }
-                serialBufferUpload(writeEeprom ? DOWNLOAD_RUN_EEPROM : DOWNLOAD_RUN_BINARY, binaryImage, "binary image");
-            }
-
+                find();
+                serialBufferUpload(type, binaryImage, "binary image");
+            });
+
+        } catch (ComPortException e) {
+            error = e;
+            throw e;
+        } catch (RuntimeException e) {
+            error = new ComPortException(e.toString(), e);
+            throw e;
         } finally {
-            comPort.closePort();
+            result.elapsed = (System.nanoTime() - start) / 1_000_000L;
+            endDeadline(comPort);
+            try {
+                comPort.closePort();
+            } finally {
+                notifyDone(error);
+            }
         }
     }
 
-    protected int hwfind() throws ComPortException {
-        int n, ii, jj;
-        byte[] buffer;
-
-        comPort.hwreset(90);
-
-        // send the calibration pulse
-        comPort.writeInt(0xF9);
-
-        // send the magic propeller LFSR byte stream.
-        LFSR = 'P';
-        buffer = new byte[250];
-        for (n = 0; n < 250; n++) {
-            buffer[n] = (byte) (iterate() | 0xFE);
-        }
-        comPort.writeBytes(buffer);
-
-        // Send 258 0xF9 for LFSR and Version ID
-        // These bytes clock the LSFR bits and ID from propeller back to us.
-        buffer = new byte[258];
-        for (n = 0; n < 258; n++) {
-            buffer[n] = (byte) (0xF9);
-        }
-        comPort.writeBytes(buffer);
-
-        // Wait at least 100ms for the first response. Allow some margin.
-        // Some chips may respond < 50ms, but there's no guarantee all will.
-        // If we don't get it, we can assume the propeller is not there.
-        if ((ii = getBit(110)) == -1) {
-            return 0;
+    @Override
+    protected UploadTask createTask(byte[] binaryImage, ImageChecksums checksums, boolean writeEeprom) {
+        if (comPort instanceof NetworkComPort) {
+            return null;
         }
+        return new Propeller1UploadTask(this, binaryImage, writeEeprom);
+    }
 
-        // wait for response so we know we have a Propeller
-        for (n = 1; n < 250; n++) {
-            jj = iterate();
-
-            if (ii != jj) {
-                for (n = 0; n < 300; n++) {
-                    if (comPort.readByteWithTimeout(50) == -1) {
-                        break;
-                    }
-                }
-                return 0;
-            }
-
-            int to = 0;
-            do {
-                if ((ii = getBit(110)) != -1) {
-                    break;
-                }
-            } while (to++ < 100);
-
-            if (to > 100) {
-                return 0;
-            }
-        }
+    protected int find() throws ComPortException {
+        setPhase(RetryPolicy.PHASE_HANDSHAKE);
 
-        int rc = 0;
-        for (n = 0; n < 8; n++) {
-            rc >>= 1;
-            if ((ii = getBit(110)) != -1) {
-                rc += (ii != 0) ? 0x80 : 0;
-            }
+        int rc = hwfind();
+        if (rc == 0) {
+            throw new ComPortException("No propeller chip on port " + comPort.getPortName());
         }
-
         return rc;
     }
 
-    int iterate() {
-        int bit = LFSR & 1;
-        LFSR = (byte) ((LFSR << 1) | (((LFSR >> 7) ^ (LFSR >> 5) ^ (LFSR >> 4) ^ (LFSR >> 1)) & 1));
-        return bit;
+    protected int hwfind() throws ComPortException {
+        comPort.hwreset(ResetTimings.getDefault().getResetDelay(comPort.getPortName(), 1));
+        return Handshake.p1(comPort);
     }
 
     private int getBit(int timeout) throws ComPortException {
@@ -190,46 +174,51 @@ public class Propeller1Loader extends PropellerLoader {
         int n;
         int longcount = binaryImage.length / 4;
 
+        setPhase(RetryPolicy.PHASE_TRANSFER);
         if (listener != null) {
             listener.bufferUpload(type, binaryImage, text);
         }
 
-        if (comPort instanceof SerialComPort) {
-            // send type
-            comPort.writeBytes(makelong(type));
-            // send count
-            comPort.writeBytes(makelong(longcount));
+        // estimated time at which the last byte is on the wire, the port may buffer the data
+        transmitEndTime = System.nanoTime() + (binaryImage.length / 4 + 2) * 11 * 10 * 1_000_000_000L / loaderBaudRate;
 
-            for (n = 0; n < binaryImage.length; n += 4) {
-                if ((n % 1024) == 0) {
-                    notifyProgress(n, binaryImage.length);
-                }
-                int data = (binaryImage[n] & 0xFF) |
-                    ((binaryImage[n + 1] << 8) & 0xFF00) |
-                    ((binaryImage[n + 2] << 16) & 0xFF0000) |
-                    ((binaryImage[n + 3] << 24) & 0xFF000000);
-                comPort.writeBytes(makelong(data));
-            }
-            notifyProgress(n, binaryImage.length);
-
-            // give propeller time to calculate checksum match 32K/12M sec = 32ms
-            msleep(100);
+        byte[] buff = new byte[11];
 
-            verifyRam();
+        // send type
+        comPort.writeBytes(makelong(type, buff));
+        // send count
+        comPort.writeBytes(makelong(longcount, buff));
 
-            if ((type & DOWNLOAD_EEPROM) != 0) {
-                eepromWrite();
-                eepromVerify();
+        for (n = 0; n < binaryImage.length; n += 4) {
+            if ((n % 1024) == 0) {
+                notifyProgress(n, binaryImage.length);
             }
+            int data = (binaryImage[n] & 0xFF) |
+                ((binaryImage[n + 1] << 8) & 0xFF00) |
+                ((binaryImage[n + 2] << 16) & 0xFF0000) |
+                ((binaryImage[n + 3] << 24) & 0xFF000000);
+            comPort.writeBytes(makelong(data, buff));
         }
-        else {
+        comPort.flush();
+        notifyProgress(n, binaryImage.length);
+
+        verifyRam();
 
+        if ((type & DOWNLOAD_EEPROM) != 0) {
+            eepromWrite();
+            eepromVerify();
         }
     }
 
     static byte[] makelong(int data) {
+        return makelong(data, new byte[11]);
+    }
+
+    /**
+     * Encodes a long in the given 11 bytes buffer.
+     */
+    static byte[] makelong(int data, byte[] buff) {
         int n = 0;
-        byte[] buff = new byte[11];
 
         for (; n < 10; n++) {
             buff[n] = (byte) (0x92 | (data & 1) | ((data & 2) << 2) | ((data & 4) << 4));
@@ -240,26 +229,21 @@ public class Propeller1Loader extends PropellerLoader {
         return buff;
     }
 
-    protected void notifyProgress(int sent, int total) {
-        // Do nothing
-    }
-
     protected void verifyRam() throws ComPortException {
-        int n, rc = 0;
+        int rc;
 
+        setPhase(RetryPolicy.PHASE_VERIFY);
         if (listener != null) {
             listener.verifyRam();
         }
 
-        for (n = 0; n < 100; n++) {
-            comPort.writeInt(0xF9);
-            if ((rc = getBit(110)) != -1) {
-                break;
-            }
-        }
+        // the chip computes the checksum of the whole RAM after the last long is received
+        int transmitTime = (int) (Math.max(transmitEndTime - System.nanoTime(), 0) / 1_000_000L);
+
+        rc = waitAcknowledge(OperationTimings.VERIFY_RAM, transmitTime, VERIFY_RAM_ESTIMATE, VERIFY_RAM_TIMEOUT);
 
         // Check for a Timeout or Checksum Error
-        if (n >= 100) {
+        if (rc == -1) {
             throw new ComPortException("Timeout");
         }
 
@@ -269,52 +253,92 @@ public class Propeller1Loader extends PropellerLoader {
     }
 
     protected void eepromWrite() throws ComPortException {
-        int n, rc;
+        int rc;
 
+        setPhase(RetryPolicy.PHASE_PROGRAM);
         if (listener != null) {
             listener.eepromWrite();
         }
 
         // Check for EEPROM program finished
-        for (n = 0; n < 500; n++) {
-            msleep(20);
-            comPort.writeInt(0xF9);
-            if ((rc = getBit(110)) != -1) {
-                if (rc != 0) {
-                    throw new ComPortException("EEPROM programming failed");
-                }
-                break;
-            }
-        }
-        if (n >= 500) {
+        rc = waitAcknowledge(OperationTimings.EEPROM_WRITE, 0, EEPROM_WRITE_ESTIMATE, EEPROM_TIMEOUT);
+        if (rc == -1) {
             throw new ComPortException("EEPROM programming timeout");
         }
+        if (rc != 0) {
+            throw new ComPortException("EEPROM programming failed");
+        }
     }
 
     protected void eepromVerify() throws ComPortException {
-        int n, rc;
+        int rc;
 
         if (listener != null) {
             listener.eepromVerify();
         }
 
         // Check for EEPROM program verify
-        for (n = 0; n < 500; n++) {
-            msleep(20);
+        rc = waitAcknowledge(OperationTimings.EEPROM_VERIFY, 0, EEPROM_VERIFY_ESTIMATE, EEPROM_TIMEOUT);
+        if (rc == -1) {
+            throw new ComPortException("EEPROM verify timeout");
+        }
+        if (rc != 0) {
+            throw new ComPortException("EEPROM verify failed");
+        }
+    }
+
+    /**
+     * Waits for the chip to acknowledge the completion of an operation.
+     *
+     * The chip replies to the 0xF9 byte only when the operation is completed. The byte is sent at
+     * coarse intervals until the expected completion time is near, then every POLL_INTERVAL
+     * milliseconds. The observed duration, less the delay, is recorded to calibrate the next waits.
+     *
+     * @param operation the operation, one of the OperationTimings constants
+     * @param delay the time before the operation starts, in milliseconds
+     * @param estimate the calculated duration, in milliseconds
+     * @param timeout the timeout, in milliseconds
+     * @return the acknowledge bit, or -1 if timed out
+     * @throws ComPortException
+     */
+    protected int waitAcknowledge(int operation, int delay, int estimate, int timeout) throws ComPortException {
+        int expected = delay + timings.getExpected(1, operation, estimate);
+
+        long start = System.nanoTime();
+        long fineStart = start + (expected - expected / 4) * 1_000_000L;
+        long deadline = start + (delay + timeout) * 1_000_000L;
+        int coarseInterval = Math.min(Math.max(expected / 8, POLL_INTERVAL), MAX_POLL_INTERVAL);
+
+        for (;;) {
             comPort.writeInt(0xF9);
-            if ((rc = getBit(110)) != -1) {
-                if (rc != 0) {
-                    throw new ComPortException("EEPROM verify failed");
-                }
-                break;
+            int rc = getBit(POLL_INTERVAL);
+
+            long now = System.nanoTime();
+            if (rc != -1) {
+                timings.record(1, operation, Math.max((int) ((now - start) / 1_000_000L) - delay, 0));
+                return rc;
+            }
+            if (now >= deadline) {
+                return -1;
+            }
+            if (now < fineStart) {
+                msleep((int) Math.min(coarseInterval - POLL_INTERVAL, (fineStart - now) / 1_000_000L));
             }
         }
-        if (n >= 500) {
-            throw new ComPortException("EEPROM verify timeout");
-        }
+    }
+
+    public OperationTimings getTimings() {
+        return timings;
+    }
+
+    public void setTimings(OperationTimings timings) {
+        this.timings = timings;
     }
 
     private void msleep(int msec) {
+        if (msec <= 0) {
+            return;
+        }
         try {
             Thread.sleep(msec);
         } catch (Exception e) {
@@ -323,9 +347,15 @@ public class Propeller1Loader extends PropellerLoader {
     }
 
     protected void bufferUpload(NetworkComPort comPort, int type, byte[] binaryImage, String text) throws ComPortException {
+        bufferUpload(comPort, type, binaryImage, ImageChecksums.compute(binaryImage), text);
+    }
+
+    protected void bufferUpload(NetworkComPort comPort, int type, byte[] binaryImage, ImageChecksums checksums, String text) throws ComPortException {
         int rId;
         String body;
 
+        setPhase(RetryPolicy.PHASE_TRANSFER);
+
         byte[] loaderImage = new byte[LoaderImage.rawLoaderImage.length];
         System.arraycopy(LoaderImage.rawLoaderImage, 0, loaderImage, 0, loaderImage.length);
 
@@ -347,10 +377,7 @@ public class Propeller1Loader extends PropellerLoader {
         }
         loaderImage[5] = (byte) (0x14 - sum);
 
-        int checksum = 0;
-        for (int i = 0; i < binaryImage.length; i++) {
-            checksum += binaryImage[i] & 0xFF;
-        }
+        int checksum = checksums.getByteSum();
         for (int i = 0; i < initCallFrame.length; i++) {
             checksum += initCallFrame[i];
         }
@@ -361,15 +388,14 @@ public class Propeller1Loader extends PropellerLoader {
 
         try {
             StringBuilder sb = new StringBuilder(128);
-            sb.append("http://");
-            sb.append(comPort.getInetAddr().getHostAddress());
+            sb.append(comPort.getHttpAddress());
             sb.append("/propeller/load?baud-rate=115200");
             if (comPort.getResetPin() != null && !comPort.getResetPin().isBlank()) {
                 sb.append("&reset-pin=" + comPort.getResetPin());
             }
             HttpRequest httpRequest = HttpRequest.newBuilder(new URI(sb.toString())) //
                 .POST(BodyPublishers.ofByteArray(loaderImage)) //
-                .timeout(Duration.ofMillis(NetworkComPort.RESPONSE_TIMEOUT)) //
+                .timeout(Duration.ofMillis(Math.max(comPort.limitTimeout(NetworkComPort.RESPONSE_TIMEOUT), 1))) //
                 .build();
 
             HttpResponse<String> httpResponse = comPort.getHttpClient().send(httpRequest, BodyHandlers.ofString());
@@ -383,8 +409,8 @@ public class Propeller1Loader extends PropellerLoader {
             int remaining = binaryImage.length;
 
             try {
-                rId = comPort.readLong(2000);
-                comPort.readLong(2000); // tag
+                rId = comPort.readLong(ACK_TIMEOUT);
+                comPort.readLong(ACK_TIMEOUT); // tag
             } catch (InterruptedException e) {
                 throw new ComPortException("Second-stage loader start failed (timeout)");
             }
@@ -399,12 +425,9 @@ public class Propeller1Loader extends PropellerLoader {
                 }
                 byte[] buffer = new byte[8 + len];
                 System.arraycopy(binaryImage, ofs, buffer, 8, len);
-                setLong(buffer, 0, packetId);
 
                 try {
-                    comPort.writeBytes(buffer);
-                    rId = comPort.readLong(2000);
-                    comPort.readLong(2000); // tag
+                    rId = transmitPacket(comPort, packetId, buffer, PACKET_TIMEOUT);
                 } catch (InterruptedException e) {
                     throw new ComPortException("Timeout waiting packet response");
                 }
@@ -420,17 +443,15 @@ public class Propeller1Loader extends PropellerLoader {
             }
 
             if (remaining == 0) {
+                setPhase(RetryPolicy.PHASE_VERIFY);
                 if (listener != null) {
                     listener.verifyRam();
                 }
                 byte[] buffer = new byte[8 + LoaderImage.verifyRAM.length];
                 System.arraycopy(LoaderImage.verifyRAM, 0, buffer, 8, LoaderImage.verifyRAM.length);
-                setLong(buffer, 0, packetId);
-                comPort.writeBytes(buffer);
 
                 try {
-                    rId = comPort.readLong(2000);
-                    comPort.readLong(2000); // tag
+                    rId = transmitPacket(comPort, packetId, buffer, ACK_TIMEOUT);
                 } catch (InterruptedException e) {
                     throw new ComPortException("Ram verify failed (timeout)");
                 }
@@ -440,17 +461,15 @@ public class Propeller1Loader extends PropellerLoader {
                 packetId = -checksum;
 
                 if ((type & Propeller1Loader.DOWNLOAD_EEPROM) != 0) {
+                    setPhase(RetryPolicy.PHASE_PROGRAM);
                     if (listener != null) {
                         listener.eepromWrite();
                     }
                     buffer = new byte[8 + LoaderImage.programVerifyEEPROM.length];
                     System.arraycopy(LoaderImage.programVerifyEEPROM, 0, buffer, 8, LoaderImage.programVerifyEEPROM.length);
-                    setLong(buffer, 0, packetId);
-                    comPort.writeBytes(buffer);
 
                     try {
-                        rId = comPort.readLong(8000);
-                        comPort.readLong(2000); // tag
+                        rId = transmitPacket(comPort, packetId, buffer, EEPROM_ACK_TIMEOUT);
                     } catch (InterruptedException e) {
                         throw new ComPortException("EEprom verify failed (timed)");
                     }
@@ -462,12 +481,9 @@ public class Propeller1Loader extends PropellerLoader {
 
                 buffer = new byte[8 + LoaderImage.readyToLaunch.length];
                 System.arraycopy(LoaderImage.readyToLaunch, 0, buffer, 8, LoaderImage.readyToLaunch.length);
-                setLong(buffer, 0, packetId);
-                comPort.writeBytes(buffer);
 
                 try {
-                    rId = comPort.readLong(2000);
-                    comPort.readLong(2000); // tag
+                    rId = transmitPacket(comPort, packetId, buffer, ACK_TIMEOUT);
                 } catch (InterruptedException e) {
                     throw new ComPortException("Ready to launch failed (timeout)");
                 }
@@ -484,6 +500,47 @@ public class Propeller1Loader extends PropellerLoader {
         }
     }
 
+    /**
+     * Sends a packet to the second-stage loader and waits for its acknowledge.
+     *
+     * The packet is sent again if the acknowledge doesn't arrive within the timeout, the loader
+     * stores a packet only once and acknowledges the duplicates again. Acknowledges carrying the
+     * packet id are repeats of the previous packet acknowledge, delayed or caused by a retransmission,
+     * and are discarded.
+     *
+     * @param comPort the port
+     * @param packetId the packet id
+     * @param buffer the packet, the data starts at offset 8
+     * @param timeout the acknowledge timeout of each transmission, in milliseconds
+     * @return the acknowledged id
+     * @throws InterruptedException if no acknowledge was received after all the transmissions
+     */
+    int transmitPacket(NetworkComPort comPort, int packetId, byte[] buffer, int timeout) throws ComPortException, InterruptedException {
+        setLong(buffer, 0, packetId);
+
+        for (int retry = 0; retry <= PACKET_RETRIES; retry++) {
+            if (retry != 0) {
+                result.retransmissions++;
+            }
+            comPort.writeBytes(buffer);
+
+            long deadline = System.currentTimeMillis() + timeout;
+            try {
+                while (true) {
+                    int rId = comPort.readLong((int) Math.max(deadline - System.currentTimeMillis(), 0));
+                    comPort.readLong(timeout); // tag
+                    if (rId != packetId) {
+                        return rId;
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Send again
+            }
+        }
+
+        throw new InterruptedException();
+    }
+
     void setLong(byte[] data, int offset, int value) {
         data[offset + 0] = (byte) value;
         data[offset + 1] = (byte) (value >> 8);
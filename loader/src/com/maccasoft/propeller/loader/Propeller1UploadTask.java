@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller.loader;
+
+import com.maccasoft.propeller.port.ComPortException;
+
+import jssc.SerialPort;
+
+/**
+ * Serial upload to a P1 boot ROM as a state machine.
+ *
+ * The states follow the blocking upload: reset, handshake, transfer of the encoded longs and the
+ * acknowledge polls of the RAM checksum and, if requested, of the EEPROM programming and verify.
+ */
+class Propeller1UploadTask extends UploadTask {
+
+    static final int RESET = 0;
+    static final int HANDSHAKE = 1;
+    static final int HANDSHAKE_RESPONSE = 2;
+    static final int TRANSFER = 3;
+    static final int ACKNOWLEDGE = 4;
+    static final int ACKNOWLEDGE_RESPONSE = 5;
+
+    final Propeller1Loader loader;
+    final int type;
+    final byte[] binaryImage;
+
+    final byte[] response = new byte[Handshake.P1_RESPONSE_LENGTH];
+    byte[] stream;
+
+    int state;
+    int count;
+    long timeout;
+    long transmitEndTime;
+
+    int operation;
+    int delay;
+    long start;
+    long fineStart;
+    long deadline;
+    int coarseInterval;
+
+    Propeller1UploadTask(Propeller1Loader loader, byte[] binaryImage, boolean writeEeprom) {
+        super(loader, loader.comPort);
+        this.loader = loader;
+        this.type = writeEeprom ? Propeller1Loader.DOWNLOAD_RUN_EEPROM : Propeller1Loader.DOWNLOAD_RUN_BINARY;
+        this.binaryImage = binaryImage;
+    }
+
+    @Override
+    protected void open() throws ComPortException {
+        comPort.setParams(115200, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+    }
+
+    @Override
+    protected void restart() {
+        state = RESET;
+    }
+
+    @Override
+    protected long run(long now) throws ComPortException {
+        switch (state) {
+            case RESET:
+                return reset(now);
+            case HANDSHAKE:
+                return handshake(now);
+            case HANDSHAKE_RESPONSE:
+                return handshakeResponse(now);
+            case TRANSFER:
+                return transfer(now);
+            case ACKNOWLEDGE:
+                return acknowledge(now);
+            case ACKNOWLEDGE_RESPONSE:
+                return acknowledgeResponse(now);
+        }
+        throw new IllegalStateException();
+    }
+
+    long reset(long now) throws ComPortException {
+        // The reset delay is a timer, the loop serves the other uploads meanwhile
+        comPort.hwreset(0);
+        state = HANDSHAKE;
+        return now + ResetTimings.getDefault().getResetDelay(comPort.getPortName(), 1) * 1_000_000L;
+    }
+
+    long handshake(long now) throws ComPortException {
+        discardReceived();
+        comPort.writeBytes(Handshake.P1_REQUEST);
+        comPort.flush();
+
+        count = 0;
+        timeout = now + Handshake.P1_TIMEOUT * 1_000_000L;
+        state = HANDSHAKE_RESPONSE;
+        return awaitReceive(now, timeout);
+    }
+
+    long handshakeResponse(long now) throws ComPortException {
+        count += comPort.readBytes(response, count, response.length - count, 0);
+        if (count < response.length && now - timeout < 0) {
+            return awaitReceive(now, timeout);
+        }
+
+        if (Handshake.checkP1Response(response, count) == 0) {
+            throw new ComPortException("No propeller chip on port " + comPort.getPortName());
+        }
+
+        return startTransfer(now);
+    }
+
+    long startTransfer(long now) {
+        loader.setPhase(RetryPolicy.PHASE_TRANSFER);
+        if (loader.listener != null) {
+            loader.listener.bufferUpload(type, binaryImage, "binary image");
+        }
+
+        if (stream == null) {
+            stream = encode();
+        }
+
+        count = 0;
+        transmitEndTime = now;
+        state = TRANSFER;
+        return now;
+    }
+
+    byte[] encode() {
+        byte[] buff = new byte[11];
+        byte[] data = new byte[(binaryImage.length / 4 + 2) * buff.length];
+
+        int n = 0;
+        System.arraycopy(Propeller1Loader.makelong(type, buff), 0, data, n, buff.length);
+        n += buff.length;
+        System.arraycopy(Propeller1Loader.makelong(binaryImage.length / 4, buff), 0, data, n, buff.length);
+        n += buff.length;
+
+        for (int i = 0; i + 3 < binaryImage.length; i += 4) {
+            int value = (binaryImage[i] & 0xFF) |
+                ((binaryImage[i + 1] << 8) & 0xFF00) |
+                ((binaryImage[i + 2] << 16) & 0xFF0000) |
+                ((binaryImage[i + 3] << 24) & 0xFF000000);
+            System.arraycopy(Propeller1Loader.makelong(value, buff), 0, data, n, buff.length);
+            n += buff.length;
+        }
+
+        return data;
+    }
+
+    long transfer(long now) throws ComPortException {
+        int length = Math.min(TRANSFER_BLOCK_SIZE, stream.length - count);
+        comPort.writeBytes(stream, count, length);
+        comPort.flush();
+        count += length;
+
+        loader.notifyProgress(Math.max(count / 11 - 2, 0) * 4, binaryImage.length);
+
+        // estimated time at which the last byte is on the wire, the port buffers the data
+        long transmitTime = getTransmitTime(length, loader.loaderBaudRate);
+        transmitEndTime = Math.max(transmitEndTime, now) + transmitTime;
+        if (count < stream.length) {
+            return transmitEndTime - transmitTime / 4;
+        }
+
+        loader.setPhase(RetryPolicy.PHASE_VERIFY);
+        if (loader.listener != null) {
+            loader.listener.verifyRam();
+        }
+
+        // the chip computes the checksum of the whole RAM after the last long is received
+        int delay = (int) ((transmitEndTime - now) / 1_000_000L);
+        return startAcknowledge(now, OperationTimings.VERIFY_RAM, delay, Propeller1Loader.VERIFY_RAM_ESTIMATE, Propeller1Loader.VERIFY_RAM_TIMEOUT);
+    }
+
+    /**
+     * Starts the acknowledge polls, with the same schedule of Propeller1Loader.waitAcknowledge.
+     */
+    long startAcknowledge(long now, int operation, int delay, int estimate, int timeout) {
+        int expected = delay + loader.timings.getExpected(1, operation, estimate);
+
+        this.operation = operation;
+        this.delay = delay;
+        this.start = now;
+        this.fineStart = now + (expected - expected / 4) * 1_000_000L;
+        this.deadline = now + (delay + timeout) * 1_000_000L;
+        this.coarseInterval = Math.min(Math.max(expected / 8, Propeller1Loader.POLL_INTERVAL), Propeller1Loader.MAX_POLL_INTERVAL);
+
+        state = ACKNOWLEDGE;
+        return now;
+    }
+
+    long acknowledge(long now) throws ComPortException {
+        comPort.writeInt(0xF9);
+        comPort.flush();
+
+        timeout = now + Propeller1Loader.POLL_INTERVAL * 1_000_000L;
+        state = ACKNOWLEDGE_RESPONSE;
+        return awaitReceive(now, timeout);
+    }
+
+    long acknowledgeResponse(long now) throws ComPortException {
+        int rx = comPort.readByteWithTimeout(0);
+        if (rx != -1) {
+            loader.timings.record(1, operation, Math.max((int) ((now - start) / 1_000_000L) - delay, 0));
+            return acknowledged(now, rx & 1);
+        }
+        if (now - timeout < 0) {
+            return awaitReceive(now, timeout);
+        }
+        if (now - deadline >= 0) {
+            return acknowledged(now, -1);
+        }
+
+        state = ACKNOWLEDGE;
+        if (now - fineStart < 0) {
+            return now + Math.min((coarseInterval - Propeller1Loader.POLL_INTERVAL) * 1_000_000L, fineStart - now);
+        }
+        return now;
+    }
+
+    long acknowledged(long now, int rc) throws ComPortException {
+        switch (operation) {
+            case OperationTimings.VERIFY_RAM:
+                // Check for a Timeout or Checksum Error
+                if (rc == -1) {
+                    throw new ComPortException("Timeout");
+                }
+                if (rc != 0) {
+                    throw new ComPortException("Checksum error");
+                }
+                if ((type & Propeller1Loader.DOWNLOAD_EEPROM) == 0) {
+                    return COMPLETE;
+                }
+
+                loader.setPhase(RetryPolicy.PHASE_PROGRAM);
+                if (loader.listener != null) {
+                    loader.listener.eepromWrite();
+                }
+                return startAcknowledge(now, OperationTimings.EEPROM_WRITE, 0, Propeller1Loader.EEPROM_WRITE_ESTIMATE, Propeller1Loader.EEPROM_TIMEOUT);
+
+            case OperationTimings.EEPROM_WRITE:
+                if (rc == -1) {
+                    throw new ComPortException("EEPROM programming timeout");
+                }
+                if (rc != 0) {
+                    throw new ComPortException("EEPROM programming failed");
+                }
+
+                if (loader.listener != null) {
+                    loader.listener.eepromVerify();
+                }
+                return startAcknowledge(now, OperationTimings.EEPROM_VERIFY, 0, Propeller1Loader.EEPROM_VERIFY_ESTIMATE, Propeller1Loader.EEPROM_TIMEOUT);
+
+            default:
+                if (rc == -1) {
+                    throw new ComPortException("EEPROM verify timeout");
+                }
+                if (rc != 0) {
+                    throw new ComPortException("EEPROM verify failed");
+                }
+                return COMPLETE;
+        }
+    }
+
+}
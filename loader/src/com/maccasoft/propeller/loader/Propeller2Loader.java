@@ -25,6 +25,13 @@ public class Propeller2Loader extends PropellerLoader {
     public static final int DOWNLOAD_RUN_RAM = 0;
     public static final int DOWNLOAD_RUN_FLASH = 1;
 
+    static final int LOADER_BAUDRATE = 2000000;
+
+    static final int VERIFY_RAM_TIMEOUT = 10_000;
+
+    static byte[] flashLoader;
+    static ImageChecksums flashLoaderChecksums;
+
     ComPort comPort;
 
     public Propeller2Loader(ComPort serialPort) {
@@ -41,119 +48,139 @@ public class Propeller2Loader extends PropellerLoader {
     }
 
     @Override
-    public void upload(byte[] binaryImage, boolean writeFlash) throws ComPortException {
+    public void upload(byte[] binaryImage, ImageChecksums checksums, boolean writeFlash) throws ComPortException {
 
+        result = new UploadResult();
+        long start = System.nanoTime();
+        ComPortException error = null;
+        startDeadline(comPort);
         try {
             comPort.openPort();
-            comPort.setParams(2000000, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
-
-            int rc = hwfind();
-            if (rc == 0) {
-                throw new ComPortException("No propeller chip on port " + comPort.getPortName());
-            }
-
-            bufferUpload(writeFlash ? DOWNLOAD_RUN_FLASH : DOWNLOAD_RUN_RAM, binaryImage, "binary image");
-
+            comPort.setParams(LOADER_BAUDRATE, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+
+            runAttempts(() -> {
+                find();
+                bufferUpload(writeFlash ? DOWNLOAD_RUN_FLASH : DOWNLOAD_RUN_RAM, binaryImage, checksums, "binary image");
+            });
+
+        } catch (ComPortException e) {
+            error = e;
+            throw e;
+        } catch (RuntimeException e) {
+            error = new ComPortException(e.toString(), e);
+            throw e;
         } finally {
-            comPort.closePort();
+            result.elapsed = (System.nanoTime() - start) / 1_000_000L;
+            endDeadline(comPort);
+            try {
+                comPort.closePort();
+            } finally {
+                notifyDone(error);
+            }
         }
     }
 
-    protected int hwfind() throws ComPortException {
-
-        comPort.hwreset(15);
-        comPort.writeString("> \r> Prop_Chk 0 0 0 0\r");
+    @Override
+    protected UploadTask createTask(byte[] binaryImage, ImageChecksums checksums, boolean writeFlash) {
+        return new Propeller2UploadTask(this, binaryImage, checksums, writeFlash);
+    }
 
-        readStringWithTimeout(comPort, 50);
+    protected int find() throws ComPortException {
+        setPhase(RetryPolicy.PHASE_HANDSHAKE);
 
-        String result = readStringWithTimeout(comPort, 50);
-        if (result.startsWith("Prop_Ver ")) {
-            return 2;
+        int rc = hwfind();
+        if (rc == 0) {
+            throw new ComPortException("No propeller chip on port " + comPort.getPortName());
         }
-
-        return 0;
+        return rc;
     }
 
-    private String readStringWithTimeout(ComPort comPort, int timeout) throws ComPortException {
-        int b;
-        StringBuilder sb = new StringBuilder();
-
-        do {
-            b = comPort.readByteWithTimeout(timeout);
-            if (b != -1) {
-                if (b == '\r') {
-                    b = comPort.readByteWithTimeout(timeout);
-                    break;
-                }
-                sb.append((char) b);
-            }
-        } while (b != -1);
-
-        return sb.toString();
+    protected int hwfind() throws ComPortException {
+        comPort.hwreset(ResetTimings.getDefault().getResetDelay(comPort.getPortName(), 2));
+        return Handshake.p2(comPort) != 0 ? 2 : 0;
     }
 
     protected void bufferUpload(int type, byte[] binaryImage, String text) throws ComPortException {
-        int n;
+        bufferUpload(type, binaryImage, ImageChecksums.compute(binaryImage), text);
+    }
+
+    protected void bufferUpload(int type, byte[] binaryImage, ImageChecksums checksums, String text) throws ComPortException {
+        int longSum = checksums.getLongSum();
 
         if (listener != null) {
             listener.bufferUpload(type, binaryImage, text);
         }
 
         if (type == DOWNLOAD_RUN_FLASH) {
-            InputStream is = getClass().getResourceAsStream("flash_loader.binary");
-            try {
-                byte[] loader = new byte[is.available()];
-                is.read(loader);
-
-                byte[] loaderImage = new byte[loader.length + ((binaryImage.length + 3) & ~3)];
-                System.arraycopy(loader, 0, loaderImage, 0, loader.length);
-                System.arraycopy(binaryImage, 0, loaderImage, loader.length, binaryImage.length);
-                binaryImage = loaderImage;
-
-                binaryImage[8] = (byte) binaryImage.length;
-                binaryImage[9] = (byte) (binaryImage.length >> 8);
-                binaryImage[10] = (byte) (binaryImage.length >> 16);
-                binaryImage[11] = (byte) (binaryImage.length >> 24);
-
-                int sum = 0;
-                for (n = 0; n < binaryImage.length; n += 4) {
-                    int data = binaryImage[n] & 0xFF;
-                    if ((n + 1) < binaryImage.length) {
-                        data |= (binaryImage[n + 1] << 8) & 0xFF00;
-                        if ((n + 2) < binaryImage.length) {
-                            data |= (binaryImage[n + 2] << 16) & 0xFF0000;
-                            if ((n + 3) < binaryImage.length) {
-                                data |= (binaryImage[n + 3] << 24) & 0xFF000000;
-                            }
-                        }
-                    }
-                    sum -= data;
-                }
+            binaryImage = createFlashImage(binaryImage, longSum);
+            longSum = getFlashImageLongSum();
+        }
 
-                binaryImage[4] = (byte) sum;
-                binaryImage[5] = (byte) (sum >> 8);
-                binaryImage[6] = (byte) (sum >> 16);
-                binaryImage[7] = (byte) (sum >> 24);
+        base64Upload(binaryImage, longSum);
+        verifyRam();
 
+        if (type == DOWNLOAD_RUN_FLASH) {
+            flashWrite();
+        }
+    }
+
+    static long getEncodedLength(int length) {
+        long chars = (length + 2) / 3 * 4L;
+        return chars + (chars + 63) / 64 * 3;
+    }
+
+    /**
+     * Returns the flash loader followed by the image, with the loader length and checksum longs
+     * updated for the combined image.
+     *
+     * @param binaryImage the image to write to flash
+     * @param longSum the long sum of the image
+     * @return the combined image
+     */
+    static byte[] createFlashImage(byte[] binaryImage, int longSum) throws ComPortException {
+        byte[] loader = getFlashLoader();
+
+        byte[] loaderImage = new byte[loader.length + ((binaryImage.length + 3) & ~3)];
+        System.arraycopy(loader, 0, loaderImage, 0, loader.length);
+        System.arraycopy(binaryImage, 0, loaderImage, loader.length, binaryImage.length);
+
+        // The loader length is a multiple of 4, the image longs sum is reused as is
+        longSum += flashLoaderChecksums.getLongSum() - getLong(loader, 8) + loaderImage.length;
+        setLong(loaderImage, 8, loaderImage.length);
+        setLong(loaderImage, 4, -longSum);
+
+        return loaderImage;
+    }
+
+    /**
+     * Returns the long sum of the images returned by createFlashImage. The checksum long replaces
+     * the loader value with the negated sum of all longs, leaving the same total for any image.
+     */
+    static int getFlashImageLongSum() throws ComPortException {
+        return -getLong(getFlashLoader(), 4);
+    }
+
+    static synchronized byte[] getFlashLoader() throws ComPortException {
+        if (flashLoader == null) {
+            try (InputStream is = Propeller2Loader.class.getResourceAsStream("flash_loader.binary")) {
+                flashLoader = is.readAllBytes();
+                flashLoaderChecksums = ImageChecksums.compute(flashLoader);
             } catch (Exception e) {
                 throw new ComPortException("Missing flash loader binary");
-            } finally {
-                try {
-                    if (is != null) {
-                        is.close();
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
             }
         }
+        return flashLoader;
+    }
 
-        base64Upload(binaryImage);
-        verifyRam();
+    static int getLong(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8) | ((data[offset + 2] & 0xFF) << 16) | ((data[offset + 3] & 0xFF) << 24);
+    }
 
-        if (type == DOWNLOAD_RUN_FLASH) {
-            flashWrite();
-        }
+    static void setLong(byte[] data, int offset, int value) {
+        data[offset + 0] = (byte) value;
+        data[offset + 1] = (byte) (value >> 8);
+        data[offset + 2] = (byte) (value >> 16);
+        data[offset + 3] = (byte) (value >> 24);
     }
 
     void hexUpload(byte[] binaryImage) throws ComPortException {
@@ -184,55 +211,52 @@ public class Propeller2Loader extends PropellerLoader {
 
         sum = 0x706F7250 - sum;
         comPort.writeString(String.format(" %x %x %x %x ?", sum & 0xFF, (sum >> 8) & 0xFF, (sum >> 16) & 0xFF, (sum >> 24) & 0xFF));
+        comPort.flush();
     }
 
     void base64Upload(byte[] binaryImage) throws ComPortException {
+        base64Upload(binaryImage, ImageChecksums.compute(binaryImage).getLongSum());
+    }
+
+    void base64Upload(byte[] binaryImage, int longSum) throws ComPortException {
         int n, sent;
         Encoder encoder = Base64.getEncoder();
 
-        int sum = 0;
-        for (n = 0; n < binaryImage.length; n += 4) {
-            int data = binaryImage[n] & 0xFF;
-            if ((n + 1) < binaryImage.length) {
-                data |= (binaryImage[n + 1] << 8) & 0xFF00;
-                if ((n + 2) < binaryImage.length) {
-                    data |= (binaryImage[n + 2] << 16) & 0xFF0000;
-                    if ((n + 3) < binaryImage.length) {
-                        data |= (binaryImage[n + 3] << 24) & 0xFF000000;
-                    }
-                }
-            }
-            sum += data;
-        }
-        sum = 0x706F7250 - sum;
+        setPhase(RetryPolicy.PHASE_TRANSFER);
 
-        byte[] image = new byte[(binaryImage.length + 7) & ~3];
-        System.arraycopy(binaryImage, 0, image, 0, binaryImage.length);
-        image[image.length - 4] = (byte) sum;
-        image[image.length - 3] = (byte) (sum >> 8);
-        image[image.length - 2] = (byte) (sum >> 16);
-        image[image.length - 1] = (byte) (sum >> 24);
-        binaryImage = image;
+        binaryImage = appendChecksum(binaryImage, longSum);
 
         comPort.writeString("> Prop_Txt 0 0 0 0");
 
         String encodedImage = encoder.encodeToString(binaryImage);
         for (n = 0, sent = 0; n < encodedImage.length(); n += 64, sent += 48) {
             comPort.writeString("\r> ");
-            comPort.writeString(encodedImage.substring(n, n + Math.min(64, encodedImage.length() - n)));
+            comPort.writeString(encodedImage, n, Math.min(64, encodedImage.length() - n));
             notifyProgress(sent, binaryImage.length);
         }
         notifyProgress(sent, binaryImage.length);
 
         comPort.writeString(" ?");
+        comPort.flush();
     }
 
-    protected void notifyProgress(int sent, int total) {
-        // Do nothing
+    /**
+     * Returns the image padded to a long boundary and followed by the long that makes its sum equal
+     * to the boot ROM checksum.
+     */
+    static byte[] appendChecksum(byte[] binaryImage, int longSum) {
+        int sum = ImageChecksums.P2_CHECKSUM - longSum;
+
+        byte[] image = new byte[(binaryImage.length + 7) & ~3];
+        System.arraycopy(binaryImage, 0, image, 0, binaryImage.length);
+        setLong(image, image.length - 4, sum);
+
+        return image;
     }
 
     protected void flashWrite() throws ComPortException {
 
+        setPhase(RetryPolicy.PHASE_PROGRAM);
         if (listener != null) {
             listener.eepromWrite();
         }
@@ -241,11 +265,12 @@ public class Propeller2Loader extends PropellerLoader {
 
     protected void verifyRam() throws ComPortException {
 
+        setPhase(RetryPolicy.PHASE_VERIFY);
         if (listener != null) {
             listener.verifyRam();
         }
 
-        int rc = comPort.readByteWithTimeout(10_000);
+        int rc = comPort.readByteWithTimeout(VERIFY_RAM_TIMEOUT);
 
         if (rc == -1) {
             throw new ComPortException("Timeout");
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller.loader;
+
+import java.util.Base64;
+
+import com.maccasoft.propeller.port.ComPortException;
+
+import jssc.SerialPort;
+
+/**
+ * Serial upload to a P2 boot ROM as a state machine.
+ *
+ * The states follow the blocking upload: reset, handshake, transfer of the image as Prop_Txt base64
+ * text and the RAM checksum reply. Flash uploads send the flash loader followed by the image.
+ */
+class Propeller2UploadTask extends UploadTask {
+
+    static final int RESET = 0;
+    static final int HANDSHAKE = 1;
+    static final int HANDSHAKE_RESPONSE = 2;
+    static final int TRANSFER = 3;
+    static final int VERIFY = 4;
+
+    final Propeller2Loader loader;
+    final int type;
+    final byte[] binaryImage;
+    final ImageChecksums checksums;
+
+    final StringBuilder response = new StringBuilder();
+    final byte[] rx = new byte[64];
+    int imageLength;
+    String text;
+
+    int state;
+    int count;
+    long timeout;
+    long transmitEndTime;
+
+    Propeller2UploadTask(Propeller2Loader loader, byte[] binaryImage, ImageChecksums checksums, boolean writeFlash) {
+        super(loader, loader.comPort);
+        this.loader = loader;
+        this.type = writeFlash ? Propeller2Loader.DOWNLOAD_RUN_FLASH : Propeller2Loader.DOWNLOAD_RUN_RAM;
+        this.binaryImage = binaryImage;
+        this.checksums = checksums;
+    }
+
+    @Override
+    protected void open() throws ComPortException {
+        comPort.setParams(Propeller2Loader.LOADER_BAUDRATE, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+    }
+
+    @Override
+    protected void restart() {
+        state = RESET;
+    }
+
+    @Override
+    protected long run(long now) throws ComPortException {
+        switch (state) {
+            case RESET:
+                return reset(now);
+            case HANDSHAKE:
+                return handshake(now);
+            case HANDSHAKE_RESPONSE:
+                return handshakeResponse(now);
+            case TRANSFER:
+                return transfer(now);
+            case VERIFY:
+                return verify(now);
+        }
+        throw new IllegalStateException();
+    }
+
+    long reset(long now) throws ComPortException {
+        // The reset delay is a timer, the loop serves the other uploads meanwhile
+        comPort.hwreset(0);
+        state = HANDSHAKE;
+        return now + ResetTimings.getDefault().getResetDelay(comPort.getPortName(), 2) * 1_000_000L;
+    }
+
+    long handshake(long now) throws ComPortException {
+        discardReceived();
+        comPort.writeBytes(Handshake.P2_REQUEST);
+        comPort.flush();
+
+        response.setLength(0);
+        timeout = now + Handshake.P2_TIMEOUT * 1_000_000L;
+        state = HANDSHAKE_RESPONSE;
+        return awaitReceive(now, timeout);
+    }
+
+    long handshakeResponse(long now) throws ComPortException {
+        int length;
+        while ((length = comPort.readBytes(rx, 0, rx.length, 0)) != 0) {
+            for (int i = 0; i < length; i++) {
+                response.append((char) (rx[i] & 0xFF));
+            }
+        }
+
+        if (Handshake.parseP2Response(response) != 0) {
+            return startTransfer(now);
+        }
+        if (now - timeout < 0) {
+            return awaitReceive(now, timeout);
+        }
+
+        throw new ComPortException("No propeller chip on port " + comPort.getPortName());
+    }
+
+    long startTransfer(long now) throws ComPortException {
+        if (loader.listener != null) {
+            loader.listener.bufferUpload(type, binaryImage, "binary image");
+        }
+        loader.setPhase(RetryPolicy.PHASE_TRANSFER);
+
+        if (text == null) {
+            text = encode();
+        }
+
+        count = 0;
+        transmitEndTime = now;
+        state = TRANSFER;
+        return now;
+    }
+
+    String encode() throws ComPortException {
+        byte[] image = binaryImage;
+        int longSum = checksums.getLongSum();
+        if (type == Propeller2Loader.DOWNLOAD_RUN_FLASH) {
+            image = Propeller2Loader.createFlashImage(image, longSum);
+            longSum = Propeller2Loader.getFlashImageLongSum();
+        }
+        image = Propeller2Loader.appendChecksum(image, longSum);
+        imageLength = image.length;
+
+        String encodedImage = Base64.getEncoder().encodeToString(image);
+
+        StringBuilder sb = new StringBuilder((int) Propeller2Loader.getEncodedLength(image.length) + 32);
+        sb.append("> Prop_Txt 0 0 0 0");
+        for (int n = 0; n < encodedImage.length(); n += 64) {
+            sb.append("\r> ");
+            sb.append(encodedImage, n, Math.min(n + 64, encodedImage.length()));
+        }
+        sb.append(" ?");
+
+        return sb.toString();
+    }
+
+    long transfer(long now) throws ComPortException {
+        int length = Math.min(TRANSFER_BLOCK_SIZE, text.length() - count);
+        comPort.writeString(text, count, length);
+        comPort.flush();
+        count += length;
+
+        loader.notifyProgress((int) ((long) count * imageLength / text.length()), imageLength);
+
+        // estimated time at which the last byte is on the wire, the port buffers the data
+        long transmitTime = getTransmitTime(length, Propeller2Loader.LOADER_BAUDRATE);
+        transmitEndTime = Math.max(transmitEndTime, now) + transmitTime;
+        if (count < text.length()) {
+            return transmitEndTime - transmitTime / 4;
+        }
+
+        loader.setPhase(RetryPolicy.PHASE_VERIFY);
+        if (loader.listener != null) {
+            loader.listener.verifyRam();
+        }
+
+        timeout = now + Propeller2Loader.VERIFY_RAM_TIMEOUT * 1_000_000L;
+        state = VERIFY;
+        return awaitReceive(now, timeout);
+    }
+
+    long verify(long now) throws ComPortException {
+        int rc = comPort.readByteWithTimeout(0);
+        if (rc == -1) {
+            if (now - timeout < 0) {
+                return awaitReceive(now, timeout);
+            }
+            throw new ComPortException("Timeout");
+        }
+        if (rc != '.') {
+            throw new ComPortException("Checksum error");
+        }
+
+        if (type == Propeller2Loader.DOWNLOAD_RUN_FLASH) {
+            loader.setPhase(RetryPolicy.PHASE_PROGRAM);
+            if (loader.listener != null) {
+                loader.listener.eepromWrite();
+            }
+        }
+
+        return COMPLETE;
+    }
+
+}
@@ -11,12 +11,41 @@
 
 package com.maccasoft.propeller.loader;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import com.maccasoft.propeller.port.ComPort;
 import com.maccasoft.propeller.port.ComPortException;
+import com.maccasoft.propeller.port.Deadline;
 
 public abstract class PropellerLoader {
 
+    /** Maximum wait for the subscribers buffer space when publishing the DONE event, in milliseconds */
+    public static final int DONE_TIMEOUT = 100;
+
     protected PropellerLoaderListener listener;
 
+    protected RetryPolicy retryPolicy = RetryPolicy.getDefault();
+    protected UploadResult result = new UploadResult();
+    protected int phase;
+
+    protected int timeBudget;
+    protected volatile Deadline deadline;
+    protected volatile boolean cancelled;
+
+    volatile SubmissionPublisher<UploadEvent> events;
+
+    /**
+     * A complete upload attempt, from the handshake.
+     */
+    protected interface UploadAttempt {
+
+        void run() throws ComPortException;
+
+    }
+
     public PropellerLoader() {
 
     }
@@ -29,6 +58,220 @@ public abstract class PropellerLoader {
         this.listener = listener;
     }
 
-    public abstract void upload(byte[] binaryImage, boolean eeprom) throws ComPortException;
+    public void upload(byte[] binaryImage, boolean eeprom) throws ComPortException {
+        upload(binaryImage, ImageChecksums.compute(binaryImage), eeprom);
+    }
+
+    public abstract void upload(byte[] binaryImage, ImageChecksums checksums, boolean eeprom) throws ComPortException;
+
+    public CompletableFuture<UploadResult> uploadAsync(byte[] binaryImage, boolean eeprom) {
+        return uploadAsync(binaryImage, ImageChecksums.compute(binaryImage), eeprom);
+    }
+
+    /**
+     * Starts the upload on the default event loop.
+     *
+     * @see #uploadAsync(UploadEventLoop, byte[], ImageChecksums, boolean)
+     */
+    public CompletableFuture<UploadResult> uploadAsync(byte[] binaryImage, ImageChecksums checksums, boolean eeprom) {
+        return uploadAsync(UploadEventLoop.getDefault(), binaryImage, checksums, eeprom);
+    }
+
+    /**
+     * Starts the upload on the given event loop.
+     *
+     * The returned future completes with the upload result, or exceptionally with the
+     * ComPortException of the failed upload. Cancelling the future cancels the upload. The loader
+     * must not be used for other uploads until the future completes.
+     *
+     * @param loop the event loop
+     * @param binaryImage the image to upload
+     * @param checksums the image checksums
+     * @param eeprom true to write the image to EEPROM or flash
+     * @return the future result
+     */
+    public CompletableFuture<UploadResult> uploadAsync(UploadEventLoop loop, byte[] binaryImage, ImageChecksums checksums, boolean eeprom) {
+        return loop.submit(this, binaryImage, checksums, eeprom).getFuture();
+    }
+
+    /**
+     * Returns the publisher of the phase, progress, retry and completion events of the uploads.
+     *
+     * The events are delivered asynchronously, each subscriber receives the events it requested.
+     * The phase, progress and retry events that don't fit the buffer of a subscriber that falls
+     * behind are dropped. For the DONE event the upload waits up to DONE_TIMEOUT for the buffer
+     * space and then retries once, a subscriber that stopped requesting events loses it but can't
+     * stall the uploads. The publisher stays open for the following uploads of the loader, the
+     * subscribers recognize the end of each upload by its DONE event.
+     *
+     * @see #closeEvents()
+     */
+    public synchronized Flow.Publisher<UploadEvent> getEvents() {
+        if (events == null) {
+            events = new SubmissionPublisher<>();
+        }
+        return events;
+    }
+
+    /**
+     * Closes the events publisher, the subscribers are completed. Called when the loader is no
+     * longer used, a later getEvents() returns a new publisher.
+     */
+    public synchronized void closeEvents() {
+        if (events != null) {
+            events.close();
+            events = null;
+        }
+    }
+
+    /**
+     * Publishes an event to the subscribers, if any.
+     */
+    protected void publish(int type, int phase, int sent, int total, ComPortException error) {
+        SubmissionPublisher<UploadEvent> publisher = events;
+        if (publisher != null && publisher.hasSubscribers()) {
+            UploadEvent event = new UploadEvent(this, type, phase, sent, total, error);
+            if (type == UploadEvent.DONE) {
+                publisher.offer(event, DONE_TIMEOUT, TimeUnit.MILLISECONDS, (subscriber, item) -> true);
+            }
+            else {
+                publisher.offer(event, (subscriber, item) -> false);
+            }
+        }
+    }
+
+    /**
+     * Returns the upload as a task to run on an UploadEventLoop.
+     *
+     * @return the task, or null if the upload options require the blocking upload
+     */
+    protected UploadTask createTask(byte[] binaryImage, ImageChecksums checksums, boolean eeprom) {
+        return null;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Returns the result of the last upload.
+     */
+    public UploadResult getResult() {
+        return result;
+    }
+
+    public int getTimeBudget() {
+        return timeBudget;
+    }
+
+    /**
+     * Sets the maximum time of an upload, including the retries.
+     *
+     * @param timeBudget the time, in milliseconds, or 0 for no limit
+     */
+    public void setTimeBudget(int timeBudget) {
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * Cancels the running upload, or the next one if not yet started. The port operations waiting
+     * for the chip throw an exception and the upload is not retried. The cancel request ends with
+     * the upload, the loader can be used again for the following uploads.
+     */
+    public void cancel() {
+        cancelled = true;
+        Deadline d = deadline;
+        if (d != null) {
+            d.cancel();
+        }
+    }
+
+    /**
+     * Starts the deadline of an upload and sets it on the port.
+     */
+    protected void startDeadline(ComPort comPort) {
+        Deadline d = timeBudget > 0 ? Deadline.after(timeBudget) : new Deadline();
+        deadline = d;
+        if (cancelled) {
+            d.cancel();
+        }
+        comPort.setDeadline(d);
+    }
+
+    /**
+     * Removes the upload deadline from the port and clears the cancel request of the upload.
+     */
+    protected void endDeadline(ComPort comPort) {
+        comPort.setDeadline(null);
+        cancelled = false;
+    }
+
+    /**
+     * Sets the phase of the running upload, used to select the retry policy if it fails.
+     */
+    protected void setPhase(int phase) {
+        this.phase = phase;
+        publish(UploadEvent.PHASE, phase, 0, 0, null);
+    }
+
+    /**
+     * Records a failed attempt that is going to be retried.
+     */
+    protected void notifyRetry(int failed, ComPortException error) {
+        result.addRetry(failed, error);
+        publish(UploadEvent.RETRY, failed, 0, 0, error);
+    }
+
+    protected void notifyProgress(int sent, int total) {
+        publish(UploadEvent.PROGRESS, phase, sent, total, null);
+    }
+
+    /**
+     * Records the end of an upload, successful if the error is null.
+     */
+    protected void notifyDone(ComPortException error) {
+        publish(UploadEvent.DONE, phase, 0, 0, error);
+    }
+
+    /**
+     * Runs the upload attempt until it succeeds or the attempts of the failed phase are exhausted.
+     *
+     * @param attempt the upload attempt
+     * @throws ComPortException the error of the last attempt
+     */
+    protected void runAttempts(UploadAttempt attempt) throws ComPortException {
+        int[] failures = new int[RetryPolicy.PHASES];
+
+        for (;;) {
+            phase = RetryPolicy.PHASE_HANDSHAKE;
+            try {
+                attempt.run();
+                return;
+            } catch (ComPortException e) {
+                int failed = phase;
+                if (++failures[failed] >= retryPolicy.getAttempts(failed) || (deadline != null && deadline.isExpired())) {
+                    throw e;
+                }
+                notifyRetry(failed, e);
+
+                int delay = retryPolicy.getBackoff(failed, failures[failed]);
+                if (deadline != null) {
+                    delay = Math.min(delay, deadline.getRemaining());
+                }
+                if (delay > 0) {
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw e;
+                    }
+                }
+            }
+        }
+    }
 
 }
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller.loader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.maccasoft.propeller.port.ComPort;
+import com.maccasoft.propeller.port.ComPortException;
+
+/**
+ * Calibrated reset-to-handshake delays of the ports.
+ *
+ * The calibration searches the shortest delay after the reset pulse at which the chip reliably
+ * replies to the handshake, the normal runs use the calibrated delay plus a safety margin. Ports
+ * not calibrated use the default delay of the chip version. The values are saved to a JSON file.
+ */
+public class ResetTimings {
+
+    public static final int MAX_RESET_DELAY = 500;
+    public static final int CALIBRATION_ATTEMPTS = 3;
+
+    static final int RESOLUTION = 2;
+    static final int MIN_MARGIN = 5;
+
+    static ResetTimings defaultTimings;
+
+    public static class Entry {
+
+        public String port;
+        public int version;
+        public int delay;
+
+    }
+
+    static class Data {
+
+        public List<Entry> entries = new ArrayList<>();
+
+    }
+
+    final File file;
+    final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    public static synchronized ResetTimings getDefault() {
+        if (defaultTimings == null) {
+            defaultTimings = new ResetTimings(new File(System.getProperty("user.home"), ".propeller-firmware-loader/reset-timings.json"));
+        }
+        return defaultTimings;
+    }
+
+    /**
+     * Creates the timings backed by the given file.
+     *
+     * @param file the file, or null to keep the timings only in memory
+     */
+    public ResetTimings(File file) {
+        this.file = file;
+
+        if (file != null && file.exists()) {
+            try {
+                ObjectMapper mapper = new ObjectMapper();
+                mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+                Data data = mapper.readValue(file, Data.class);
+                for (Entry entry : data.entries) {
+                    entries.put(getKey(entry.port, entry.version), entry);
+                }
+            } catch (IOException e) {
+                // Unreadable file, start without calibrated values
+            }
+        }
+    }
+
+    public static int getDefaultDelay(int version) {
+        return version == 1 ? Session.P1_RESET_DELAY : Session.P2_RESET_DELAY;
+    }
+
+    /**
+     * Returns the delay to use after the reset pulse.
+     *
+     * @param portName the port name
+     * @param version the chip version, 1 or 2
+     * @return the calibrated delay plus the safety margin, or the default delay
+     */
+    public synchronized int getResetDelay(String portName, int version) {
+        Entry entry = entries.get(getKey(portName, version));
+        if (entry == null) {
+            return getDefaultDelay(version);
+        }
+        return entry.delay + Math.max(entry.delay / 4, MIN_MARGIN);
+    }
+
+    /**
+     * Returns the calibrated delay, or -1 if the port is not calibrated.
+     */
+    public synchronized int getCalibratedDelay(String portName, int version) {
+        Entry entry = entries.get(getKey(portName, version));
+        return entry != null ? entry.delay : -1;
+    }
+
+    public synchronized void setCalibratedDelay(String portName, int version, int delay) {
+        Entry entry = new Entry();
+        entry.port = portName;
+        entry.version = version;
+        entry.delay = delay;
+        entries.put(getKey(portName, version), entry);
+    }
+
+    public synchronized void remove(String portName, int version) {
+        entries.remove(getKey(portName, version));
+    }
+
+    public synchronized void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+
+        Data data = new Data();
+        data.entries.addAll(entries.values());
+
+        Path path = file.toPath();
+        Files.createDirectories(path.getParent());
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        new ObjectMapper().writeValue(temp.toFile(), data);
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static String getKey(String portName, int version) {
+        return portName + ":" + version;
+    }
+
+    /**
+     * Searches the shortest reset delay at which the chip replies to the handshake.
+     *
+     * The port must be open. A delay is considered reliable when all the given number of attempts
+     * succeed, the search starts from the default delay and doubles it, up to MAX_RESET_DELAY, if the
+     * chip doesn't reply.
+     *
+     * @param comPort the open port
+     * @param version the chip version, 1 or 2
+     * @param attempts the number of handshakes for each tested delay
+     * @return the shortest reliable delay, or -1 if the chip doesn't reply
+     * @throws ComPortException
+     */
+    public int calibrate(ComPort comPort, int version, int attempts) throws ComPortException {
+        int high = getDefaultDelay(version);
+        while (!isReliable(comPort, version, high, attempts)) {
+            if (high >= MAX_RESET_DELAY) {
+                return -1;
+            }
+            high = Math.min(high * 2, MAX_RESET_DELAY);
+        }
+
+        int low = 0;
+        while (high - low > RESOLUTION) {
+            int delay = (low + high) / 2;
+            if (isReliable(comPort, version, delay, attempts)) {
+                high = delay;
+            }
+            else {
+                low = delay;
+            }
+        }
+
+        setCalibratedDelay(comPort.getPortName(), version, high);
+
+        return high;
+    }
+
+    boolean isReliable(ComPort comPort, int version, int delay, int attempts) throws ComPortException {
+        for (int i = 0; i < attempts; i++) {
+            comPort.hwreset(delay);
+            int rc = version == 1 ? Handshake.p1(comPort) : Handshake.p2(comPort);
+            if (rc == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller.loader;
+
+/**
+ * Number of attempts and backoff delays for each upload phase.
+ *
+ * When an upload fails the phase that was running decides whether the upload is attempted again,
+ * each phase has its own attempts budget. Since the boot ROM accepts an image only after a reset,
+ * every attempt restarts from the handshake.
+ */
+public class RetryPolicy {
+
+    public static final int PHASE_HANDSHAKE = 0;
+    public static final int PHASE_TRANSFER = 1;
+    public static final int PHASE_VERIFY = 2;
+    public static final int PHASE_PROGRAM = 3;
+
+    public static final int PHASES = 4;
+
+    static final String[] names = {
+        "handshake",
+        "transfer",
+        "verify",
+        "program",
+    };
+
+    final int[] attempts = new int[PHASES];
+    final int[] backoff = new int[PHASES];
+    final int[] maxBackoff = new int[PHASES];
+
+    /**
+     * Returns a new policy with the default values.
+     */
+    public static RetryPolicy getDefault() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setAttempts(PHASE_HANDSHAKE, 3, 0, 0);
+        policy.setAttempts(PHASE_TRANSFER, 2, 100, 1000);
+        policy.setAttempts(PHASE_VERIFY, 2, 100, 1000);
+        policy.setAttempts(PHASE_PROGRAM, 2, 500, 2000);
+        return policy;
+    }
+
+    /**
+     * Returns a new policy that never retries.
+     */
+    public static RetryPolicy none() {
+        RetryPolicy policy = new RetryPolicy();
+        for (int i = 0; i < PHASES; i++) {
+            policy.setAttempts(i, 1, 0, 0);
+        }
+        return policy;
+    }
+
+    public RetryPolicy() {
+
+    }
+
+    /**
+     * Sets the attempts of a phase.
+     *
+     * @param phase the phase
+     * @param attempts the total number of attempts, including the first
+     * @param backoff the delay before the first retry, in milliseconds, doubled at each retry
+     * @param maxBackoff the maximum delay, in milliseconds
+     */
+    public void setAttempts(int phase, int attempts, int backoff, int maxBackoff) {
+        this.attempts[phase] = Math.max(attempts, 1);
+        this.backoff[phase] = backoff;
+        this.maxBackoff[phase] = Math.max(maxBackoff, backoff);
+    }
+
+    public int getAttempts(int phase) {
+        return attempts[phase];
+    }
+
+    /**
+     * Returns the delay before the given retry.
+     *
+     * @param phase the phase
+     * @param retry the retry number, starting from 1
+     * @return the delay in milliseconds
+     */
+    public int getBackoff(int phase, int retry) {
+        long delay = backoff[phase];
+        for (int i = 1; i < retry && delay < maxBackoff[phase]; i++) {
+            delay *= 2;
+        }
+        return (int) Math.min(delay, maxBackoff[phase]);
+    }
+
+    public static String getPhaseName(int phase) {
+        return names[phase];
+    }
+
+}
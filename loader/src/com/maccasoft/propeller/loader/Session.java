@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller.loader;
+
+import com.maccasoft.propeller.port.ComPort;
+import com.maccasoft.propeller.port.ComPortException;
+
+import jssc.SerialPort;
+
+/**
+ * Open port with an identified chip, the port must be closed by the caller.
+ */
+public class Session implements AutoCloseable {
+
+    public static final int P1_BAUDRATE = 115200;
+    public static final int P2_BAUDRATE = 2000000;
+
+    /** Default reset delays, used for the ports not calibrated */
+    public static final int P1_RESET_DELAY = 90;
+    public static final int P2_RESET_DELAY = 15;
+
+    final ComPort comPort;
+    final int version;
+    final int chipVersion;
+
+    /**
+     * Opens the port and identifies the chip connected to it.
+     *
+     * @param comPort the port to open
+     * @return the session with the port left open, or null if no chip replied
+     * @throws ComPortException if the port can't be opened
+     */
+    public static Session open(ComPort comPort) throws ComPortException {
+        comPort.openPort();
+
+        try {
+            int rc = probeP2(comPort);
+            if (rc != 0) {
+                return new Session(comPort, 2, rc);
+            }
+            rc = probeP1(comPort);
+            if (rc != 0) {
+                return new Session(comPort, 1, rc);
+            }
+        } catch (Exception e) {
+            // Do nothing
+        }
+
+        comPort.closePort();
+
+        return null;
+    }
+
+    /**
+     * Resets the chip and runs the P1 handshake.
+     *
+     * @return the chip version, or 0 if no P1 chip replied
+     */
+    public static int probeP1(ComPort comPort) throws ComPortException {
+        comPort.setParams(P1_BAUDRATE, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+        comPort.hwreset(ResetTimings.getDefault().getResetDelay(comPort.getPortName(), 1));
+        return Handshake.p1(comPort);
+    }
+
+    /**
+     * Resets the chip and runs the P2 handshake.
+     *
+     * @return the chip version character, or 0 if no P2 chip replied
+     */
+    public static int probeP2(ComPort comPort) throws ComPortException {
+        comPort.setParams(P2_BAUDRATE, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+        comPort.hwreset(ResetTimings.getDefault().getResetDelay(comPort.getPortName(), 2));
+        return Handshake.p2(comPort);
+    }
+
+    Session(ComPort comPort, int version, int chipVersion) {
+        this.comPort = comPort;
+        this.version = version;
+        this.chipVersion = chipVersion;
+    }
+
+    public ComPort getComPort() {
+        return comPort;
+    }
+
+    /**
+     * Returns the chip version, 1 or 2.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the version reported by the boot ROM, the version byte for P1 or the version
+     * character for P2.
+     */
+    public int getChipVersion() {
+        return chipVersion;
+    }
+
+    @Override
+    public void close() throws ComPortException {
+        if (comPort.isOpened()) {
+            comPort.closePort();
+        }
+    }
+
+}
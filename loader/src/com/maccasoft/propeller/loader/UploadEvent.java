@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller.loader;
+
+import com.maccasoft.propeller.port.ComPortException;
+
+/**
+ * Upload state change published by PropellerLoader.getEvents().
+ */
+public class UploadEvent {
+
+    /** The upload entered a new phase */
+    public static final int PHASE = 0;
+    /** The image transfer progressed */
+    public static final int PROGRESS = 1;
+    /** An attempt failed and the upload is restarting from the handshake */
+    public static final int RETRY = 2;
+    /** The upload completed, successfully if the error is null */
+    public static final int DONE = 3;
+
+    static final String[] names = {
+        "phase",
+        "progress",
+        "retry",
+        "done",
+    };
+
+    final PropellerLoader loader;
+    final int type;
+    final int phase;
+    final int sent;
+    final int total;
+    final ComPortException error;
+
+    public UploadEvent(PropellerLoader loader, int type, int phase, int sent, int total, ComPortException error) {
+        this.loader = loader;
+        this.type = type;
+        this.phase = phase;
+        this.sent = sent;
+        this.total = total;
+        this.error = error;
+    }
+
+    public PropellerLoader getLoader() {
+        return loader;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Returns the phase running when the event was published, for RETRY events the failed phase.
+     */
+    public int getPhase() {
+        return phase;
+    }
+
+    /**
+     * Returns the transferred bytes, for PROGRESS events.
+     */
+    public int getSent() {
+        return sent;
+    }
+
+    /**
+     * Returns the bytes to transfer, for PROGRESS events.
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the error of RETRY and failed DONE events, or null.
+     */
+    public ComPortException getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("UploadEvent [");
+        sb.append(names[type]);
+        sb.append(", phase=");
+        sb.append(RetryPolicy.getPhaseName(phase));
+        if (type == PROGRESS) {
+            sb.append(", sent=");
+            sb.append(sent);
+            sb.append("/");
+            sb.append(total);
+        }
+        if (error != null) {
+            sb.append(", error=");
+            sb.append(error.getMessage());
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller.loader;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.maccasoft.propeller.port.ComPort;
+import com.maccasoft.propeller.port.ComPortException;
+
+/**
+ * Runs many uploads on a small, fixed number of threads.
+ *
+ * Each upload is a state machine stepped by one of the loop threads when its timer expires or its
+ * port receives new bytes, the thread parks while no upload has work to do. Uploads with options
+ * not supported by the state machines, like the network ports or the helpers, run the blocking
+ * upload on a separate thread.
+ */
+public class UploadEventLoop implements AutoCloseable {
+
+    class Worker implements Runnable {
+
+        final Thread thread;
+        final Queue<UploadTask> submitted = new ConcurrentLinkedQueue<>();
+        final List<UploadTask> tasks = new ArrayList<>();
+
+        Worker(int index) {
+            thread = new Thread(this, "Upload event loop " + index);
+            thread.setDaemon(true);
+        }
+
+        void add(UploadTask task) {
+            task.wakeup = () -> LockSupport.unpark(thread);
+            submitted.add(task);
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+            while (!closed || !tasks.isEmpty() || !submitted.isEmpty()) {
+                long now = System.nanoTime();
+
+                UploadTask task;
+                while ((task = submitted.poll()) != null) {
+                    task.wakeTime = now;
+                    tasks.add(task);
+                }
+
+                // Park at most for the deadline poll interval, to notice the expired and cancelled uploads
+                long wait = ComPort.DEADLINE_POLL_INTERVAL * 1_000_000L;
+
+                Iterator<UploadTask> iter = tasks.iterator();
+                while (iter.hasNext()) {
+                    task = iter.next();
+                    if (task.isDue(now)) {
+                        long next = task.step(now);
+                        if (next == UploadTask.COMPLETE) {
+                            iter.remove();
+                            continue;
+                        }
+                        task.wakeTime = next;
+                        now = System.nanoTime();
+                    }
+                    wait = task.received ? 0 : Math.min(wait, task.wakeTime - now);
+                }
+
+                if (wait > 0) {
+                    LockSupport.parkNanos(this, wait);
+                }
+            }
+        }
+
+    }
+
+    static class BlockingUploadTask extends UploadTask {
+
+        BlockingUploadTask(PropellerLoader loader) {
+            super(loader, null);
+        }
+
+        @Override
+        protected void open() {
+            throw new IllegalStateException();
+        }
+
+        @Override
+        protected void restart() {
+            throw new IllegalStateException();
+        }
+
+        @Override
+        protected long run(long now) {
+            throw new IllegalStateException();
+        }
+
+    }
+
+    static UploadEventLoop defaultLoop;
+
+    final Worker[] workers;
+    final ExecutorService blockingExecutor;
+
+    int next;
+    volatile boolean closed;
+
+    /**
+     * Returns the shared loop used by PropellerLoader.uploadAsync, running on a single thread.
+     */
+    public static synchronized UploadEventLoop getDefault() {
+        if (defaultLoop == null) {
+            defaultLoop = new UploadEventLoop();
+        }
+        return defaultLoop;
+    }
+
+    /**
+     * Creates a loop running on a single thread.
+     */
+    public UploadEventLoop() {
+        this(1);
+    }
+
+    /**
+     * Creates a loop running on the given number of threads, the uploads are assigned to the
+     * threads in turn.
+     */
+    public UploadEventLoop(int threads) {
+        workers = new Worker[Math.max(threads, 1)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i);
+            workers[i].thread.start();
+        }
+        blockingExecutor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "Blocking upload");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public UploadTask submit(PropellerLoader loader, byte[] binaryImage, boolean eeprom) {
+        return submit(loader, binaryImage, ImageChecksums.compute(binaryImage), eeprom);
+    }
+
+    /**
+     * Starts an upload, the loader must not be used by other uploads until the task completes.
+     *
+     * @param loader the loader
+     * @param binaryImage the image to upload
+     * @param checksums the image checksums
+     * @param eeprom true to write the image to EEPROM or flash
+     * @return the running upload
+     */
+    public synchronized UploadTask submit(PropellerLoader loader, byte[] binaryImage, ImageChecksums checksums, boolean eeprom) {
+        if (closed) {
+            throw new IllegalStateException("Event loop closed");
+        }
+
+        UploadTask task = loader.createTask(binaryImage, checksums, eeprom);
+        if (task == null) {
+            UploadTask blockingTask = new BlockingUploadTask(loader);
+            blockingExecutor.execute(() -> {
+                ComPortException error = null;
+                try {
+                    loader.upload(binaryImage, checksums, eeprom);
+                } catch (ComPortException e) {
+                    error = e;
+                } catch (RuntimeException e) {
+                    error = new ComPortException(e.toString(), e);
+                }
+                blockingTask.finish(error);
+            });
+            return blockingTask;
+        }
+
+        workers[next].add(task);
+        next = (next + 1) % workers.length;
+
+        return task;
+    }
+
+    /**
+     * Stops accepting uploads and waits for the submitted uploads to complete. If the calling thread
+     * is interrupted it stops waiting and its interrupt status is set, the uploads continue in the
+     * background.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        for (int i = 0; i < workers.length; i++) {
+            LockSupport.unpark(workers[i].thread);
+        }
+        blockingExecutor.shutdown();
+        try {
+            for (int i = 0; i < workers.length; i++) {
+                workers[i].thread.join();
+            }
+            blockingExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
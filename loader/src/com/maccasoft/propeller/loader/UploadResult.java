@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller.loader;
+
+import com.maccasoft.propeller.port.ComPortException;
+
+/**
+ * Outcome of an upload: retries for each phase and the time spent.
+ */
+public class UploadResult {
+
+    final int[] retries = new int[RetryPolicy.PHASES];
+    int retransmissions;
+    long elapsed;
+    ComPortException error;
+
+    public UploadResult() {
+
+    }
+
+    void addRetry(int phase, ComPortException error) {
+        retries[phase]++;
+        this.error = error;
+    }
+
+    public int getRetries(int phase) {
+        return retries[phase];
+    }
+
+    public int getTotalRetries() {
+        int total = 0;
+        for (int i = 0; i < retries.length; i++) {
+            total += retries[i];
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of network packets sent again because the acknowledge was lost.
+     */
+    public int getRetransmissions() {
+        return retransmissions;
+    }
+
+    /**
+     * Returns the time spent for the upload, in milliseconds.
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Returns the last error that caused a retry, or null.
+     */
+    public ComPortException getLastError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("UploadResult [elapsed=");
+        sb.append(elapsed);
+        sb.append(" ms");
+        if (retransmissions != 0) {
+            sb.append(", retransmissions=");
+            sb.append(retransmissions);
+        }
+        for (int i = 0; i < retries.length; i++) {
+            if (retries[i] != 0) {
+                sb.append(", ");
+                sb.append(RetryPolicy.getPhaseName(i));
+                sb.append(" retries=");
+                sb.append(retries[i]);
+            }
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller.loader;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.maccasoft.propeller.port.ComPort;
+import com.maccasoft.propeller.port.ComPortException;
+import com.maccasoft.propeller.port.Deadline;
+
+/**
+ * Upload running as a state machine on an UploadEventLoop.
+ *
+ * Each step does the work possible without waiting, reading only the bytes already received, and
+ * returns the time at which it must run again. The loop runs the next step at that time, or as soon
+ * as the port receives new bytes if the port notifies them. Failed attempts are retried with the
+ * loader retry policy, the same way as the blocking upload.
+ */
+public abstract class UploadTask {
+
+    /** Returned by a step when the upload is complete */
+    static final long COMPLETE = Long.MIN_VALUE;
+
+    /** Interval at which the ports that don't notify the received bytes are read, in milliseconds */
+    static final int RECEIVE_POLL_INTERVAL = 1;
+
+    /** Bytes written by a single step, the next block is written when the previous is almost sent */
+    static final int TRANSFER_BLOCK_SIZE = 1024;
+
+    final PropellerLoader loader;
+    final ComPort comPort;
+
+    final int[] failures = new int[RetryPolicy.PHASES];
+    final CountDownLatch completion = new CountDownLatch(1);
+    final CompletableFuture<UploadResult> future = new CompletableFuture<>();
+
+    boolean started;
+    boolean notifying;
+    long startTime;
+    long wakeTime;
+
+    volatile boolean received;
+    volatile Runnable wakeup;
+    volatile ComPortException error;
+
+    protected UploadTask(PropellerLoader loader, ComPort comPort) {
+        this.loader = loader;
+        this.comPort = comPort;
+
+        future.whenComplete((result, e) -> {
+            if (future.isCancelled()) {
+                cancel();
+            }
+        });
+    }
+
+    public PropellerLoader getLoader() {
+        return loader;
+    }
+
+    /**
+     * Opens the port and sets its parameters, called once before the first step.
+     */
+    protected abstract void open() throws ComPortException;
+
+    /**
+     * Sets the state machine at the beginning of an upload attempt.
+     */
+    protected abstract void restart();
+
+    /**
+     * Runs the current state.
+     *
+     * @param now the current time, from System.nanoTime()
+     * @return the time of the next step, or COMPLETE if the upload is complete
+     * @throws ComPortException if the attempt failed
+     */
+    protected abstract long run(long now) throws ComPortException;
+
+    /**
+     * Runs a step of the upload, called only by the event loop.
+     *
+     * @param now the current time, from System.nanoTime()
+     * @return the time of the next step, or COMPLETE if the upload is complete
+     */
+    long step(long now) {
+        received = false;
+
+        if (!started) {
+            started = true;
+            startTime = now;
+            loader.result = new UploadResult();
+            loader.startDeadline(comPort);
+            try {
+                comPort.openPort();
+                open();
+            } catch (ComPortException e) {
+                complete(e);
+                return COMPLETE;
+            }
+            notifying = comPort.setReceiveListener(this::notifyReceived);
+            loader.setPhase(RetryPolicy.PHASE_HANDSHAKE);
+            restart();
+        }
+
+        try {
+            comPort.checkDeadline();
+            long next = run(now);
+            if (next == COMPLETE) {
+                complete(null);
+            }
+            return next;
+        } catch (ComPortException e) {
+            return retry(e, now);
+        } catch (RuntimeException e) {
+            complete(new ComPortException(e.toString(), e));
+            return COMPLETE;
+        }
+    }
+
+    long retry(ComPortException e, long now) {
+        int failed = loader.phase;
+        Deadline deadline = loader.deadline;
+        if (++failures[failed] >= loader.retryPolicy.getAttempts(failed) || (deadline != null && deadline.isExpired())) {
+            complete(e);
+            return COMPLETE;
+        }
+        loader.notifyRetry(failed, e);
+
+        int delay = loader.retryPolicy.getBackoff(failed, failures[failed]);
+        if (deadline != null) {
+            delay = Math.min(delay, deadline.getRemaining());
+        }
+
+        loader.setPhase(RetryPolicy.PHASE_HANDSHAKE);
+        restart();
+
+        return now + delay * 1_000_000L;
+    }
+
+    void complete(ComPortException e) {
+        loader.result.elapsed = (System.nanoTime() - startTime) / 1_000_000L;
+        comPort.setReceiveListener(null);
+        loader.endDeadline(comPort);
+        try {
+            if (comPort.isOpened()) {
+                comPort.closePort();
+            }
+        } catch (ComPortException closeError) {
+            if (e == null) {
+                e = closeError;
+            }
+        }
+        loader.notifyDone(e);
+        finish(e);
+    }
+
+    /**
+     * Marks the upload as complete with the given error.
+     */
+    void finish(ComPortException e) {
+        error = e;
+        completion.countDown();
+        if (e != null) {
+            future.completeExceptionally(e);
+        }
+        else {
+            future.complete(loader.getResult());
+        }
+    }
+
+    void notifyReceived() {
+        received = true;
+        Runnable r = wakeup;
+        if (r != null) {
+            r.run();
+        }
+    }
+
+    /**
+     * Returns true if the next step must run: its time has come, the port received new bytes or
+     * the deadline expired.
+     */
+    boolean isDue(long now) {
+        Deadline deadline = loader.deadline;
+        return received || now - wakeTime >= 0 || (started && deadline != null && deadline.isExpired());
+    }
+
+    /**
+     * Returns the time of the next step while waiting for the chip to reply.
+     *
+     * @param now the current time
+     * @param timeout the time at which the wait times out
+     */
+    long awaitReceive(long now, long timeout) {
+        if (notifying) {
+            return timeout;
+        }
+        return Math.min(timeout, now + RECEIVE_POLL_INTERVAL * 1_000_000L);
+    }
+
+    /**
+     * Discards the bytes received and not yet read.
+     */
+    void discardReceived() throws ComPortException {
+        byte[] rx = new byte[64];
+        while (comPort.readBytes(rx, 0, rx.length, 0) != 0) {
+            // Do nothing
+        }
+    }
+
+    /**
+     * Returns the time to send the given number of bytes, in nanoseconds.
+     */
+    static long getTransmitTime(int length, int baudRate) {
+        return length * 10 * 1_000_000_000L / baudRate;
+    }
+
+    /**
+     * Cancels the upload, the running step completes with an error.
+     */
+    public void cancel() {
+        loader.cancel();
+        notifyReceived();
+    }
+
+    /**
+     * Returns the future completed with the upload result, cancelling it cancels the upload.
+     */
+    public CompletableFuture<UploadResult> getFuture() {
+        return future;
+    }
+
+    public boolean isDone() {
+        return completion.getCount() == 0;
+    }
+
+    /**
+     * Waits for the upload to complete.
+     */
+    public void await() throws InterruptedException {
+        completion.await();
+    }
+
+    /**
+     * Waits for the upload to complete.
+     *
+     * @return true if complete, false if the timeout elapsed
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return completion.await(timeout, unit);
+    }
+
+    /**
+     * Waits for the upload to complete and returns its result.
+     *
+     * @return the upload result
+     * @throws ComPortException the error of the failed upload
+     */
+    public UploadResult get() throws ComPortException, InterruptedException {
+        completion.await();
+        if (error != null) {
+            throw error;
+        }
+        return loader.getResult();
+    }
+
+    /**
+     * Returns the error of the failed upload, or null if the upload succeeded or is not complete.
+     */
+    public ComPortException getError() {
+        return error;
+    }
+
+}
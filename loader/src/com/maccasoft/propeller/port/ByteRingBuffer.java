@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller.port;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free byte queue with a single producer and a single consumer thread.
+ *
+ * The producer appends the received bytes with put, the consumer reads them with get and waits for
+ * new bytes with await, parking the thread until the producer wakes it. Bytes that don't fit are
+ * discarded and the overflow is reported to the consumer.
+ */
+public class ByteRingBuffer {
+
+    final byte[] buffer;
+    final int mask;
+
+    /** Total bytes written, updated only by the producer */
+    volatile long head;
+    /** Total bytes read, updated only by the consumer */
+    volatile long tail;
+
+    volatile Thread waiter;
+    volatile boolean overflow;
+
+    /**
+     * Creates the buffer.
+     *
+     * @param capacity the capacity, rounded up to a power of two
+     */
+    public ByteRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.buffer = new byte[size];
+        this.mask = size - 1;
+    }
+
+    public int getCapacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Appends the given bytes, called by the producer.
+     *
+     * @return the number of bytes stored, less than length if the buffer is full
+     */
+    public int put(byte[] data, int offset, int length) {
+        long h = head;
+        int count = (int) Math.min(length, buffer.length - (h - tail));
+        for (int i = 0; i < count; i++) {
+            buffer[(int) (h + i) & mask] = data[offset + i];
+        }
+        if (count < length) {
+            overflow = true;
+        }
+        head = h + count;
+
+        Thread thread = waiter;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of bytes available to the consumer.
+     */
+    public int available() {
+        return (int) (head - tail);
+    }
+
+    /**
+     * Reads a byte, called by the consumer.
+     *
+     * @return the byte, or -1 if the buffer is empty
+     */
+    public int get() {
+        long t = tail;
+        if (head == t) {
+            return -1;
+        }
+        int b = buffer[(int) t & mask] & 0xFF;
+        tail = t + 1;
+        return b;
+    }
+
+    /**
+     * Reads the available bytes, up to length, called by the consumer.
+     *
+     * @return the number of bytes read
+     */
+    public int get(byte[] data, int offset, int length) {
+        long t = tail;
+        int count = (int) Math.min(length, head - t);
+        for (int i = 0; i < count; i++) {
+            data[offset + i] = buffer[(int) (t + i) & mask];
+        }
+        tail = t + count;
+        return count;
+    }
+
+    /**
+     * Waits for at least one byte, called by the consumer.
+     *
+     * @param timeout the timeout, in nanoseconds
+     * @return true if bytes are available, false if timed out or interrupted
+     */
+    public boolean await(long timeout) {
+        if (head != tail) {
+            return true;
+        }
+
+        long deadline = System.nanoTime() + timeout;
+        waiter = Thread.currentThread();
+        try {
+            while (head == tail) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+            return true;
+        } finally {
+            waiter = null;
+        }
+    }
+
+    /**
+     * Discards the available bytes and the overflow condition, called by the consumer.
+     */
+    public void clear() {
+        tail = head;
+        overflow = false;
+    }
+
+    /**
+     * Returns true if bytes were discarded because the buffer was full.
+     */
+    public boolean isOverflow() {
+        return overflow;
+    }
+
+}
@@ -11,8 +11,16 @@
 
 package com.maccasoft.propeller.port;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 public abstract class ComPort {
 
+    /** Maximum time a blocking read waits before checking the deadline again */
+    public static final int DEADLINE_POLL_INTERVAL = 20;
+
+    protected volatile Deadline deadline;
+
     public abstract String getName();
 
     public abstract String getDescription();
@@ -41,6 +49,123 @@ public abstract class ComPort {
 
     public abstract byte[] readBytes() throws ComPortException;
 
+    /**
+     * Reads the available bytes into the given buffer, waits up to the timeout for the first byte.
+     *
+     * The default implementation reads a single byte, ports override it to transfer all the available
+     * bytes with a single call.
+     *
+     * @param buffer the buffer
+     * @param offset the offset of the first byte in the buffer
+     * @param length the maximum number of bytes to read
+     * @param timeout the timeout, in milliseconds
+     * @return the number of bytes read, 0 if timed out
+     * @throws ComPortException
+     */
+    public int readBytes(byte[] buffer, int offset, int length, int timeout) throws ComPortException {
+        if (length == 0) {
+            return 0;
+        }
+        int b = readByteWithTimeout(timeout);
+        if (b == -1) {
+            return 0;
+        }
+        buffer[offset] = (byte) b;
+        return 1;
+    }
+
+    /**
+     * Reads the given number of bytes into the buffer, or less if the timeout expires.
+     *
+     * @param buffer the buffer
+     * @param offset the offset of the first byte in the buffer
+     * @param length the number of bytes to read
+     * @param timeout the timeout for the whole read, in milliseconds
+     * @return the number of bytes read
+     * @throws ComPortException
+     */
+    public int readFully(byte[] buffer, int offset, int length, int timeout) throws ComPortException {
+        int count = 0;
+
+        long deadline = System.currentTimeMillis() + timeout;
+        while (count < length) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            int n = readBytes(buffer, offset + count, length - count, (int) remaining);
+            if (n == 0) {
+                break;
+            }
+            count += n;
+        }
+
+        return count;
+    }
+
+    /**
+     * Reads the available bytes into the remaining space of the given buffer, waits up to the
+     * timeout for the first byte. The buffer position is advanced by the number of bytes read.
+     *
+     * @return the number of bytes read, 0 if timed out
+     */
+    public int readBytes(ByteBuffer buffer, int timeout) throws ComPortException {
+        if (buffer.hasArray()) {
+            int count = readBytes(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), timeout);
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+        byte[] rx = new byte[buffer.remaining()];
+        int count = readBytes(rx, 0, rx.length, timeout);
+        buffer.put(rx, 0, count);
+        return count;
+    }
+
+    /**
+     * Writes a portion of the given buffer.
+     *
+     * The default implementation copies the bytes to a new array, ports override it to write from
+     * the buffer.
+     */
+    public boolean writeBytes(byte[] buffer, int offset, int length) throws ComPortException {
+        if (offset == 0 && length == buffer.length) {
+            return writeBytes(buffer);
+        }
+        return writeBytes(Arrays.copyOfRange(buffer, offset, offset + length));
+    }
+
+    /**
+     * Writes the remaining bytes of the given buffer, the buffer position is advanced to the limit.
+     */
+    public boolean writeBytes(ByteBuffer buffer) throws ComPortException {
+        boolean result;
+        if (buffer.hasArray()) {
+            result = writeBytes(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+        }
+        else {
+            byte[] tx = new byte[buffer.remaining()];
+            buffer.get(tx);
+            result = writeBytes(tx);
+        }
+        return result;
+    }
+
+    /**
+     * Sends the bytes held by the port write buffer, if any. Called at the end of a command or data
+     * block, the default implementation does nothing.
+     */
+    public void flush() throws ComPortException {
+
+    }
+
+    /**
+     * Writes a portion of the given string, the characters are sent as 8-bit values.
+     */
+    public boolean writeString(String string, int offset, int length) throws ComPortException {
+        return writeString(string.substring(offset, offset + length));
+    }
+
     public abstract void setRTS(boolean enable) throws ComPortException;
 
     public abstract void setDTR(boolean enable) throws ComPortException;
@@ -49,4 +174,49 @@ public abstract class ComPort {
 
     public abstract boolean isDSR() throws ComPortException;
 
+    /**
+     * Sets the listener notified, from a port thread, when new bytes are received.
+     *
+     * @param listener the listener, or null to remove it
+     * @return true if the port notifies the received bytes, false if the caller must poll the port
+     */
+    public boolean setReceiveListener(Runnable listener) {
+        return false;
+    }
+
+    public Deadline getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Sets the deadline of the port operations.
+     *
+     * @param deadline the deadline, or null to remove it
+     */
+    public void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Throws an exception if the port deadline is expired or cancelled.
+     */
+    public void checkDeadline() throws ComPortException {
+        Deadline d = deadline;
+        if (d != null) {
+            d.check();
+        }
+    }
+
+    /**
+     * Limits a timeout to the time left before the port deadline.
+     *
+     * @param timeout the timeout, in milliseconds
+     * @return the limited timeout
+     * @throws ComPortException if the deadline is expired or cancelled
+     */
+    public int limitTimeout(int timeout) throws ComPortException {
+        Deadline d = deadline;
+        return d != null ? d.limit(timeout) : timeout;
+    }
+
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2025 Marco Maccaferri and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Marco Maccaferri - initial API and implementation
+ */
+
+package com.maccasoft.propeller.port;
+
+/**
+ * Time limit and cancellation of the operations on a port.
+ *
+ * A deadline set on a port limits the timeouts of the read operations to the time left, when the
+ * deadline expires or is cancelled the port operations throw a ComPortException instead of waiting
+ * for their own timeout.
+ */
+public class Deadline {
+
+    final boolean limited;
+    final long time;
+    volatile boolean cancelled;
+
+    /**
+     * Returns a deadline expiring after the given time.
+     *
+     * @param msec the time, in milliseconds
+     */
+    public static Deadline after(int msec) {
+        return new Deadline(System.nanoTime() + msec * 1_000_000L);
+    }
+
+    /**
+     * Creates a deadline without time limit, that expires only when cancelled.
+     */
+    public Deadline() {
+        this.limited = false;
+        this.time = 0;
+    }
+
+    Deadline(long time) {
+        this.limited = true;
+        this.time = time;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isExpired() {
+        return cancelled || (limited && System.nanoTime() - time >= 0);
+    }
+
+    /**
+     * Returns the time left, in milliseconds, or Integer.MAX_VALUE if there is no time limit.
+     */
+    public int getRemaining() {
+        if (cancelled) {
+            return 0;
+        }
+        if (!limited) {
+            return Integer.MAX_VALUE;
+        }
+        // Rounded up, a wait for the remaining time ends after the deadline
+        long remaining = (time - System.nanoTime() + 999_999L) / 1_000_000L;
+        return (int) Math.max(Math.min(remaining, Integer.MAX_VALUE), 0);
+    }
+
+    /**
+     * Throws an exception if the deadline is expired or cancelled.
+     */
+    public void check() throws ComPortException {
+        if (cancelled) {
+            throw new ComPortException("Operation cancelled");
+        }
+        if (limited && System.nanoTime() - time >= 0) {
+            throw new ComPortException("Time budget exceeded");
+        }
+    }
+
+    /**
+     * Limits a timeout to the time left.
+     *
+     * @param timeout the timeout, in milliseconds
+     * @return the limited timeout
+     * @throws ComPortException if the deadline is expired or cancelled
+     */
+    public int limit(int timeout) throws ComPortException {
+        check();
+        return Math.min(timeout, getRemaining());
+    }
+
+}
@@ -16,6 +16,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
@@ -29,6 +30,7 @@ import java.time.Duration;
 
 public class NetworkComPort extends ComPort {
 
+    public static final int HTTP_PORT = 80;
     public static final int TELNET_PORT = 23;
 
     public static final int MAX_DATA_SIZE = 1024;
@@ -41,12 +43,19 @@ public class NetworkComPort extends ComPort {
     String mac_address;
     String resetPin;
 
+    int httpPort = HTTP_PORT;
+    int telnetPort = TELNET_PORT;
+
     HttpClient client;
 
     Socket socket;
     OutputStream os;
     InputStream is;
 
+    final byte[] rxLong = new byte[4];
+    int rxLongCount;
+    byte[] txBuffer = new byte[MAX_DATA_SIZE];
+
     public NetworkComPort(String name, String inetAddr, String mac_address, String resetPin) {
         this.name = name;
         try {
@@ -127,6 +136,33 @@ public class NetworkComPort extends ComPort {
         this.resetPin = resetPin;
     }
 
+    public int getHttpPort() {
+        return httpPort;
+    }
+
+    public void setHttpPort(int httpPort) {
+        this.httpPort = httpPort;
+    }
+
+    public int getTelnetPort() {
+        return telnetPort;
+    }
+
+    public void setTelnetPort(int telnetPort) {
+        this.telnetPort = telnetPort;
+    }
+
+    public String getHttpAddress() {
+        StringBuilder sb = new StringBuilder(32);
+        sb.append("http://");
+        sb.append(inetAddr.getHostAddress());
+        if (httpPort != HTTP_PORT) {
+            sb.append(":");
+            sb.append(httpPort);
+        }
+        return sb.toString();
+    }
+
     @Override
     public boolean isOpened() {
         if (socket == null) {
@@ -143,9 +179,10 @@ public class NetworkComPort extends ComPort {
                 .connectTimeout(Duration.ofMillis(CONNECT_TIMEOUT)) //
                 .build();
 
-            socket = new Socket(inetAddr, TELNET_PORT);
+            socket = new Socket(inetAddr, telnetPort);
             os = socket.getOutputStream();
             is = socket.getInputStream();
+            rxLongCount = 0;
         } catch (IOException e) {
             throw new ComPortException(e.getMessage(), e);
         }
@@ -155,7 +192,7 @@ public class NetworkComPort extends ComPort {
     @Override
     public boolean setParams(int baudRate, int dataBits, int stopBits, int parity) throws ComPortException {
         try {
-            Builder builder = HttpRequest.newBuilder(new URI("http://" + inetAddr.getHostAddress() + "/wx/setting?name=baud-rate&value=" + baudRate));
+            Builder builder = HttpRequest.newBuilder(new URI(getHttpAddress() + "/wx/setting?name=baud-rate&value=" + baudRate));
             HttpRequest httpRequest = builder.POST(BodyPublishers.noBody()).build();
             client.send(httpRequest, BodyHandlers.ofString());
 
@@ -181,8 +218,7 @@ public class NetworkComPort extends ComPort {
     public void hwreset(int delay) {
         try {
             StringBuilder sb = new StringBuilder(128);
-            sb.append("http://");
-            sb.append(inetAddr.getHostAddress());
+            sb.append(getHttpAddress());
             sb.append("/propeller/reset");
             if (resetPin != null && !resetPin.isBlank()) {
                 sb.append("?reset-pin=" + resetPin);
@@ -193,9 +229,9 @@ public class NetworkComPort extends ComPort {
 
             Thread.sleep(delay);
 
-            if (is.available() > 0) {
-                is.readAllBytes();
-            }
+            // Discard the received bytes, readAllBytes would wait for the end of the stream
+            is.skip(is.available());
+            rxLongCount = 0;
         } catch (URISyntaxException | IOException | InterruptedException e) {
             // Do nothing
             e.printStackTrace();
@@ -204,6 +240,7 @@ public class NetworkComPort extends ComPort {
 
     @Override
     public int readByteWithTimeout(int timeout) throws ComPortException {
+        timeout = limitTimeout(timeout);
         while (timeout > 0) {
             try {
                 int len = is.available();
@@ -216,6 +253,7 @@ public class NetworkComPort extends ComPort {
                 // Do nothing
             }
             timeout--;
+            checkDeadline();
         }
         return -1;
     }
@@ -244,6 +282,7 @@ public class NetworkComPort extends ComPort {
 
     @Override
     public boolean writeBytes(byte[] buffer) throws ComPortException {
+        checkDeadline();
         try {
             os.write(buffer);
             os.flush();
@@ -270,10 +309,49 @@ public class NetworkComPort extends ComPort {
         }
     }
 
+    /**
+     * Reads the available bytes, waits up to the timeout for the first byte. The socket read blocks
+     * with a timeout limited to the port deadline, with a deadline it waits in short slices to
+     * notice a cancellation while waiting.
+     */
+    @Override
+    public int readBytes(byte[] buffer, int offset, int length, int timeout) throws ComPortException {
+        if (length == 0) {
+            return 0;
+        }
+        long end = System.nanoTime() + limitTimeout(timeout) * 1_000_000L;
+        try {
+            for (;;) {
+                int remaining = (int) ((end - System.nanoTime()) / 1_000_000L);
+                if (remaining <= 0) {
+                    // A zero socket timeout waits forever, read only the bytes already received
+                    int len = is.available();
+                    return len > 0 ? read(buffer, offset, Math.min(len, length)) : 0;
+                }
+                socket.setSoTimeout(deadline != null ? Math.min(remaining, DEADLINE_POLL_INTERVAL) : remaining);
+                try {
+                    return read(buffer, offset, length);
+                } catch (SocketTimeoutException e) {
+                    checkDeadline();
+                }
+            }
+        } catch (IOException e) {
+            throw new ComPortException(e.getMessage(), e);
+        }
+    }
+
+    int read(byte[] buffer, int offset, int length) throws IOException, ComPortException {
+        int n = is.read(buffer, offset, length);
+        if (n == -1) {
+            throw new ComPortException("Connection closed");
+        }
+        return n;
+    }
+
     @Override
     public void setRTS(boolean enable) throws ComPortException {
         try {
-            Builder builder = HttpRequest.newBuilder(new URI("http://" + inetAddr.getHostAddress() + "/wx/setting?name=pin-gpio13&value=" + (!enable ? 1 : 0)));
+            Builder builder = HttpRequest.newBuilder(new URI(getHttpAddress() + "/wx/setting?name=pin-gpio13&value=" + (!enable ? 1 : 0)));
             HttpRequest httpRequest = builder.POST(BodyPublishers.noBody()).build();
             client.send(httpRequest, BodyHandlers.ofString());
         } catch (URISyntaxException | IOException | InterruptedException e) {
@@ -285,7 +363,7 @@ public class NetworkComPort extends ComPort {
     @Override
     public void setDTR(boolean enable) throws ComPortException {
         try {
-            Builder builder = HttpRequest.newBuilder(new URI("http://" + inetAddr.getHostAddress() + "/wx/setting?name=pin-gpio12&value=" + (!enable ? 1 : 0)));
+            Builder builder = HttpRequest.newBuilder(new URI(getHttpAddress() + "/wx/setting?name=pin-gpio12&value=" + (!enable ? 1 : 0)));
             HttpRequest httpRequest = builder.POST(BodyPublishers.noBody()).build();
             client.send(httpRequest, BodyHandlers.ofString());
         } catch (URISyntaxException | IOException | InterruptedException e) {
@@ -304,27 +382,25 @@ public class NetworkComPort extends ComPort {
         return false;
     }
 
+    /**
+     * Reads a little-endian long. The bytes of a long not received before the timeout are kept for
+     * the next call.
+     *
+     * @throws InterruptedException if the long is not received before the timeout
+     */
     public int readLong(int timeout) throws ComPortException, InterruptedException {
-        byte[] rx = new byte[4];
-        try {
-            if (is.available() < 4) {
-                long now = System.currentTimeMillis();
-                do {
-                    if ((System.currentTimeMillis() - now) > timeout) {
-                        throw new InterruptedException();
-                    }
-                    Thread.sleep(1);
-                } while (is.available() < 4);
-            }
-            is.read(rx);
-            return (rx[0] & 0xFF) | ((rx[1] & 0xFF) << 8) | ((rx[2] & 0xFF) << 16) | ((rx[3] & 0xFF) << 24);
-        } catch (IOException e) {
-            e.printStackTrace();
-            throw new ComPortException(e.getMessage(), e);
+        byte[] rx = rxLong;
+        rxLongCount += readFully(rx, rxLongCount, 4 - rxLongCount, timeout);
+        if (rxLongCount < 4) {
+            throw new InterruptedException();
         }
+        rxLongCount = 0;
+        return (rx[0] & 0xFF) | ((rx[1] & 0xFF) << 8) | ((rx[2] & 0xFF) << 16) | ((rx[3] & 0xFF) << 24);
     }
 
+    @Override
     public boolean writeBytes(byte[] buffer, int ofs, int len) throws ComPortException {
+        checkDeadline();
         try {
             os.write(buffer, ofs, len);
             os.flush();
@@ -341,7 +417,18 @@ public class NetworkComPort extends ComPort {
 
     @Override
     public boolean writeString(String string) throws ComPortException {
-        return writeBytes(string.getBytes());
+        return writeString(string, 0, string.length());
+    }
+
+    @Override
+    public boolean writeString(String string, int offset, int length) throws ComPortException {
+        if (txBuffer.length < length) {
+            txBuffer = new byte[length];
+        }
+        for (int i = 0; i < length; i++) {
+            txBuffer[i] = (byte) string.charAt(offset + i);
+        }
+        return writeBytes(txBuffer, 0, length);
     }
 
     @Override
@@ -19,8 +19,21 @@ import jssc.SerialPortTimeoutException;
 
 public class SerialComPort extends ComPort {
 
+    public static final int DEFAULT_WRITE_BUFFER_SIZE = 4096;
+    public static final int RECEIVE_BUFFER_SIZE = 65536;
+
     final SerialPort serialPort;
 
+    /** The native write accepts only whole arrays, partial writes copy to this buffer */
+    byte[] txBuffer;
+
+    byte[] writeBuffer;
+    int writeCount;
+
+    boolean eventDriven = true;
+    volatile ByteRingBuffer rxBuffer;
+    volatile Runnable receiveListener;
+
     public SerialComPort(SerialPort serialPort) {
         this.serialPort = serialPort;
     }
@@ -52,14 +65,111 @@ public class SerialComPort extends ComPort {
     @Override
     public boolean openPort() throws ComPortException {
         try {
-            return serialPort.openPort();
+            boolean result = serialPort.openPort();
+            if (result && eventDriven) {
+                startReceiver();
+            }
+            return result;
         } catch (SerialPortException e) {
             throw new ComPortException(e.getExceptionType(), e);
         }
     }
 
+    /**
+     * Registers the listener that moves the received bytes to the ring buffer, if the listener
+     * can't be registered the reads poll the port.
+     */
+    void startReceiver() {
+        ByteRingBuffer buffer = new ByteRingBuffer(RECEIVE_BUFFER_SIZE);
+        try {
+            serialPort.addEventListener(event -> {
+                if (event.isRXCHAR()) {
+                    receive(buffer, event.getEventValue());
+                }
+            }, SerialPort.MASK_RXCHAR);
+            rxBuffer = buffer;
+        } catch (SerialPortException e) {
+            rxBuffer = null;
+        }
+    }
+
+    /**
+     * Moves the received bytes to the ring buffer. The event reports the number of bytes available,
+     * they are read with a single native call. The native read returns a new array, jssc doesn't
+     * read into an existing buffer.
+     */
+    void receive(ByteRingBuffer buffer, int count) {
+        if (count <= 0) {
+            return;
+        }
+        try {
+            byte[] rx = serialPort.readBytes(count);
+            if (rx != null) {
+                buffer.put(rx, 0, rx.length);
+                Runnable listener = receiveListener;
+                if (listener != null) {
+                    listener.run();
+                }
+            }
+        } catch (SerialPortException e) {
+            // Do nothing
+        }
+    }
+
+    public boolean isEventDriven() {
+        return eventDriven;
+    }
+
+    /**
+     * Enables the event-driven receive path, effective the next time the port is opened.
+     *
+     * The received bytes are moved to a ring buffer by the jssc event thread and the reads wait
+     * for the data arrival, instead of polling the port.
+     */
+    public void setEventDriven(boolean eventDriven) {
+        this.eventDriven = eventDriven;
+    }
+
+    @Override
+    public boolean setReceiveListener(Runnable listener) {
+        receiveListener = listener;
+        return rxBuffer != null;
+    }
+
+    /**
+     * Waits for received bytes in the ring buffer.
+     *
+     * @return true if bytes are available, false if timed out
+     */
+    boolean awaitReceived(ByteRingBuffer buffer, int timeout) throws ComPortException {
+        long end = System.nanoTime() + timeout * 1_000_000L;
+        for (;;) {
+            checkOverflow(buffer);
+            long remaining = end - System.nanoTime();
+            if (remaining <= 0) {
+                return buffer.available() != 0;
+            }
+            // With a deadline wait in short slices, to notice a cancellation while waiting
+            if (deadline != null) {
+                remaining = Math.min(remaining, DEADLINE_POLL_INTERVAL * 1_000_000L);
+            }
+            if (buffer.await(remaining)) {
+                return true;
+            }
+            checkDeadline();
+        }
+    }
+
+    void checkOverflow(ByteRingBuffer buffer) throws ComPortException {
+        if (buffer.isOverflow()) {
+            buffer.clear();
+            throw new ComPortException("Receive buffer overflow");
+        }
+    }
+
     @Override
     public boolean setParams(int baudRate, int dataBits, int stopBits, int parity) throws ComPortException {
+        flush();
         try {
             boolean lineState = "win32".equals(Platform.PLATFORM) ? false : true;
             return serialPort.setParams(baudRate, dataBits, stopBits, parity, lineState, lineState);
@@ -71,6 +181,15 @@ public class SerialComPort extends ComPort {
     @Override
     public void closePort() throws ComPortException {
         try {
+            flush();
+        } catch (ComPortException e) {
+            // Do nothing
+        }
+        try {
+            if (rxBuffer != null) {
+                rxBuffer = null;
+                serialPort.removeEventListener();
+            }
             serialPort.closePort();
         } catch (SerialPortException e) {
             throw new ComPortException(e.getExceptionType(), e);
@@ -79,6 +198,8 @@ public class SerialComPort extends ComPort {
 
     @Override
     public void hwreset(int delay) {
+        // The bytes not yet sent are meant for the chip before the reset
+        writeCount = 0;
         try {
             serialPort.setDTR(true);
             serialPort.setRTS(true);
@@ -87,6 +208,10 @@ public class SerialComPort extends ComPort {
             serialPort.setRTS(false);
             msleep(delay);
             serialPort.purgePort(SerialPort.PURGE_TXCLEAR | SerialPort.PURGE_RXCLEAR);
+            ByteRingBuffer buffer = rxBuffer;
+            if (buffer != null) {
+                buffer.clear();
+            }
         } catch (Exception e) {
             // Do nothing
         }
@@ -103,19 +228,49 @@ public class SerialComPort extends ComPort {
     @Override
     public int readByteWithTimeout(int timeout) throws ComPortException {
         int[] rx;
-        try {
-            rx = serialPort.readIntArray(1, timeout);
-            return rx[0];
-        } catch (SerialPortTimeoutException e) {
-            // Do nothing;
-        } catch (SerialPortException e) {
-            throw new ComPortException(e.getExceptionType(), e);
+        flush();
+        timeout = limitTimeout(timeout);
+
+        ByteRingBuffer buffer = rxBuffer;
+        if (buffer != null) {
+            if (awaitReceived(buffer, timeout)) {
+                return buffer.get();
+            }
+            checkDeadline();
+            return -1;
+        }
+
+        // The native read times out without checking the received bytes if the timeout is 0
+        if (timeout <= 0) {
+            try {
+                return serialPort.getInputBufferBytesCount() > 0 ? serialPort.readIntArray(1)[0] : -1;
+            } catch (SerialPortException e) {
+                throw new ComPortException(e.getExceptionType(), e);
+            }
         }
+
+        do {
+            // With a deadline wait in short slices, to notice a cancellation while waiting
+            int slice = deadline != null ? Math.min(timeout, DEADLINE_POLL_INTERVAL) : timeout;
+            try {
+                rx = serialPort.readIntArray(1, slice);
+                return rx[0];
+            } catch (SerialPortTimeoutException e) {
+                // Do nothing;
+            } catch (SerialPortException e) {
+                throw new ComPortException(e.getExceptionType(), e);
+            }
+            timeout -= slice;
+            checkDeadline();
+        } while (timeout > 0);
         return -1;
     }
 
     @Override
     public boolean writeInt(int singleInt) throws ComPortException {
+        if (writeBuffer != null) {
+            return writeByte((byte) singleInt);
+        }
         try {
             return serialPort.writeInt(singleInt);
         } catch (SerialPortException e) {
@@ -125,6 +280,13 @@ public class SerialComPort extends ComPort {
 
     @Override
     public boolean writeByte(byte singleByte) throws ComPortException {
+        if (writeBuffer != null) {
+            if (writeCount == writeBuffer.length) {
+                flush();
+            }
+            writeBuffer[writeCount++] = singleByte;
+            return true;
+        }
         try {
             return serialPort.writeByte(singleByte);
         } catch (SerialPortException e) {
@@ -134,6 +296,14 @@ public class SerialComPort extends ComPort {
 
     @Override
     public boolean writeBytes(byte[] buffer) throws ComPortException {
+        if (writeBuffer != null) {
+            return writeBytes(buffer, 0, buffer.length);
+        }
+        return transmit(buffer);
+    }
+
+    boolean transmit(byte[] buffer) throws ComPortException {
+        checkDeadline();
         try {
             return serialPort.writeBytes(buffer);
         } catch (SerialPortException e) {
@@ -143,6 +313,20 @@ public class SerialComPort extends ComPort {
 
     @Override
     public byte[] readBytes() throws ComPortException {
+        flush();
+
+        ByteRingBuffer buffer = rxBuffer;
+        if (buffer != null) {
+            checkOverflow(buffer);
+            int available = buffer.available();
+            if (available == 0) {
+                return null;
+            }
+            byte[] rx = new byte[available];
+            buffer.get(rx, 0, rx.length);
+            return rx;
+        }
+
         try {
             return serialPort.readBytes();
         } catch (SerialPortException e) {
@@ -150,9 +334,123 @@ public class SerialComPort extends ComPort {
         }
     }
 
-    public byte[] readBytes(int byteCount, int timeout) throws ComPortException, SerialPortTimeoutException {
+    @Override
+    public int readBytes(byte[] buffer, int offset, int length, int timeout) throws ComPortException {
+        if (length == 0) {
+            return 0;
+        }
+
+        ByteRingBuffer received = rxBuffer;
+        if (received != null) {
+            flush();
+            if (awaitReceived(received, limitTimeout(timeout))) {
+                return received.get(buffer, offset, length);
+            }
+            checkDeadline();
+            return 0;
+        }
+
+        int b = readByteWithTimeout(timeout);
+        if (b == -1) {
+            return 0;
+        }
+        buffer[offset] = (byte) b;
+        try {
+            int available = Math.min(serialPort.getInputBufferBytesCount(), length - 1);
+            if (available > 0) {
+                byte[] rx = serialPort.readBytes(available);
+                System.arraycopy(rx, 0, buffer, offset + 1, rx.length);
+                return 1 + rx.length;
+            }
+        } catch (SerialPortException e) {
+            throw new ComPortException(e.getExceptionType(), e);
+        }
+        return 1;
+    }
+
+    @Override
+    public boolean writeBytes(byte[] buffer, int offset, int length) throws ComPortException {
+        if (writeBuffer != null) {
+            if (length > writeBuffer.length - writeCount) {
+                flush();
+            }
+            if (length <= writeBuffer.length) {
+                System.arraycopy(buffer, offset, writeBuffer, writeCount, length);
+                writeCount += length;
+                return true;
+            }
+        }
+        if (offset == 0 && length == buffer.length) {
+            return transmit(buffer);
+        }
+        byte[] tx = getTxBuffer(length);
+        System.arraycopy(buffer, offset, tx, 0, length);
+        return transmit(tx);
+    }
+
+    public int getWriteBufferSize() {
+        return writeBuffer != null ? writeBuffer.length : 0;
+    }
+
+    /**
+     * Sets the size of the write buffer.
+     *
+     * With the buffer enabled the written bytes are collected and sent with a single native write
+     * when the buffer is full, when flush is called or before reading, changing the port parameters
+     * or closing the port.
+     *
+     * @param size the buffer size, or 0 to write the bytes immediately
+     */
+    public void setWriteBufferSize(int size) throws ComPortException {
+        flush();
+        writeBuffer = size > 0 ? new byte[size] : null;
+    }
+
+    @Override
+    public void flush() throws ComPortException {
+        if (writeCount == 0) {
+            return;
+        }
+        int count = writeCount;
+        writeCount = 0;
+        if (count == writeBuffer.length) {
+            transmit(writeBuffer);
+        }
+        else {
+            byte[] tx = getTxBuffer(count);
+            System.arraycopy(writeBuffer, 0, tx, 0, count);
+            transmit(tx);
+        }
+    }
+
+    /**
+     * Returns the transmit buffer for a partial write. The native write sends the whole array, so
+     * the buffer is reused while the writes have the same length, as the blocks of an upload, and
+     * replaced when the length changes. Only one buffer is kept.
+     */
+    byte[] getTxBuffer(int length) {
+        byte[] tx = txBuffer;
+        if (tx == null || tx.length != length) {
+            tx = txBuffer = new byte[length];
+        }
+        return tx;
+    }
+
+    public byte[] readBytes(int byteCount, int timeout) throws ComPortException {
+        flush();
+
+        if (rxBuffer != null) {
+            byte[] rx = new byte[byteCount];
+            if (readFully(rx, 0, byteCount, timeout) != byteCount) {
+                throw new ComPortException("Timeout");
+            }
+            return rx;
+        }
+
         try {
             return serialPort.readBytes(byteCount, timeout);
+        } catch (SerialPortTimeoutException e) {
+            throw new ComPortException("Timeout", e);
         } catch (SerialPortException e) {
             throw new ComPortException(e.getExceptionType(), e);
         }
@@ -200,7 +498,27 @@ public class SerialComPort extends ComPort {
 
     @Override
     public boolean writeString(String string) throws ComPortException {
-        return writeBytes(string.getBytes());
+        return writeString(string, 0, string.length());
+    }
+
+    @Override
+    public boolean writeString(String string, int offset, int length) throws ComPortException {
+        if (writeBuffer != null) {
+            if (length > writeBuffer.length - writeCount) {
+                flush();
+            }
+            if (length <= writeBuffer.length) {
+                for (int i = 0; i < length; i++) {
+                    writeBuffer[writeCount++] = (byte) string.charAt(offset + i);
+                }
+                return true;
+            }
+        }
+        byte[] tx = getTxBuffer(length);
+        for (int i = 0; i < length; i++) {
+            tx[i] = (byte) string.charAt(offset + i);
+        }
+        return transmit(tx);
     }
 
     @Override